@@ -7,6 +7,12 @@ version = project.property("version")!!
 group = project.property("maven_group")!!
 base.archivesName.set(project.property("archives_base_name") as String)
 
+dependencies {
+    // Generates bindings for the standard libraries
+    annotationProcessor(project(":processor"))
+    testAnnotationProcessor(project(":processor"))
+}
+
 subprojects {
     version = rootProject.version
     group = rootProject.group
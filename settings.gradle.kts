@@ -3,4 +3,6 @@ rootProject.name = "JsonPatcherLang"
 include(":doctool")
 project(":doctool").projectDir = file("tools/doctool")
 include(":lang-server")
-project(":lang-server").projectDir = file("tools/lang-server")
\ No newline at end of file
+project(":lang-server").projectDir = file("tools/lang-server")
+include(":processor")
+project(":processor").projectDir = file("tools/processor")
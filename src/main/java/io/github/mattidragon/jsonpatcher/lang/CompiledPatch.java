@@ -0,0 +1,275 @@
+package io.github.mattidragon.jsonpatcher.lang;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutableProgram;
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.parse.Lexer;
+import io.github.mattidragon.jsonpatcher.lang.parse.Parser;
+import io.github.mattidragon.jsonpatcher.lang.parse.PatchMetadata;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Libraries;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A patch that is parsed once and then applied to any number of roots. Instances are thread safe.
+ * <p>
+ * The context that holds the libraries, library locator and debug consumer is built once and shared by all applications,
+ * so applying a patch only creates a scope for the variables on top of it. Because of this the stdlib suppliers are only called once,
+ * and custom libraries are frozen like the builtin ones, so that applications can't change them for each other.
+ * The program is prepared for its {@link ExecutionEngine} once as well.
+ */
+public final class CompiledPatch {
+    private final Program program;
+    private final PatchMetadata metadata;
+    private final EvaluationContext baseContext;
+    private final ExecutionEngine engine;
+    private final ExecutableProgram executable;
+
+    private CompiledPatch(Program program, PatchMetadata metadata, EvaluationContext baseContext, ExecutionEngine engine) {
+        this.program = program;
+        this.metadata = metadata;
+        this.baseContext = baseContext;
+        this.engine = engine;
+        this.executable = engine.prepare(program);
+    }
+
+    /**
+     * Compiles a patch with the default libraries and library locator.
+     * @throws CompileException If the patch has syntax errors
+     */
+    public static CompiledPatch compile(LangConfig config, String source, String fileName) {
+        return builder(config).compile(source, fileName);
+    }
+
+    public static Builder builder(LangConfig config) {
+        return new Builder(config);
+    }
+
+    public Program program() {
+        return program;
+    }
+
+    public PatchMetadata metadata() {
+        return metadata;
+    }
+
+    public LangConfig config() {
+        return baseContext.config();
+    }
+
+    public ExecutionEngine engine() {
+        return engine;
+    }
+
+    /**
+     * The program as prepared by the engine. With {@link ExecutionEngine#TIERED} this is a
+     * {@link io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredProgram}, which reports what got compiled.
+     */
+    public ExecutableProgram executable() {
+        return executable;
+    }
+
+    public void apply(Value.ObjectValue root) {
+        apply(root, Map.of());
+    }
+
+    /**
+     * Applies the patch to a root, modifying it in place.
+     * @param variables Extra immutable variables visible to the patch, like {@link EvaluationContext.Builder#variable}
+     * @throws EvaluationException If the patch fails
+     */
+    public void apply(Value.ObjectValue root, Map<String, Value> variables) {
+        var context = baseContext.withRoot(root);
+        if (!variables.isEmpty()) {
+            context = context.newScope();
+            var stack = context.variables();
+            variables.forEach((name, value) -> stack.createVariable(name, value, false, null));
+        }
+        executable.execute(context);
+    }
+
+    /**
+     * Applies the patch to many roots in parallel on the common fork join pool.
+     * @see #applyAll(Iterable, Executor, int)
+     */
+    public List<BatchResult> applyAll(Iterable<Value.ObjectValue> roots) {
+        var parallelism = ForkJoinPool.getCommonPoolParallelism();
+        return applyAll(roots, ForkJoinPool.commonPool(), parallelism * 2);
+    }
+
+    /**
+     * Applies the patch to many roots in parallel. Roots are taken from the iterable lazily, so at most {@code maxInFlight}
+     * of them are being patched or waiting for the executor at once. Streams can be passed as {@code stream::iterator}.
+     * <p>
+     * A patch failing for one root doesn't affect the others, its error is stored in the result instead.
+     * Other exceptions are considered bugs and stop the batch. They are rethrown once the running applications finish.
+     * @param executor The executor that runs the applications, for example a virtual thread executor
+     * @param maxInFlight The maximum number of roots submitted to the executor at once
+     * @return The results, in the same order as the roots
+     */
+    public List<BatchResult> applyAll(Iterable<Value.ObjectValue> roots, Executor executor, int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be positive, was %s".formatted(maxInFlight));
+
+        var results = new ArrayList<BatchResult>();
+        var permits = new Semaphore(maxInFlight);
+        var failure = new AtomicReference<Throwable>();
+        for (var root : roots) {
+            permits.acquireUninterruptibly();
+            if (failure.get() != null) {
+                permits.release();
+                break;
+            }
+
+            int index;
+            synchronized (results) {
+                index = results.size();
+                results.add(null);
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        apply(root);
+                        setResult(results, index, new BatchResult(root, null));
+                    } catch (EvaluationException e) {
+                        setResult(results, index, new BatchResult(root, e));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                permits.release();
+                failure.compareAndSet(null, e);
+                break;
+            }
+        }
+        // Wait for the remaining applications by taking every permit back
+        permits.acquireUninterruptibly(maxInFlight);
+
+        var error = failure.get();
+        if (error instanceof RuntimeException runtimeException) throw runtimeException;
+        if (error instanceof Error javaError) throw javaError;
+        if (error != null) throw new IllegalStateException("Unexpected error while applying patch", error);
+        return results;
+    }
+
+    private static void setResult(List<BatchResult> results, int index, BatchResult result) {
+        // Results are stored while the submitting thread is still adding slots, so the list needs a lock
+        synchronized (results) {
+            results.set(index, result);
+        }
+    }
+
+    /**
+     * The outcome of applying a patch to one root in a batch.
+     * @param root The root, which was modified in place
+     * @param error The error the patch failed with, or null if it succeeded
+     */
+    public record BatchResult(Value.ObjectValue root, @Nullable EvaluationException error) {
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    public static class Builder {
+        private final LangConfig config;
+        private EvaluationContext.LibraryLocator libraryLocator;
+        private Consumer<Value> debugConsumer;
+        private Map<String, Supplier<Value.ObjectValue>> stdlib = Libraries.BUILTIN;
+        private ExecutionEngine engine;
+
+        private Builder(LangConfig config) {
+            this.config = config;
+            this.engine = config.engine();
+        }
+
+        public Builder libraryLocator(EvaluationContext.LibraryLocator libraryLocator) {
+            this.libraryLocator = libraryLocator;
+            return this;
+        }
+
+        public Builder debugConsumer(Consumer<Value> debugConsumer) {
+            this.debugConsumer = debugConsumer;
+            return this;
+        }
+
+        public Builder stdlib(Map<String, Supplier<Value.ObjectValue>> stdlib) {
+            this.stdlib = stdlib;
+            return this;
+        }
+
+        /**
+         * Overrides the engine of the config for this patch.
+         */
+        public Builder engine(ExecutionEngine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * Lexes and parses a patch.
+         * @throws CompileException If the patch has syntax errors
+         */
+        public CompiledPatch compile(String source, String fileName) {
+            var lexResult = Lexer.lex(config, source, fileName);
+            var errors = new ArrayList<PositionedException>(lexResult.errors());
+            var parseResult = Parser.parse(config, lexResult.tokens());
+            errors.addAll(parseResult.errors());
+            if (!errors.isEmpty()) {
+                throw new CompileException(fileName, errors);
+            }
+            return build(parseResult.program(), parseResult.metadata());
+        }
+
+        /**
+         * Creates a patch from a program that was already parsed.
+         */
+        public CompiledPatch build(Program program, PatchMetadata metadata) {
+            var libraries = stdlib;
+            if (libraries != Libraries.BUILTIN) {
+                // The context is shared by all applications, possibly on many threads at once
+                var frozen = new LinkedHashMap<String, Supplier<Value.ObjectValue>>();
+                stdlib.forEach((name, supplier) -> {
+                    var library = supplier.get().freeze();
+                    frozen.put(name, () -> library);
+                });
+                libraries = frozen;
+            }
+            var context = EvaluationContext.builder(config).stdlib(libraries);
+            if (libraryLocator != null) context.libraryLocator(libraryLocator);
+            if (debugConsumer != null) context.debugConsumer(debugConsumer);
+            return new CompiledPatch(program, metadata, context.build(), engine);
+        }
+    }
+
+    /**
+     * Thrown when a patch can't be compiled. The errors are also attached as suppressed exceptions.
+     */
+    public static class CompileException extends RuntimeException {
+        private final List<PositionedException> errors;
+
+        public CompileException(String fileName, List<PositionedException> errors) {
+            super("Failed to compile patch %s with %s errors".formatted(fileName, errors.size()));
+            this.errors = List.copyOf(errors);
+            this.errors.forEach(this::addSuppressed);
+        }
+
+        public List<PositionedException> getErrors() {
+            return errors;
+        }
+    }
+}
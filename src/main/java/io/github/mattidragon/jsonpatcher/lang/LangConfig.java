@@ -1,6 +1,23 @@
 package io.github.mattidragon.jsonpatcher.lang;
 
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.optimize.Optimizer;
+
 public interface LangConfig {
     boolean useJavaStacktrace();
     boolean useShortStacktrace();
+
+    /**
+     * The optimizer run on programs after they are parsed. Programs with parse errors are never optimized.
+     */
+    default Optimizer optimizer() {
+        return Optimizer.NONE;
+    }
+
+    /**
+     * The engine that {@link CompiledPatch}es run on, unless their builder picks another one.
+     */
+    default ExecutionEngine engine() {
+        return ExecutionEngine.INTERPRETER;
+    }
 }
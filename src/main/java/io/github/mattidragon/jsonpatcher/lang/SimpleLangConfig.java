@@ -1,4 +1,9 @@
 package io.github.mattidragon.jsonpatcher.lang;
 
-public record SimpleLangConfig(boolean useJavaStacktrace, boolean useShortStacktrace) implements LangConfig {
+import io.github.mattidragon.jsonpatcher.lang.optimize.Optimizer;
+
+public record SimpleLangConfig(boolean useJavaStacktrace, boolean useShortStacktrace, Optimizer optimizer) implements LangConfig {
+    public SimpleLangConfig(boolean useJavaStacktrace, boolean useShortStacktrace) {
+        this(useJavaStacktrace, useShortStacktrace, Optimizer.NONE);
+    }
 }
@@ -0,0 +1,16 @@
+package io.github.mattidragon.jsonpatcher.lang.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+
+/**
+ * A program that was prepared for an {@link ExecutionEngine}. Executing it behaves exactly like {@link Program#execute}.
+ */
+public interface ExecutableProgram {
+    /**
+     * The program that is run, which may have had nodes replaced by the engine.
+     */
+    Program program();
+
+    void execute(EvaluationContext context);
+}
@@ -0,0 +1,47 @@
+package io.github.mattidragon.jsonpatcher.lang.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.bytecode.BytecodeCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.closure.ClosureCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieringPolicy;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+
+/**
+ * The ways a program can be run. All engines behave the same, they only differ in how much work they do up front.
+ */
+public enum ExecutionEngine {
+    /**
+     * Runs the tree directly. This has no startup cost and defines the semantics of the other engines.
+     */
+    INTERPRETER,
+    /**
+     * Compiles the tree into specialized closures with the {@link ClosureCompiler}. Cheap to compile and doesn't define classes.
+     */
+    CLOSURES,
+    /**
+     * Compiles the program into instructions for a virtual machine with the {@link BytecodeCompiler}. Doesn't define classes.
+     */
+    BYTECODE,
+    /**
+     * Interprets the program and compiles the parts that get hot in the background with the {@link TieredCompiler},
+     * using the {@linkplain TieringPolicy#DEFAULT default policy}. Use {@link TieredCompiler#compile} directly for other policies.
+     */
+    TIERED;
+
+    public ExecutableProgram prepare(Program program) {
+        return switch (this) {
+            case INTERPRETER -> new InterpretedProgram(program);
+            case CLOSURES -> ClosureCompiler.compile(program);
+            case BYTECODE -> BytecodeCompiler.compile(program);
+            case TIERED -> TieredCompiler.compile(program, TieringPolicy.DEFAULT);
+        };
+    }
+
+    private record InterpretedProgram(Program program) implements ExecutableProgram {
+        @Override
+        public void execute(EvaluationContext context) {
+            program.execute(context);
+        }
+    }
+}
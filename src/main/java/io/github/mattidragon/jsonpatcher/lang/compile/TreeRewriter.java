@@ -0,0 +1,216 @@
+package io.github.mattidragon.jsonpatcher.lang.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.*;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArgument;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArguments;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rebuilds program trees from the bottom up. Subclasses override {@link #rewriteStatement} and {@link #rewriteExpression}
+ * to replace nodes after their children have been rewritten.
+ * <p>
+ * Nodes whose children didn't change are kept as is. Rebuilt nodes keep the slots and layouts assigned by the
+ * {@link io.github.mattidragon.jsonpatcher.lang.parse.VariableResolver}, so rewriters must not move declarations between scopes.
+ * Node types that the rewriter doesn't know about are passed to the hooks without visiting their children.
+ */
+public class TreeRewriter {
+    public Program rewrite(Program program) {
+        var statements = rewriteAll(program.statements(), this::rewrite);
+        if (statements == program.statements()) return program;
+        return new Program(statements, program.layout());
+    }
+
+    public Statement rewrite(Statement statement) {
+        var rebuilt = switch (statement) {
+            case ApplyStatement node -> {
+                var root = rewrite(node.root());
+                var action = rewrite(node.action());
+                yield root == node.root() && action == node.action() ? node : new ApplyStatement(root, action, node.pos());
+            }
+            case BlockStatement node -> {
+                var statements = rewriteAll(node.statements(), this::rewrite);
+                yield statements == node.statements() ? node : new BlockStatement(statements, node.pos(), node.layout());
+            }
+            case DeleteStatement node -> {
+                var target = rewriteReference(node.target());
+                yield target == node.target() ? node : new DeleteStatement(target, node.pos());
+            }
+            case ExpressionStatement node -> {
+                var expression = rewrite(node.expression());
+                yield expression == node.expression() ? node : new ExpressionStatement(expression);
+            }
+            case ForEachLoopStatement node -> {
+                var iterable = rewrite(node.iterable());
+                var body = rewrite(node.body());
+                yield iterable == node.iterable() && body == node.body() ? node
+                        : new ForEachLoopStatement(iterable, node.variableName(), body, node.pos(), node.variablePos(), node.layout(), node.slot());
+            }
+            case ForLoopStatement node -> {
+                var initializer = rewrite(node.initializer());
+                var condition = rewrite(node.condition());
+                var incrementer = rewrite(node.incrementer());
+                var body = rewrite(node.body());
+                yield initializer == node.initializer() && condition == node.condition() && incrementer == node.incrementer() && body == node.body() ? node
+                        : new ForLoopStatement(initializer, condition, incrementer, body, node.pos(), node.layout());
+            }
+            case FunctionDeclarationStatement node -> {
+                var value = rewrite(node.value());
+                yield value == node.value() || !(value instanceof FunctionExpression function) ? node
+                        : new FunctionDeclarationStatement(node.name(), function, node.namePos(), node.slot());
+            }
+            case IfStatement node -> {
+                var condition = rewrite(node.condition());
+                var action = rewrite(node.action());
+                var elseAction = node.elseAction() == null ? null : rewrite(node.elseAction());
+                yield condition == node.condition() && action == node.action() && elseAction == node.elseAction() ? node
+                        : new IfStatement(condition, action, elseAction, node.pos());
+            }
+            case ReturnStatement node -> {
+                var value = rewriteOptional(node.value());
+                yield value == node.value() ? node : new ReturnStatement(value, node.pos());
+            }
+            case VariableCreationStatement node -> {
+                var initializer = rewrite(node.initializer());
+                yield initializer == node.initializer() ? node
+                        : new VariableCreationStatement(node.name(), initializer, node.mutable(), node.pos(), node.namePos(), node.slot());
+            }
+            case WhileLoopStatement node -> {
+                var condition = rewrite(node.condition());
+                var body = rewrite(node.body());
+                yield condition == node.condition() && body == node.body() ? node : new WhileLoopStatement(condition, body, node.pos());
+            }
+            // Leaves and unknown statements
+            default -> statement;
+        };
+        return rewriteStatement(rebuilt);
+    }
+
+    public Expression rewrite(Expression expression) {
+        var rebuilt = switch (expression) {
+            case ArrayInitializerExpression node -> {
+                var contents = rewriteAll(node.contents(), this::rewrite);
+                yield contents == node.contents() ? node : new ArrayInitializerExpression(contents, node.pos());
+            }
+            case AssignmentExpression node -> {
+                var target = rewriteReference(node.target());
+                var value = rewrite(node.value());
+                yield target == node.target() && value == node.value() ? node : new AssignmentExpression(target, value, node.operator(), node.pos());
+            }
+            case BinaryExpression node -> {
+                var first = rewrite(node.first());
+                var second = rewrite(node.second());
+                yield first == node.first() && second == node.second() ? node : new BinaryExpression(first, second, node.op(), node.pos());
+            }
+            case FunctionCallExpression node -> {
+                var function = rewrite(node.function());
+                var arguments = rewriteAll(node.arguments(), this::rewrite);
+                yield function == node.function() && arguments == node.arguments() ? node : new FunctionCallExpression(function, arguments, node.pos());
+            }
+            case FunctionExpression node -> {
+                var body = rewrite(node.body());
+                var arguments = rewriteArguments(node.args());
+                yield body == node.body() && arguments == node.args() ? node : new FunctionExpression(body, arguments, node.pos(), node.layout());
+            }
+            case IndexExpression node -> {
+                var parent = rewrite(node.parent());
+                var index = rewrite(node.index());
+                yield parent == node.parent() && index == node.index() ? node : new IndexExpression(parent, index, node.pos());
+            }
+            case IsInstanceExpression node -> {
+                var input = rewrite(node.input());
+                yield input == node.input() ? node : new IsInstanceExpression(input, node.type(), node.pos(), node.typePos());
+            }
+            case ObjectInitializerExpression node -> {
+                var contents = rewriteAll(node.contents(), entry -> {
+                    var value = rewrite(entry.value());
+                    return value == entry.value() ? entry : new ObjectInitializerExpression.Entry(entry.name(), entry.namePos(), value);
+                });
+                yield contents == node.contents() ? node : new ObjectInitializerExpression(contents, node.pos());
+            }
+            case PropertyAccessExpression node -> {
+                var parent = rewrite(node.parent());
+                yield parent == node.parent() ? node : new PropertyAccessExpression(parent, node.name(), node.pos(), node.namePos());
+            }
+            case ShortedBinaryExpression node -> {
+                var first = rewrite(node.first());
+                var second = rewrite(node.second());
+                yield first == node.first() && second == node.second() ? node : new ShortedBinaryExpression(first, second, node.op(), node.pos());
+            }
+            case TernaryExpression node -> {
+                var condition = rewrite(node.condition());
+                var ifTrue = rewrite(node.ifTrue());
+                var ifFalse = rewrite(node.ifFalse());
+                yield condition == node.condition() && ifTrue == node.ifTrue() && ifFalse == node.ifFalse() ? node
+                        : new TernaryExpression(condition, ifTrue, ifFalse, node.pos());
+            }
+            case UnaryExpression node -> {
+                var input = rewrite(node.input());
+                yield input == node.input() ? node : new UnaryExpression(input, node.op(), node.pos());
+            }
+            case UnaryModificationExpression node -> {
+                var target = rewriteReference(node.target());
+                yield target == node.target() ? node : new UnaryModificationExpression(node.postfix(), target, node.operator(), node.pos());
+            }
+            // Leaves and unknown expressions
+            default -> expression;
+        };
+        return rewriteExpression(rebuilt);
+    }
+
+    /**
+     * Called for every statement after its children have been rewritten.
+     */
+    protected Statement rewriteStatement(Statement statement) {
+        return statement;
+    }
+
+    /**
+     * Called for every expression after its children have been rewritten.
+     */
+    protected Expression rewriteExpression(Expression expression) {
+        return expression;
+    }
+
+    /**
+     * Rewrites an assignment target. If the result is no longer a reference the original is kept, as it has to stay assignable.
+     */
+    private Reference rewriteReference(Reference reference) {
+        return rewrite(reference) instanceof Reference rewritten ? rewritten : reference;
+    }
+
+    private Optional<Expression> rewriteOptional(Optional<Expression> expression) {
+        if (expression.isEmpty()) return expression;
+        var rewritten = rewrite(expression.get());
+        return rewritten == expression.get() ? expression : Optional.of(rewritten);
+    }
+
+    private FunctionArguments rewriteArguments(FunctionArguments arguments) {
+        var rewritten = rewriteAll(arguments.arguments(), argument -> {
+            var defaultValue = rewriteOptional(argument.defaultValue());
+            return defaultValue == argument.defaultValue() ? argument : new FunctionArgument(argument.target(), defaultValue, argument.namePos());
+        });
+        return rewritten == arguments.arguments() ? arguments : new FunctionArguments(rewritten, arguments.varargs());
+    }
+
+    /**
+     * Rewrites all elements of a list, returning the same list if nothing changed.
+     */
+    private static <T> List<T> rewriteAll(List<T> list, UnaryOperator<T> rewriter) {
+        List<T> result = null;
+        for (int i = 0; i < list.size(); i++) {
+            var element = list.get(i);
+            var rewritten = rewriter.apply(element);
+            if (result == null && rewritten != element) {
+                result = new ArrayList<>(list.subList(0, i));
+            }
+            if (result != null) result.add(rewritten);
+        }
+        return result == null ? list : List.copyOf(result);
+    }
+}
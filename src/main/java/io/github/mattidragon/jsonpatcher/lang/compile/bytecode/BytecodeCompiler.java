@@ -0,0 +1,324 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.*;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Compiles programs into {@link Chunk}s for the {@link VirtualMachine}. No classes are defined,
+ * so it works where hidden classes are unavailable and compiling is cheap enough to do for every program.
+ * <p>
+ * Control flow, variables, operators, property reads and calls are compiled to instructions. Other nodes are kept as constants
+ * and run with the tree interpreter, with the bodies of functions, foreach loops and apply statements compiled into their own chunks.
+ * <p>
+ * This is an engine, not a portable format. The machine has no call stack of its own, and chunks refer to the nodes
+ * they were compiled from, so compiled programs can't be serialized.
+ */
+public final class BytecodeCompiler {
+    private BytecodeCompiler() {
+    }
+
+    public static BytecodeProgram compile(Program program) {
+        var rewritten = new BodyCompiler().rewrite(program);
+        var writer = new ChunkWriter();
+        for (var statement : rewritten.statements()) {
+            writer.statement(statement);
+        }
+        return new BytecodeProgram(rewritten, writer.finish());
+    }
+
+    /**
+     * Compiles a statement along with the bodies inside it, like {@link #compile(Program)} does for programs.
+     */
+    public static BytecodeStatement compileTree(Statement statement) {
+        return compile(new BodyCompiler().rewrite(statement));
+    }
+
+    /**
+     * Compiles a single statement, without compiling the bodies inside it.
+     */
+    public static BytecodeStatement compile(Statement statement) {
+        var writer = new ChunkWriter();
+        writer.statement(statement);
+        return new BytecodeStatement(statement, writer.finish());
+    }
+
+    /**
+     * Replaces the bodies that run outside the chunk of their parent with compiled ones.
+     */
+    private static class BodyCompiler extends TreeRewriter {
+        @Override
+        protected Statement rewriteStatement(Statement statement) {
+            return switch (statement) {
+                case ForEachLoopStatement node when !(node.body() instanceof BytecodeStatement) ->
+                        new ForEachLoopStatement(node.iterable(), node.variableName(), compile(node.body()), node.pos(), node.variablePos(), node.layout(), node.slot());
+                case ApplyStatement node when !(node.action() instanceof BytecodeStatement) ->
+                        new ApplyStatement(node.root(), compile(node.action()), node.pos());
+                default -> statement;
+            };
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expression) {
+            if (expression instanceof FunctionExpression function && !(function.body() instanceof BytecodeStatement)) {
+                return new FunctionExpression(compile(function.body()), function.args(), function.pos(), function.layout());
+            }
+            return expression;
+        }
+    }
+
+    private static class ChunkWriter {
+        private int[] code = new int[32];
+        private SourceSpan[] positions = new SourceSpan[32];
+        private int size = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final IdentityHashMap<Object, Integer> constantIndices = new IdentityHashMap<>();
+        private final List<int[]> handlers = new ArrayList<>();
+        private final ArrayDeque<Loop> loops = new ArrayDeque<>();
+        private int stackDepth = 0;
+        private int maxStack = 0;
+        private int scopeDepth = 0;
+        private int maxScopes = 0;
+
+        public Chunk finish() {
+            emit(Opcodes.HALT, null, 0);
+            var handlerTable = new int[handlers.size() * Chunk.HANDLER_SIZE];
+            for (int i = 0; i < handlers.size(); i++) {
+                System.arraycopy(handlers.get(i), 0, handlerTable, i * Chunk.HANDLER_SIZE, Chunk.HANDLER_SIZE);
+            }
+            return new Chunk(Arrays.copyOf(code, size), constants.toArray(), Arrays.copyOf(positions, size), handlerTable, maxStack, maxScopes);
+        }
+
+        public void statement(Statement statement) {
+            switch (statement) {
+                case ExpressionStatement node when node.expression() instanceof UnaryModificationExpression modification
+                                                   && modification.target() instanceof VariableAccessExpression ->
+                        emit(Opcodes.MODIFY_VARIABLE_DISCARD, modification.pos(), 0, constant(modification));
+                case ExpressionStatement node -> {
+                    expression(node.expression());
+                    emit(Opcodes.POP, null, -1);
+                }
+                case VariableCreationStatement node -> {
+                    expression(node.initializer());
+                    emit(Opcodes.DECLARE, node.pos(), -1, constant(node));
+                }
+                case BlockStatement node -> {
+                    if (!node.layout().isElided()) enterScope(node.layout());
+                    for (var child : node.statements()) {
+                        statement(child);
+                    }
+                    if (!node.layout().isElided()) exitScope();
+                }
+                case IfStatement node -> {
+                    expression(node.condition());
+                    var skipAction = jump(Opcodes.JUMP_IF_FALSE, -1);
+                    statement(node.action());
+                    if (node.elseAction() != null) {
+                        var skipElse = jump(Opcodes.JUMP, 0);
+                        patch(skipAction);
+                        statement(node.elseAction());
+                        patch(skipElse);
+                    } else {
+                        patch(skipAction);
+                    }
+                }
+                case WhileLoopStatement node -> {
+                    var loop = new Loop(scopeDepth);
+                    var start = size;
+                    expression(node.condition());
+                    var exit = jump(Opcodes.JUMP_IF_FALSE, -1);
+                    var bodyStart = size;
+                    loops.push(loop);
+                    statement(node.body());
+                    loops.pop();
+                    var bodyEnd = size;
+                    emit(Opcodes.JUMP, null, 0, start);
+                    patch(exit);
+                    loop.finish(bodyStart, bodyEnd, size, start);
+                }
+                case ForLoopStatement node -> {
+                    if (!node.layout().isElided()) enterScope(node.layout());
+                    statement(node.initializer());
+                    var loop = new Loop(scopeDepth);
+                    var start = size;
+                    expression(node.condition());
+                    var exit = jump(Opcodes.JUMP_IF_FALSE, -1);
+                    var bodyStart = size;
+                    loops.push(loop);
+                    statement(node.body());
+                    loops.pop();
+                    var bodyEnd = size;
+                    statement(node.incrementer());
+                    emit(Opcodes.JUMP, null, 0, start);
+                    patch(exit);
+                    loop.finish(bodyStart, bodyEnd, size, bodyEnd);
+                    if (!node.layout().isElided()) exitScope();
+                }
+                case BreakStatement node when !loops.isEmpty() -> {
+                    var loop = loops.peek();
+                    unwindTo(loop.scopeDepth);
+                    loop.breaks.add(jump(Opcodes.JUMP, 0));
+                }
+                case ContinueStatement node when !loops.isEmpty() -> {
+                    var loop = loops.peek();
+                    unwindTo(loop.scopeDepth);
+                    loop.continues.add(jump(Opcodes.JUMP, 0));
+                }
+                case ReturnStatement node -> {
+                    if (node.value().isPresent()) {
+                        expression(node.value().get());
+                        emit(Opcodes.RETURN_VALUE, node.pos(), -1);
+                    } else {
+                        emit(Opcodes.RETURN, node.pos(), 0);
+                    }
+                }
+                case EmptyStatement ignored -> {
+                }
+                default -> emit(Opcodes.RUN, statement.getPos(), 0, constant(statement));
+            }
+        }
+
+        public void expression(Expression expression) {
+            switch (expression) {
+                case ValueExpression node -> emit(Opcodes.CONSTANT, node.pos(), 1, constant(node.value()));
+                case VariableAccessExpression node -> emit(Opcodes.LOAD_VARIABLE, node.pos(), 1, constant(node));
+                case AssignmentExpression node when node.target() instanceof VariableAccessExpression variable -> {
+                    if (node.operator() == BinaryExpression.Operator.ASSIGN) {
+                        expression(node.value());
+                        emit(Opcodes.STORE_VARIABLE, variable.pos(), 0, constant(variable));
+                    } else {
+                        expression(variable);
+                        expression(node.value());
+                        emit(Opcodes.UPDATE_VARIABLE, node.pos(), -1, constant(variable), constant(node.operator()));
+                    }
+                }
+                case UnaryModificationExpression node when node.target() instanceof VariableAccessExpression ->
+                        emit(Opcodes.MODIFY_VARIABLE, node.pos(), 1, constant(node));
+                case BinaryExpression node -> {
+                    expression(node.first());
+                    expression(node.second());
+                    emit(Opcodes.BINARY, node.pos(), -1, constant(node));
+                }
+                case UnaryExpression node -> {
+                    expression(node.input());
+                    emit(Opcodes.UNARY, node.pos(), 0, constant(node.op()));
+                }
+                case ShortedBinaryExpression node when node.op() == ShortedBinaryExpression.Operator.AND || node.op() == ShortedBinaryExpression.Operator.OR -> {
+                    expression(node.first());
+                    var skip = jump(node.op() == ShortedBinaryExpression.Operator.AND ? Opcodes.JUMP_IF_FALSE_OR_POP : Opcodes.JUMP_IF_TRUE_OR_POP, -1);
+                    expression(node.second());
+                    patch(skip);
+                }
+                case TernaryExpression node -> {
+                    expression(node.condition());
+                    var skipTrue = jump(Opcodes.JUMP_IF_FALSE, -1);
+                    expression(node.ifTrue());
+                    var skipFalse = jump(Opcodes.JUMP, 0);
+                    // Only one of the branches runs, so the value of the first one isn't on the stack for the second
+                    stackDepth--;
+                    patch(skipTrue);
+                    expression(node.ifFalse());
+                    patch(skipFalse);
+                }
+                case PropertyAccessExpression node -> {
+                    expression(node.parent());
+                    emit(Opcodes.GET_PROPERTY, node.pos(), 0, constant(node));
+                }
+                case FunctionCallExpression node when node.function() instanceof PropertyAccessExpression access -> {
+                    expression(access.parent());
+                    emit(Opcodes.METHOD, access.pos(), 1, constant(access));
+                    for (var argument : node.arguments()) {
+                        expression(argument);
+                    }
+                    emit(Opcodes.CALL_METHOD, node.pos(), -node.arguments().size() - 1, node.arguments().size());
+                }
+                case FunctionCallExpression node -> {
+                    expression(node.function());
+                    for (var argument : node.arguments()) {
+                        expression(argument);
+                    }
+                    emit(Opcodes.CALL, node.pos(), -node.arguments().size(), constant(node));
+                }
+                default -> emit(Opcodes.EVALUATE, expression.pos(), 1, constant(expression));
+            }
+        }
+
+        private void enterScope(Object layout) {
+            emit(Opcodes.ENTER_SCOPE, null, 0, constant(layout));
+            scopeDepth++;
+            maxScopes = Math.max(maxScopes, scopeDepth);
+        }
+
+        private void exitScope() {
+            emit(Opcodes.EXIT_SCOPE, null, 0);
+            scopeDepth--;
+        }
+
+        private void unwindTo(int depth) {
+            // Only the jump leaves the scopes, the code after it is still inside them
+            if (depth < scopeDepth) emit(Opcodes.UNWIND, null, 0, depth);
+        }
+
+        private int constant(Object value) {
+            return constantIndices.computeIfAbsent(value, key -> {
+                constants.add(key);
+                return constants.size() - 1;
+            });
+        }
+
+        /**
+         * Emits a jump with an unknown target.
+         * @return The offset of the target, for {@link #patch}
+         */
+        private int jump(int opcode, int stackEffect) {
+            emit(opcode, null, stackEffect, -1);
+            return size - 1;
+        }
+
+        /**
+         * Points a jump to the current end of the code.
+         */
+        private void patch(int target) {
+            code[target] = size;
+        }
+
+        private void emit(int opcode, @Nullable SourceSpan pos, int stackEffect, int... operands) {
+            if (size + operands.length + 1 > code.length) {
+                code = Arrays.copyOf(code, code.length * 2 + operands.length);
+                positions = Arrays.copyOf(positions, code.length);
+            }
+            positions[size] = pos;
+            code[size++] = opcode;
+            for (var operand : operands) {
+                code[size++] = operand;
+            }
+            stackDepth += stackEffect;
+            maxStack = Math.max(maxStack, stackDepth);
+        }
+
+        private class Loop {
+            private final int scopeDepth;
+            private final List<Integer> breaks = new ArrayList<>();
+            private final List<Integer> continues = new ArrayList<>();
+
+            private Loop(int scopeDepth) {
+                this.scopeDepth = scopeDepth;
+            }
+
+            private void finish(int bodyStart, int bodyEnd, int breakTarget, int continueTarget) {
+                breaks.forEach(jump -> code[jump] = breakTarget);
+                continues.forEach(jump -> code[jump] = continueTarget);
+                handlers.add(new int[]{bodyStart, bodyEnd, breakTarget, continueTarget, scopeDepth});
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutableProgram;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.ReturnException;
+
+/**
+ * A program that was compiled with the {@link BytecodeCompiler}. Behaves exactly like {@link Program#execute}.
+ * @param program The program that is run, with function bodies replaced by {@link BytecodeStatement}s
+ */
+public record BytecodeProgram(Program program, Chunk chunk) implements ExecutableProgram {
+    @Override
+    public void execute(EvaluationContext context) {
+        try {
+            VirtualMachine.run(chunk, context.newProgramScope(program.layout()));
+        } catch (ReturnException ignored) {
+            // Catch returns to allow top level return to end script
+        }
+    }
+}
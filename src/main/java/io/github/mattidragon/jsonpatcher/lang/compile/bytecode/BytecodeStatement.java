@@ -0,0 +1,28 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+
+import java.util.List;
+
+/**
+ * A statement that runs in the {@link VirtualMachine}. The original statement is kept for tooling and error positions.
+ */
+public record BytecodeStatement(Statement original, Chunk chunk) implements Statement {
+    @Override
+    public void run(EvaluationContext context) {
+        VirtualMachine.run(chunk, context);
+    }
+
+    @Override
+    public SourceSpan getPos() {
+        return original.getPos();
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of(original);
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A compiled piece of code for the {@link VirtualMachine}. Source positions are kept in a side table instead of the code,
+ * so they cost nothing until an error is thrown.
+ * <p>
+ * Loops are described by the handler table, which tells the machine where to go when a break or continue
+ * is thrown by code that it runs through the tree interpreter.
+ * <p>
+ * The constants include nodes, layouts and values of the program, so a chunk is only usable along with the program it was compiled from.
+ */
+public final class Chunk {
+    // Every handler is stored as start, end, break target, continue target and scope depth
+    static final int HANDLER_SIZE = 5;
+
+    final int[] code;
+    final Object[] constants;
+    final SourceSpan[] positions;
+    final int[] handlers;
+    final int maxStack;
+    final int maxScopes;
+
+    Chunk(int[] code, Object[] constants, SourceSpan[] positions, int[] handlers, int maxStack, int maxScopes) {
+        this.code = code;
+        this.constants = constants;
+        this.positions = positions;
+        this.handlers = handlers;
+        this.maxStack = maxStack;
+        this.maxScopes = maxScopes;
+    }
+
+    /**
+     * Finds the position of the instruction at an offset.
+     */
+    @Nullable
+    public SourceSpan positionAt(int offset) {
+        return positions[offset];
+    }
+
+    /**
+     * The number of ints in the code array.
+     */
+    public int size() {
+        return code.length;
+    }
+
+    /**
+     * Lists the instructions of the chunk, one per line. Meant for debugging and tests.
+     */
+    public String disassemble() {
+        var builder = new StringBuilder();
+        for (int pc = 0; pc < code.length; ) {
+            var opcode = code[pc];
+            builder.append("%04d %s".formatted(pc, Opcodes.name(opcode)));
+            for (int i = 1; i <= Opcodes.operandCount(opcode); i++) {
+                builder.append(' ').append(code[pc + i]);
+            }
+            builder.append('\n');
+            pc += Opcodes.operandCount(opcode) + 1;
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Chunk[size=%s, constants=%s, handlers=%s]".formatted(code.length, constants.length, handlers.length / HANDLER_SIZE);
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+/**
+ * The instructions of the {@link VirtualMachine}. Each instruction is an opcode followed by its operands in the code array.
+ * Operands are either constant pool indices, jump targets or counts. Stack effects are listed as {@code before -> after}.
+ */
+final class Opcodes {
+    /** Ends the chunk. */
+    static final int HALT = 0;
+    /** {@code constant}: {@code -> value} */
+    static final int CONSTANT = 1;
+    /** {@code -> } discards the top value. */
+    static final int POP = 2;
+    /** {@code variable}: {@code -> value}, where the constant is a {@code VariableAccessExpression}. */
+    static final int LOAD_VARIABLE = 3;
+    /** {@code variable}: {@code value -> value}, assigns without popping. */
+    static final int STORE_VARIABLE = 4;
+    /** {@code variable operator}: {@code original value -> value}, assigns the result of a compound assignment. */
+    static final int UPDATE_VARIABLE = 5;
+    /** {@code modification}: {@code -> value}, where the constant is a {@code UnaryModificationExpression} of a variable. */
+    static final int MODIFY_VARIABLE = 24;
+    /** {@code modification}: {@code -> }, like {@link #MODIFY_VARIABLE} for statements, keeping numbers unboxed. */
+    static final int MODIFY_VARIABLE_DISCARD = 25;
+    /** {@code declaration}: {@code value -> }, where the constant is a {@code VariableCreationStatement}. */
+    static final int DECLARE = 6;
+    /** {@code expression}: {@code first second -> result}, using the feedback of a {@code BinaryExpression}. */
+    static final int BINARY = 7;
+    /** {@code operator}: {@code value -> result} */
+    static final int UNARY = 8;
+    /** {@code property}: {@code parent -> value}, where the constant is a {@code PropertyAccessExpression}. */
+    static final int GET_PROPERTY = 9;
+    /**
+     * {@code call}: {@code function arguments... -> result}, where the constant is the {@code FunctionCallExpression},
+     * which checks the argument count.
+     */
+    static final int CALL = 10;
+    /**
+     * {@code property}: {@code receiver -> callee receiver}. Pushes a builtin method and its receiver,
+     * or the property value and null if the receiver has no builtin method with the name.
+     */
+    static final int METHOD = 11;
+    /** {@code argumentCount}: {@code callee receiver arguments... -> result}, the call after a {@link #METHOD}. */
+    static final int CALL_METHOD = 12;
+    /** {@code target} */
+    static final int JUMP = 13;
+    /** {@code target}: {@code condition -> } */
+    static final int JUMP_IF_FALSE = 14;
+    /** {@code target}: {@code value -> value} if jumping, otherwise {@code value -> }. Used by {@code &&}. */
+    static final int JUMP_IF_FALSE_OR_POP = 15;
+    /** {@code target}: {@code value -> value} if jumping, otherwise {@code value -> }. Used by {@code ||}. */
+    static final int JUMP_IF_TRUE_OR_POP = 16;
+    /** {@code layout}: opens a scope with the frame layout. */
+    static final int ENTER_SCOPE = 17;
+    /** Closes the innermost scope. */
+    static final int EXIT_SCOPE = 18;
+    /** {@code depth}: closes scopes until there are {@code depth} open ones. Used when jumping out of loops. */
+    static final int UNWIND = 19;
+    /** {@code value -> }, returns from the function. */
+    static final int RETURN_VALUE = 20;
+    /** Returns null from the function. */
+    static final int RETURN = 21;
+    /** {@code expression}: {@code -> value}, evaluates a node with the tree interpreter. */
+    static final int EVALUATE = 22;
+    /** {@code statement}: runs a node with the tree interpreter. */
+    static final int RUN = 23;
+
+    private static final String[] NAMES = {
+            "HALT", "CONSTANT", "POP", "LOAD_VARIABLE", "STORE_VARIABLE", "UPDATE_VARIABLE", "DECLARE", "BINARY", "UNARY",
+            "GET_PROPERTY", "CALL", "METHOD", "CALL_METHOD", "JUMP", "JUMP_IF_FALSE", "JUMP_IF_FALSE_OR_POP", "JUMP_IF_TRUE_OR_POP",
+            "ENTER_SCOPE", "EXIT_SCOPE", "UNWIND", "RETURN_VALUE", "RETURN", "EVALUATE", "RUN",
+            "MODIFY_VARIABLE", "MODIFY_VARIABLE_DISCARD"
+    };
+    private static final int[] OPERANDS = {
+            0, 1, 0, 1, 1, 2, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1,
+            1, 0, 1, 0, 0, 1, 1,
+            1, 1
+    };
+
+    private Opcodes() {
+    }
+
+    static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    static int operandCount(int opcode) {
+        return OPERANDS[opcode];
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.bytecode;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.BinaryExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.FunctionCallExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.PropertyAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnaryExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnaryModificationExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.ReturnException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.BreakStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ContinueStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.VariableCreationStatement;
+
+import java.util.Arrays;
+
+/**
+ * Runs {@link Chunk}s with a single dispatch loop. Behaves exactly like the tree interpreter on the nodes the chunk was compiled from.
+ * <p>
+ * Calls go through {@link PatchFunction#execute}, so every function body runs in its own invocation of the machine.
+ * Returns use the same {@link ReturnException} as the interpreter, which lets compiled bodies and interpreted callers mix freely.
+ */
+final class VirtualMachine {
+    private VirtualMachine() {
+    }
+
+    static void run(Chunk chunk, EvaluationContext context) {
+        var code = chunk.code;
+        var constants = chunk.constants;
+        var stack = new Object[chunk.maxStack];
+        var scopes = chunk.maxScopes == 0 ? null : new EvaluationContext[chunk.maxScopes];
+        int sp = 0;
+        int scopeDepth = 0;
+        int pc = 0;
+        int start = 0;
+
+        while (true) {
+            try {
+                while (true) {
+                    start = pc;
+                    switch (code[pc++]) {
+                        case Opcodes.HALT -> {
+                            return;
+                        }
+                        case Opcodes.CONSTANT -> stack[sp++] = constants[code[pc++]];
+                        case Opcodes.POP -> stack[--sp] = null;
+                        case Opcodes.LOAD_VARIABLE -> {
+                            var variable = (VariableAccessExpression) constants[code[pc++]];
+                            stack[sp++] = context.variables().getVariable(variable.name(), variable.slot(), variable.pos());
+                        }
+                        case Opcodes.STORE_VARIABLE -> {
+                            var variable = (VariableAccessExpression) constants[code[pc++]];
+                            context.variables().setVariable(variable.name(), variable.slot(), (Value) stack[sp - 1], variable.pos());
+                        }
+                        case Opcodes.UPDATE_VARIABLE -> {
+                            var variable = (VariableAccessExpression) constants[code[pc++]];
+                            var operator = (BinaryExpression.Operator) constants[code[pc++]];
+                            var value = (Value) stack[--sp];
+                            var result = operator.apply((Value) stack[sp - 1], value, chunk.positions[start], context.config());
+                            context.variables().setVariable(variable.name(), variable.slot(), result, variable.pos());
+                            stack[sp - 1] = value;
+                        }
+                        case Opcodes.MODIFY_VARIABLE -> {
+                            var modification = (UnaryModificationExpression) constants[code[pc++]];
+                            var variable = (VariableAccessExpression) modification.target();
+                            var oldValue = context.variables().getVariable(variable.name(), variable.slot(), variable.pos());
+                            var newValue = modification.operator().apply(oldValue, modification.pos(), context.config());
+                            context.variables().setVariable(variable.name(), variable.slot(), newValue, variable.pos());
+                            stack[sp++] = modification.postfix() ? oldValue : newValue;
+                        }
+                        case Opcodes.MODIFY_VARIABLE_DISCARD -> ((UnaryModificationExpression) constants[code[pc++]]).run(context);
+                        case Opcodes.DECLARE -> {
+                            var declaration = (VariableCreationStatement) constants[code[pc++]];
+                            var value = (Value) stack[--sp];
+                            stack[sp] = null;
+                            context.variables().createVariable(declaration.name(), declaration.slot(), value, declaration.mutable(), declaration.pos());
+                        }
+                        case Opcodes.BINARY -> {
+                            var expression = (BinaryExpression) constants[code[pc++]];
+                            var second = (Value) stack[--sp];
+                            stack[sp] = null;
+                            stack[sp - 1] = expression.apply((Value) stack[sp - 1], second, context);
+                        }
+                        case Opcodes.UNARY -> {
+                            var operator = (UnaryExpression.Operator) constants[code[pc++]];
+                            stack[sp - 1] = operator.apply((Value) stack[sp - 1], chunk.positions[start], context.config());
+                        }
+                        case Opcodes.GET_PROPERTY -> {
+                            var property = (PropertyAccessExpression) constants[code[pc++]];
+                            stack[sp - 1] = property.get(context, (Value) stack[sp - 1]);
+                        }
+                        case Opcodes.CALL -> {
+                            var call = (FunctionCallExpression) constants[code[pc++]];
+                            var count = call.arguments().size();
+                            var arguments = new Value[count];
+                            sp -= count;
+                            System.arraycopy(stack, sp, arguments, 0, count);
+                            Arrays.fill(stack, sp, sp + count, null);
+                            stack[sp - 1] = call.call(context, (Value) stack[sp - 1], arguments);
+                        }
+                        case Opcodes.METHOD -> {
+                            var property = (PropertyAccessExpression) constants[code[pc++]];
+                            var receiver = (Value) stack[sp - 1];
+                            var method = property.findMethod(receiver);
+                            if (method != null) {
+                                stack[sp - 1] = method;
+                                stack[sp++] = receiver;
+                            } else {
+                                stack[sp - 1] = property.get(context, receiver);
+                                stack[sp++] = null;
+                            }
+                        }
+                        case Opcodes.CALL_METHOD -> {
+                            var count = code[pc++];
+                            sp -= count + 1;
+                            Value result;
+                            if (stack[sp] instanceof Value receiver) {
+                                var arguments = new Value[count + 1];
+                                System.arraycopy(stack, sp, arguments, 0, count + 1);
+                                result = ((PatchFunction) stack[sp - 1]).execute(context, arguments, chunk.positions[start]);
+                            } else if (stack[sp - 1] instanceof Value.FunctionValue function) {
+                                var arguments = new Value[count];
+                                System.arraycopy(stack, sp + 1, arguments, 0, count);
+                                result = function.function().execute(context, arguments, chunk.positions[start]);
+                            } else {
+                                throw new EvaluationException(context.config(), "Tried to call %s, not a function".formatted(stack[sp - 1]), chunk.positions[start]);
+                            }
+                            Arrays.fill(stack, sp, sp + count + 1, null);
+                            stack[sp - 1] = result;
+                        }
+                        case Opcodes.JUMP -> pc = code[pc];
+                        case Opcodes.JUMP_IF_FALSE -> {
+                            var condition = (Value) stack[--sp];
+                            stack[sp] = null;
+                            pc = condition.asBoolean() ? pc + 1 : code[pc];
+                        }
+                        case Opcodes.JUMP_IF_FALSE_OR_POP -> {
+                            if (((Value) stack[sp - 1]).asBoolean()) {
+                                stack[--sp] = null;
+                                pc++;
+                            } else {
+                                pc = code[pc];
+                            }
+                        }
+                        case Opcodes.JUMP_IF_TRUE_OR_POP -> {
+                            if (((Value) stack[sp - 1]).asBoolean()) {
+                                pc = code[pc];
+                            } else {
+                                stack[--sp] = null;
+                                pc++;
+                            }
+                        }
+                        case Opcodes.ENTER_SCOPE -> {
+                            var layout = (FrameLayout) constants[code[pc++]];
+                            //noinspection DataFlowIssue
+                            scopes[scopeDepth++] = context;
+                            context = context.newScope(layout);
+                        }
+                        case Opcodes.EXIT_SCOPE -> {
+                            //noinspection DataFlowIssue
+                            context = scopes[--scopeDepth];
+                            scopes[scopeDepth] = null;
+                        }
+                        case Opcodes.UNWIND -> {
+                            var depth = code[pc++];
+                            //noinspection DataFlowIssue
+                            context = scopes[depth];
+                            Arrays.fill(scopes, depth, scopeDepth, null);
+                            scopeDepth = depth;
+                        }
+                        case Opcodes.RETURN_VALUE -> {
+                            context.variables().setReturnValue((Value) stack[--sp]);
+                            throw ReturnException.INSTANCE;
+                        }
+                        case Opcodes.RETURN -> {
+                            context.variables().setReturnValue(Value.NullValue.NULL);
+                            throw ReturnException.INSTANCE;
+                        }
+                        case Opcodes.EVALUATE -> stack[sp++] = ((Expression) constants[code[pc++]]).evaluate(context);
+                        case Opcodes.RUN -> ((Statement) constants[code[pc++]]).run(context);
+                        default -> throw new IllegalStateException("Unknown opcode %s at %s".formatted(code[start], start));
+                    }
+                }
+            } catch (BreakStatement.BreakException | ContinueStatement.ContinueException e) {
+                // Thrown by interpreted code inside a loop, find the loop and jump to it like a compiled break would
+                var handler = findHandler(chunk.handlers, start);
+                if (handler == -1) throw e;
+
+                var handlers = chunk.handlers;
+                var depth = handlers[handler + 4];
+                if (depth < scopeDepth) {
+                    //noinspection DataFlowIssue
+                    context = scopes[depth];
+                    Arrays.fill(scopes, depth, scopeDepth, null);
+                    scopeDepth = depth;
+                }
+                // Loop bodies are statements, which always start with an empty stack
+                Arrays.fill(stack, 0, sp, null);
+                sp = 0;
+                pc = e instanceof BreakStatement.BreakException ? handlers[handler + 2] : handlers[handler + 3];
+            }
+        }
+    }
+
+    private static int findHandler(int[] handlers, int pc) {
+        // Inner loops are added first, so the first match is the innermost loop
+        for (int i = 0; i < handlers.length; i += Chunk.HANDLER_SIZE) {
+            if (handlers[i] <= pc && pc < handlers[i + 1]) return i;
+        }
+        return -1;
+    }
+}
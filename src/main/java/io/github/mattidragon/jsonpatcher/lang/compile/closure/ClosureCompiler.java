@@ -0,0 +1,508 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.closure;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.*;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.ReturnException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles programs into trees of closures. Each node becomes a small lambda that is specialized on what is known about
+ * the node before it runs, like its operator, literal operands, variable slot and child count. The JIT can inline
+ * these far better than the shared {@code evaluate} methods of the interpreter, and no classes are defined per program.
+ * <p>
+ * The tree is compiled from the bottom up with a {@link TreeRewriter}, wrapping every node in a {@link ClosureExpression}
+ * or {@link ClosureStatement}. Nodes without a specialized closure keep their interpreter implementation,
+ * which then runs the compiled closures of their children. References and function expressions are left unwrapped,
+ * as their parents need to see their types, and are compiled by their parents instead.
+ */
+public final class ClosureCompiler {
+    private static final Value[] NO_ARGUMENTS = new Value[0];
+    private static final Value.NumberValue ZERO = new Value.NumberValue(0);
+    private static final Value.StringValue EMPTY_STRING = new Value.StringValue("");
+
+    private ClosureCompiler() {
+    }
+
+    public static ClosureProgram compile(Program program) {
+        var rewritten = new ClosureRewriter().rewrite(program);
+        var statements = statements(rewritten.statements());
+        var layout = rewritten.layout();
+        return new ClosureProgram(rewritten, context -> {
+            var scope = context.newProgramScope(layout);
+            try {
+                for (var statement : statements) {
+                    statement.run(scope);
+                }
+            } catch (ReturnException ignored) {
+                // Catch returns to allow top level return to end script
+            }
+        });
+    }
+
+    public static ClosureStatement compile(Statement statement) {
+        return (ClosureStatement) new ClosureRewriter().rewrite(statement);
+    }
+
+    private static class ClosureRewriter extends TreeRewriter {
+        @Override
+        protected Statement rewriteStatement(Statement statement) {
+            if (statement instanceof ClosureStatement) return statement;
+            return new ClosureStatement(statement, compileStatement(statement));
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expression) {
+            if (expression instanceof ClosureExpression || expression instanceof Reference || expression instanceof FunctionExpression) return expression;
+            return new ClosureExpression(expression, compileExpression(expression));
+        }
+    }
+
+    private static ClosureExpression.Code expression(Expression expression) {
+        if (expression instanceof ClosureExpression closure) return closure.code();
+        return compileExpression(expression);
+    }
+
+    private static ClosureExpression.Code[] expressions(List<Expression> expressions) {
+        var codes = new ClosureExpression.Code[expressions.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = expression(expressions.get(i));
+        }
+        return codes;
+    }
+
+    private static ClosureStatement.Code statement(Statement statement) {
+        if (statement instanceof ClosureStatement closure) return closure.code();
+        return compileStatement(statement);
+    }
+
+    private static ClosureStatement.Code[] statements(List<Statement> statements) {
+        var codes = new ClosureStatement.Code[statements.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = statement(statements.get(i));
+        }
+        return codes;
+    }
+
+    private static Expression unwrap(Expression expression) {
+        return expression instanceof ClosureExpression closure ? closure.original() : expression;
+    }
+
+    private static ClosureStatement.Code compileStatement(Statement statement) {
+        return switch (statement) {
+            case ExpressionStatement node when node.expression() instanceof UnaryModificationExpression modification -> modification::run;
+            case ExpressionStatement node -> {
+                var expression = expression(node.expression());
+                yield expression::evaluate;
+            }
+            case VariableCreationStatement node -> {
+                var initializer = expression(node.initializer());
+                var name = node.name();
+                var slot = node.slot();
+                var mutable = node.mutable();
+                var pos = node.pos();
+                yield context -> context.variables().createVariable(name, slot, initializer.evaluate(context), mutable, pos);
+            }
+            case FunctionDeclarationStatement node -> {
+                var function = node.value();
+                var name = node.name();
+                var slot = node.slot();
+                var pos = function.pos();
+                yield context -> context.variables().createVariable(name, slot, function.evaluate(context), false, pos);
+            }
+            case BlockStatement node -> block(node);
+            case IfStatement node -> {
+                var condition = expression(node.condition());
+                var action = statement(node.action());
+                if (node.elseAction() == null) {
+                    yield context -> {
+                        if (condition.evaluate(context).asBoolean()) action.run(context);
+                    };
+                }
+                var elseAction = statement(node.elseAction());
+                yield context -> {
+                    if (condition.evaluate(context).asBoolean()) {
+                        action.run(context);
+                    } else {
+                        elseAction.run(context);
+                    }
+                };
+            }
+            case WhileLoopStatement node -> {
+                var condition = expression(node.condition());
+                var body = statement(node.body());
+                yield context -> {
+                    while (condition.evaluate(context).asBoolean()) {
+                        try {
+                            body.run(context);
+                        } catch (BreakStatement.BreakException e) {
+                            break;
+                        } catch (ContinueStatement.ContinueException e) {
+                            // Continue
+                        }
+                    }
+                };
+            }
+            case ForLoopStatement node -> {
+                var initializer = statement(node.initializer());
+                var condition = expression(node.condition());
+                var incrementer = statement(node.incrementer());
+                var body = statement(node.body());
+                var layout = node.layout();
+                var elided = layout.isElided();
+                yield context -> {
+                    if (!elided) context = context.newScope(layout);
+                    for (initializer.run(context); condition.evaluate(context).asBoolean(); incrementer.run(context)) {
+                        try {
+                            body.run(context);
+                        } catch (BreakStatement.BreakException e) {
+                            break;
+                        } catch (ContinueStatement.ContinueException e) {
+                            // Continue
+                        }
+                    }
+                };
+            }
+            case ForEachLoopStatement node -> forEach(node);
+            case ApplyStatement node -> {
+                var root = expression(node.root());
+                var action = statement(node.action());
+                yield context -> {
+                    var value = root.evaluate(context);
+                    if (!(value instanceof Value.ObjectValue objectValue)) {
+                        throw node.error(context, "Only objects can be used in apply statements, tried to use %s".formatted(value));
+                    }
+                    action.run(context.withRoot(objectValue));
+                };
+            }
+            case ReturnStatement node -> {
+                if (node.value().isEmpty()) {
+                    yield context -> {
+                        context.variables().setReturnValue(Value.NullValue.NULL);
+                        throw ReturnException.INSTANCE;
+                    };
+                }
+                var value = expression(node.value().get());
+                yield context -> {
+                    context.variables().setReturnValue(value.evaluate(context));
+                    throw ReturnException.INSTANCE;
+                };
+            }
+            case BreakStatement ignored -> context -> {
+                throw BreakStatement.BreakException.INSTANCE;
+            };
+            case ContinueStatement ignored -> context -> {
+                throw ContinueStatement.ContinueException.INSTANCE;
+            };
+            case EmptyStatement ignored -> context -> {};
+            default -> statement::run;
+        };
+    }
+
+    private static ClosureStatement.Code block(BlockStatement node) {
+        var statements = statements(node.statements());
+        var layout = node.layout();
+        if (layout.isElided()) {
+            if (statements.length == 1) return statements[0];
+            return context -> {
+                for (var statement : statements) {
+                    statement.run(context);
+                }
+            };
+        }
+        return context -> {
+            var scope = context.newScope(layout);
+            for (var statement : statements) {
+                statement.run(scope);
+            }
+        };
+    }
+
+    private static ClosureStatement.Code forEach(ForEachLoopStatement node) {
+        var iterable = expression(node.iterable());
+        var body = statement(node.body());
+        return context -> node.loop(context, iterable.evaluate(context), body::run);
+    }
+
+    private static ClosureExpression.Code compileExpression(Expression expression) {
+        return switch (expression) {
+            case ValueExpression node -> {
+                var value = node.value();
+                yield context -> value;
+            }
+            case VariableAccessExpression node -> variable(node);
+            case AssignmentExpression node when node.target() instanceof VariableAccessExpression variable -> assignment(node, variable);
+            case UnaryModificationExpression node when node.target() instanceof VariableAccessExpression variable -> {
+                var getter = variable(variable);
+                var setter = setter(variable);
+                var operator = node.operator();
+                var pos = node.pos();
+                if (node.postfix()) {
+                    yield context -> {
+                        var oldValue = getter.evaluate(context);
+                        setter.set(context, operator.apply(oldValue, pos, context.config()));
+                        return oldValue;
+                    };
+                }
+                yield context -> {
+                    var newValue = operator.apply(getter.evaluate(context), pos, context.config());
+                    setter.set(context, newValue);
+                    return newValue;
+                };
+            }
+            case BinaryExpression node -> binary(node);
+            case UnaryExpression node -> {
+                var input = expression(node.input());
+                var operator = node.op();
+                var pos = node.pos();
+                yield context -> operator.apply(input.evaluate(context), pos, context.config());
+            }
+            case ShortedBinaryExpression node when node.op() == ShortedBinaryExpression.Operator.AND -> {
+                var first = expression(node.first());
+                var second = expression(node.second());
+                yield context -> {
+                    var value = first.evaluate(context);
+                    return value.asBoolean() ? second.evaluate(context) : value;
+                };
+            }
+            case ShortedBinaryExpression node when node.op() == ShortedBinaryExpression.Operator.OR -> {
+                var first = expression(node.first());
+                var second = expression(node.second());
+                yield context -> {
+                    var value = first.evaluate(context);
+                    return value.asBoolean() ? value : second.evaluate(context);
+                };
+            }
+            case TernaryExpression node -> {
+                var condition = expression(node.condition());
+                var ifTrue = expression(node.ifTrue());
+                var ifFalse = expression(node.ifFalse());
+                yield context -> condition.evaluate(context).asBoolean() ? ifTrue.evaluate(context) : ifFalse.evaluate(context);
+            }
+            case PropertyAccessExpression node -> {
+                var parent = expression(node.parent());
+                yield context -> node.get(context, parent.evaluate(context));
+            }
+            case FunctionCallExpression node -> call(node);
+            case IsInstanceExpression node -> {
+                var input = expression(node.input());
+                yield switch (node.type()) {
+                    case NUMBER -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.NumberValue);
+                    case STRING -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.StringValue);
+                    case BOOLEAN -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.BooleanValue);
+                    case ARRAY -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.ArrayValue);
+                    case OBJECT -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.ObjectValue);
+                    case NULL -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.NullValue);
+                    case FUNCTION -> context -> Value.BooleanValue.of(input.evaluate(context) instanceof Value.FunctionValue);
+                };
+            }
+            case ArrayInitializerExpression node -> {
+                var contents = expressions(node.contents());
+                yield context -> {
+                    var values = new ArrayList<Value>(contents.length);
+                    for (var content : contents) {
+                        values.add(content.evaluate(context));
+                    }
+                    return new Value.ArrayValue(values);
+                };
+            }
+            case ObjectInitializerExpression node -> {
+                var names = node.contents().stream().map(ObjectInitializerExpression.Entry::name).toArray(String[]::new);
+                var values = expressions(node.contents().stream().map(ObjectInitializerExpression.Entry::value).toList());
+                yield context -> {
+                    var object = new Value.ObjectValue();
+                    for (int i = 0; i < names.length; i++) {
+                        object.value().put(names[i], values[i].evaluate(context));
+                    }
+                    return object;
+                };
+            }
+            default -> expression::evaluate;
+        };
+    }
+
+    private static ClosureExpression.Code variable(VariableAccessExpression node) {
+        var name = node.name();
+        var pos = node.pos();
+        var slot = node.slot();
+        return context -> context.variables().getVariable(name, slot, pos);
+    }
+
+    private static VariableSetter setter(VariableAccessExpression node) {
+        var name = node.name();
+        var pos = node.pos();
+        var slot = node.slot();
+        return (context, value) -> context.variables().setVariable(name, slot, value, pos);
+    }
+
+    private static ClosureExpression.Code assignment(AssignmentExpression node, VariableAccessExpression variable) {
+        var value = expression(node.value());
+        var setter = setter(variable);
+        if (node.operator() == BinaryExpression.Operator.ASSIGN) {
+            return context -> {
+                var result = value.evaluate(context);
+                setter.set(context, result);
+                return result;
+            };
+        }
+        var getter = variable(variable);
+        var operator = node.operator();
+        var pos = node.pos();
+        return context -> {
+            var original = getter.evaluate(context);
+            var result = value.evaluate(context);
+            setter.set(context, operator.apply(original, result, pos, context.config()));
+            return result;
+        };
+    }
+
+    private static ClosureExpression.Code binary(BinaryExpression node) {
+        var first = expression(node.first());
+        var specialization = BinaryExpression.Specialization.find(node.op(), ZERO, ZERO);
+        // Loop conditions and counters usually compare or add a literal
+        if (specialization != null && unwrap(node.second()) instanceof ValueExpression(Value.NumberValue literal, var ignored)) {
+            var constant = literal.value();
+            switch (specialization) {
+                case NUMBER_ADD -> {
+                    return context -> {
+                        var value = first.evaluate(context);
+                        return value instanceof Value.NumberValue(var number) ? new Value.NumberValue(number + constant) : node.apply(value, literal, context);
+                    };
+                }
+                case NUMBER_SUBTRACT -> {
+                    return context -> {
+                        var value = first.evaluate(context);
+                        return value instanceof Value.NumberValue(var number) ? new Value.NumberValue(number - constant) : node.apply(value, literal, context);
+                    };
+                }
+                case NUMBER_LESS_THAN -> {
+                    return context -> {
+                        var value = first.evaluate(context);
+                        return value instanceof Value.NumberValue(var number) ? Value.BooleanValue.of(number < constant) : node.apply(value, literal, context);
+                    };
+                }
+                case NUMBER_GREATER_THAN -> {
+                    return context -> {
+                        var value = first.evaluate(context);
+                        return value instanceof Value.NumberValue(var number) ? Value.BooleanValue.of(number > constant) : node.apply(value, literal, context);
+                    };
+                }
+                case NUMBER_EQUALS -> {
+                    return context -> {
+                        var value = first.evaluate(context);
+                        return value instanceof Value.NumberValue(var number) ? Value.BooleanValue.of(number == constant) : node.apply(value, literal, context);
+                    };
+                }
+                default -> {
+                }
+            }
+        }
+
+        var second = expression(node.second());
+        if (specialization == null) {
+            // Only operators with a number specialization have any, so the others can skip the type feedback
+            if (BinaryExpression.Specialization.find(node.op(), EMPTY_STRING, EMPTY_STRING) == null) {
+                var operator = node.op();
+                var pos = node.pos();
+                return context -> operator.apply(first.evaluate(context), second.evaluate(context), pos, context.config());
+            }
+            return context -> node.apply(first.evaluate(context), second.evaluate(context), context);
+        }
+        return switch (specialization) {
+            case NUMBER_ADD -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                return a instanceof Value.NumberValue(var x) && b instanceof Value.NumberValue(var y) ? new Value.NumberValue(x + y) : node.apply(a, b, context);
+            };
+            case NUMBER_SUBTRACT -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                return a instanceof Value.NumberValue(var x) && b instanceof Value.NumberValue(var y) ? new Value.NumberValue(x - y) : node.apply(a, b, context);
+            };
+            case NUMBER_MULTIPLY -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                return a instanceof Value.NumberValue(var x) && b instanceof Value.NumberValue(var y) ? new Value.NumberValue(x * y) : node.apply(a, b, context);
+            };
+            case NUMBER_LESS_THAN -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                return a instanceof Value.NumberValue(var x) && b instanceof Value.NumberValue(var y) ? Value.BooleanValue.of(x < y) : node.apply(a, b, context);
+            };
+            case NUMBER_GREATER_THAN -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                return a instanceof Value.NumberValue(var x) && b instanceof Value.NumberValue(var y) ? Value.BooleanValue.of(x > y) : node.apply(a, b, context);
+            };
+            default -> context -> {
+                var a = first.evaluate(context);
+                var b = second.evaluate(context);
+                var result = specialization.apply(a, b);
+                return result != null ? result : node.apply(a, b, context);
+            };
+        };
+    }
+
+    private static ClosureExpression.Code call(FunctionCallExpression node) {
+        var arguments = expressions(node.arguments());
+        var pos = node.pos();
+        if (node.function() instanceof PropertyAccessExpression access) {
+            var receiverCode = expression(access.parent());
+            return context -> {
+                var receiver = receiverCode.evaluate(context);
+                var method = access.findMethod(receiver);
+                if (method != null) {
+                    var values = new Value[arguments.length + 1];
+                    values[0] = receiver;
+                    for (int i = 0; i < arguments.length; i++) {
+                        values[i + 1] = arguments[i].evaluate(context);
+                    }
+                    return method.execute(context, values, pos);
+                }
+                return node.call(context, access.get(context, receiver), evaluate(context, arguments));
+            };
+        }
+
+        // The call node checks the argument count once per callee
+        var function = expression(node.function());
+        return switch (arguments.length) {
+            case 0 -> context -> node.call(context, function.evaluate(context), NO_ARGUMENTS);
+            case 1 -> {
+                var argument = arguments[0];
+                yield context -> node.call(context, function.evaluate(context), new Value[]{argument.evaluate(context)});
+            }
+            case 2 -> {
+                var argument1 = arguments[0];
+                var argument2 = arguments[1];
+                yield context -> node.call(context, function.evaluate(context), new Value[]{argument1.evaluate(context), argument2.evaluate(context)});
+            }
+            case 3 -> {
+                var argument1 = arguments[0];
+                var argument2 = arguments[1];
+                var argument3 = arguments[2];
+                yield context -> node.call(context, function.evaluate(context), new Value[]{argument1.evaluate(context), argument2.evaluate(context), argument3.evaluate(context)});
+            }
+            default -> context -> node.call(context, function.evaluate(context), evaluate(context, arguments));
+        };
+    }
+
+    private static Value[] evaluate(EvaluationContext context, ClosureExpression.Code[] codes) {
+        if (codes.length == 0) return NO_ARGUMENTS;
+        var values = new Value[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            values[i] = codes[i].evaluate(context);
+        }
+        return values;
+    }
+
+    @FunctionalInterface
+    private interface VariableSetter {
+        void set(EvaluationContext context, Value value);
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.closure;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+
+import java.util.List;
+
+/**
+ * An expression that runs through a closure created by the {@link ClosureCompiler}. The original expression is kept for tooling and error positions.
+ */
+public record ClosureExpression(Expression original, Code code) implements Expression {
+    @Override
+    public Value evaluate(EvaluationContext context) {
+        return code.evaluate(context);
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return original.pos();
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of(original);
+    }
+
+    @FunctionalInterface
+    public interface Code {
+        Value evaluate(EvaluationContext context);
+    }
+}
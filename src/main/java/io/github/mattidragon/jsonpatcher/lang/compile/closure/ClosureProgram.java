@@ -0,0 +1,16 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.closure;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutableProgram;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+
+/**
+ * A program that was compiled with the {@link ClosureCompiler}. Behaves exactly like {@link Program#execute}.
+ * @param program The program that is run, with nodes replaced by {@link ClosureStatement}s and {@link ClosureExpression}s
+ */
+public record ClosureProgram(Program program, ClosureStatement.Code code) implements ExecutableProgram {
+    @Override
+    public void execute(EvaluationContext context) {
+        code.run(context);
+    }
+}
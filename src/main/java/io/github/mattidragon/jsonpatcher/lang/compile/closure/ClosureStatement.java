@@ -0,0 +1,33 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.closure;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+
+import java.util.List;
+
+/**
+ * A statement that runs through a closure created by the {@link ClosureCompiler}. The original statement is kept for tooling and error positions.
+ */
+public record ClosureStatement(Statement original, Code code) implements Statement {
+    @Override
+    public void run(EvaluationContext context) {
+        code.run(context);
+    }
+
+    @Override
+    public SourceSpan getPos() {
+        return original.getPos();
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of(original);
+    }
+
+    @FunctionalInterface
+    public interface Code {
+        void run(EvaluationContext context);
+    }
+}
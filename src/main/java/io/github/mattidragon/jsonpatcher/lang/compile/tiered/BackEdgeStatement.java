@@ -0,0 +1,41 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+
+import java.util.List;
+
+/**
+ * The body of an interpreted loop, which counts every iteration towards compiling the code around the loop and the body itself.
+ * Once the body is compiled, the remaining iterations run the compiled body, so a long running loop doesn't have to finish
+ * in the interpreter.
+ * @param original The body, which is what gets compiled
+ * @param instrumented The body with inner loops counting their iterations, which is what gets interpreted
+ * @param code The tiering state of the function or program containing the loop
+ * @param loop The tiering state of the body
+ */
+public record BackEdgeStatement(Statement original, Statement instrumented, TieredCode<?> code, TieredCode<Statement> loop) implements Statement {
+    @Override
+    public void run(EvaluationContext context) {
+        var compiled = loop.current();
+        if (compiled != null) {
+            compiled.run(context);
+            return;
+        }
+        code.backEdge();
+        loop.backEdge();
+        instrumented.run(context);
+    }
+
+    @Override
+    public SourceSpan getPos() {
+        return original.getPos();
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of(original);
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * A function, program or loop body that is interpreted until it gets hot and is then replaced by compiled code.
+ * Calls and loop iterations are only counted while the code is interpreted. The counters aren't synchronized,
+ * so with many threads they may miss some counts, which only delays compilation.
+ * <p>
+ * Compiled functions and programs are picked up by the next call, and calls that are already running finish in the interpreter.
+ * Compiled loop bodies are picked up by the next iteration instead, which is how running loops leave the interpreter.
+ * @param <T> The type of the compiled code
+ */
+public final class TieredCode<T> {
+    private final @Nullable SourceSpan pos;
+    private final TieringPolicy policy;
+    private final Supplier<T> compiler;
+    private final AtomicReference<Tier> tier = new AtomicReference<>(Tier.INTERPRETED);
+    private volatile @Nullable T compiled;
+    private @Nullable Throwable failure;
+    private int invocations;
+    private int backEdges;
+
+    TieredCode(@Nullable SourceSpan pos, TieringPolicy policy, Supplier<T> compiler) {
+        this.pos = pos;
+        this.policy = policy;
+        this.compiler = compiler;
+    }
+
+    /**
+     * The position of the function or loop body, or null for the top level of a program.
+     */
+    @Nullable
+    public SourceSpan pos() {
+        return pos;
+    }
+
+    public Tier tier() {
+        return tier.get();
+    }
+
+    public int invocations() {
+        return invocations;
+    }
+
+    public int backEdges() {
+        return backEdges;
+    }
+
+    /**
+     * The exception or error thrown while compiling, if the tier is {@link Tier#FAILED}.
+     */
+    @Nullable
+    public Throwable failure() {
+        return failure;
+    }
+
+    /**
+     * Counts a call.
+     * @return The compiled code, or null if the call should be interpreted
+     */
+    @Nullable
+    T enter() {
+        var compiled = this.compiled;
+        if (compiled != null) return compiled;
+        if (++invocations >= policy.invocationThreshold()) promote();
+        return null;
+    }
+
+    /**
+     * The compiled code, without counting a call.
+     */
+    @Nullable
+    T current() {
+        return compiled;
+    }
+
+    void backEdge() {
+        if (++backEdges >= policy.backEdgeThreshold()) promote();
+    }
+
+    private void promote() {
+        if (!tier.compareAndSet(Tier.INTERPRETED, Tier.COMPILING)) return;
+        try {
+            policy.executor().execute(this::compile);
+        } catch (RejectedExecutionException e) {
+            failure = e;
+            tier.set(Tier.FAILED);
+        }
+    }
+
+    private void compile() {
+        try {
+            compiled = compiler.get();
+            tier.set(Tier.COMPILED);
+        } catch (Throwable e) {
+            // Errors like LinkageError from defining classes must not leave the code stuck in COMPILING
+            failure = e;
+            tier.set(Tier.FAILED);
+            if (e instanceof VirtualMachineError error) throw error;
+        }
+    }
+
+    @Override
+    public String toString() {
+        var name = pos == null ? "program" : "code at %s %s:%s".formatted(pos.from().file().name(), pos.from().row(), pos.from().column());
+        return "TieredCode[%s, tier=%s, invocations=%s, backEdges=%s]".formatted(name, tier.get(), invocations, backEdges);
+    }
+
+    public enum Tier {
+        /**
+         * Run by the interpreter while counting calls and loop iterations.
+         */
+        INTERPRETED,
+        /**
+         * Still interpreted, but a threshold was crossed and the code is being compiled.
+         */
+        COMPILING,
+        /**
+         * Run by the engine of the policy.
+         */
+        COMPILED,
+        /**
+         * Compilation failed, so the code stays interpreted. The counters stop mattering.
+         */
+        FAILED
+    }
+}
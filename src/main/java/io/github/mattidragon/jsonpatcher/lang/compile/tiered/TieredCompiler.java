@@ -0,0 +1,117 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutableProgram;
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.compile.bytecode.BytecodeCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.closure.ClosureCompiler;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.FunctionExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ForEachLoopStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ForLoopStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.WhileLoopStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prepares programs for tiered execution. The program and each function start out interpreted and are compiled
+ * separately once they are called or loop often enough, see {@link TieringPolicy}. Loop bodies are compiled
+ * separately as well, so that a loop that is already running switches to compiled code between iterations.
+ * <p>
+ * Compiled code doesn't count anything, so it runs as fast as code compiled up front. Functions inside a compiled
+ * function or program keep their own tiering state and are compiled on their own when they get hot.
+ */
+public final class TieredCompiler {
+    // Turns instrumented bodies back into the original ones
+    private static final TreeRewriter UNINSTRUMENTED = new TreeRewriter() {
+        @Override
+        protected Statement rewriteStatement(Statement statement) {
+            return statement instanceof BackEdgeStatement node ? node.original() : statement;
+        }
+    };
+
+    private TieredCompiler() {
+    }
+
+    public static TieredProgram compile(Program program, TieringPolicy policy) {
+        var units = new ArrayList<TieredCode<?>>();
+        var loops = new ArrayList<TieredCode<Statement>>();
+        var tiered = new FunctionTiering(policy, units, loops).rewrite(program);
+        var code = new TieredCode<ExecutableProgram>(null, policy, () -> policy.engine().prepare(tiered));
+        units.addFirst(code);
+        return new TieredProgram(new BackEdgeCounter(code, policy, loops).rewrite(tiered), code, List.copyOf(units), List.copyOf(loops), policy);
+    }
+
+    private static Statement compileBody(Statement body, TieringPolicy policy) {
+        return switch (policy.engine()) {
+            case CLOSURES -> ClosureCompiler.compile(body);
+            case BYTECODE -> BytecodeCompiler.compileTree(body);
+            case INTERPRETER, TIERED -> throw new IllegalStateException("Can't tier up to %s".formatted(policy.engine()));
+        };
+    }
+
+    /**
+     * Gives every function its own tiering state. Inner functions are rewritten first, so they are tiered on their own.
+     */
+    private static class FunctionTiering extends TreeRewriter {
+        private final TieringPolicy policy;
+        private final List<TieredCode<?>> units;
+        private final List<TieredCode<Statement>> loops;
+
+        private FunctionTiering(TieringPolicy policy, List<TieredCode<?>> units, List<TieredCode<Statement>> loops) {
+            this.policy = policy;
+            this.units = units;
+            this.loops = loops;
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expression) {
+            if (expression instanceof FunctionExpression function && !(function.body() instanceof TieredStatement)) {
+                var body = function.body();
+                var code = new TieredCode<Statement>(function.pos(), policy, () -> compileBody(body, policy));
+                units.add(code);
+                var tiered = new TieredStatement(body, new BackEdgeCounter(code, policy, loops).rewrite(body), code);
+                return new FunctionExpression(tiered, function.args(), function.pos(), function.layout());
+            }
+            return expression;
+        }
+    }
+
+    /**
+     * Makes the loops of one function or program count their iterations. Stops at inner functions, as they count towards their own state.
+     */
+    private static class BackEdgeCounter extends TreeRewriter {
+        private final TieredCode<?> code;
+        private final TieringPolicy policy;
+        private final List<TieredCode<Statement>> loops;
+
+        private BackEdgeCounter(TieredCode<?> code, TieringPolicy policy, List<TieredCode<Statement>> loops) {
+            this.code = code;
+            this.policy = policy;
+            this.loops = loops;
+        }
+
+        @Override
+        protected Statement rewriteStatement(Statement statement) {
+            return switch (statement) {
+                case WhileLoopStatement node -> new WhileLoopStatement(node.condition(), count(node.body()), node.pos());
+                case ForLoopStatement node ->
+                        new ForLoopStatement(node.initializer(), node.condition(), node.incrementer(), count(node.body()), node.pos(), node.layout());
+                case ForEachLoopStatement node ->
+                        new ForEachLoopStatement(node.iterable(), node.variableName(), count(node.body()), node.pos(), node.variablePos(), node.layout(), node.slot());
+                default -> statement;
+            };
+        }
+
+        private Statement count(Statement body) {
+            // Inner loops were already instrumented, but the compiled body shouldn't count anything
+            var original = UNINSTRUMENTED.rewrite(body);
+            var loop = new TieredCode<Statement>(original.getPos(), policy, () -> compileBody(original, policy));
+            loops.add(loop);
+            return new BackEdgeStatement(original, body, code, loop);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutableProgram;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+
+import java.util.List;
+
+/**
+ * A program that was prepared by the {@link TieredCompiler}. Behaves exactly like {@link Program#execute}.
+ * @param program The interpreted program, with function bodies replaced by {@link TieredStatement}s and loops counting iterations
+ * @param code The tiering state of the top level of the program
+ * @param units The tiering state of the program followed by its functions, with inner functions before the ones containing them. Useful to see what got compiled
+ * @param loops The tiering state of the loop bodies, which are compiled on their own so that running loops can switch to compiled code
+ */
+public record TieredProgram(Program program, TieredCode<ExecutableProgram> code, List<TieredCode<?>> units, List<TieredCode<Statement>> loops, TieringPolicy policy) implements ExecutableProgram {
+    @Override
+    public void execute(EvaluationContext context) {
+        var compiled = code.enter();
+        if (compiled != null) {
+            compiled.execute(context);
+        } else {
+            program.execute(context);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
+
+import java.util.List;
+
+/**
+ * A function body that switches from the interpreter to compiled code once it gets hot.
+ * @param original The body, which is what gets compiled
+ * @param instrumented The body with loops counting their iterations, which is what gets interpreted
+ */
+public record TieredStatement(Statement original, Statement instrumented, TieredCode<Statement> code) implements Statement {
+    @Override
+    public void run(EvaluationContext context) {
+        var compiled = code.enter();
+        if (compiled != null) {
+            compiled.run(context);
+        } else {
+            instrumented.run(context);
+        }
+    }
+
+    @Override
+    public SourceSpan getPos() {
+        return original.getPos();
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of(original);
+    }
+}
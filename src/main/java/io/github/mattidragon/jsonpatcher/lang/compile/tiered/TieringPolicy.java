@@ -0,0 +1,25 @@
+package io.github.mattidragon.jsonpatcher.lang.compile.tiered;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Decides when code run by a {@link TieredProgram} is compiled.
+ * @param invocationThreshold The number of calls after which a function or program is compiled
+ * @param backEdgeThreshold The number of loop iterations after which the function or program containing the loop is compiled. Each loop body is also compiled on its own after this many iterations, so that a running loop continues in compiled code
+ * @param engine The engine that hot code is compiled with
+ * @param executor The executor that compiles code. Compilation never blocks the code that triggered it
+ */
+public record TieringPolicy(int invocationThreshold, int backEdgeThreshold, ExecutionEngine engine, Executor executor) {
+    public static final TieringPolicy DEFAULT = new TieringPolicy(1000, 10000, ExecutionEngine.CLOSURES, ForkJoinPool.commonPool());
+
+    public TieringPolicy {
+        if (invocationThreshold < 1) throw new IllegalArgumentException("invocationThreshold must be positive, was %s".formatted(invocationThreshold));
+        if (backEdgeThreshold < 1) throw new IllegalArgumentException("backEdgeThreshold must be positive, was %s".formatted(backEdgeThreshold));
+        if (engine == ExecutionEngine.INTERPRETER || engine == ExecutionEngine.TIERED) {
+            throw new IllegalArgumentException("Can't tier up to %s".formatted(engine));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+/**
+ * Thrown when a {@link JsonReader} is given invalid json, or json that exceeds its limits.
+ */
+public class JsonException extends RuntimeException {
+    private final int offset;
+    private final int line;
+    private final int column;
+
+    public JsonException(String message, int offset, int line, int column) {
+        super("%s at line %s column %s".formatted(message, line, column));
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    /**
+     * The byte offset of the error in the input.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * The column of the error, counted in bytes from the start of the line.
+     */
+    public int getColumn() {
+        return column;
+    }
+}
@@ -0,0 +1,609 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Reads json from UTF-8 bytes straight into {@link Value}s, without creating tokens in between. Instances are thread safe.
+ * @param maxDepth The maximum nesting depth of objects and arrays, which also protects against stack overflows
+ * @param allowDuplicateKeys Whether objects may repeat keys. If they may, the last value of a key wins.
+ */
+public record JsonReader(int maxDepth, boolean allowDuplicateKeys) {
+    public static final JsonReader DEFAULT = new JsonReader(512, true);
+    static final int KEY_CACHE_SIZE = 256;
+    // Objects with more keys are checked for duplicates with a hash map when read into a tape
+    private static final int MAX_SEARCHED_KEYS = 16;
+
+    public JsonReader {
+        if (maxDepth < 1) throw new IllegalArgumentException("maxDepth must be positive, was %s".formatted(maxDepth));
+    }
+
+    public JsonReader withMaxDepth(int maxDepth) {
+        return new JsonReader(maxDepth, allowDuplicateKeys);
+    }
+
+    public JsonReader withAllowDuplicateKeys(boolean allowDuplicateKeys) {
+        return new JsonReader(maxDepth, allowDuplicateKeys);
+    }
+
+    /**
+     * @throws JsonException If the json is invalid
+     */
+    public Value read(byte[] bytes) {
+        return read(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @throws JsonException If the json is invalid
+     */
+    public Value read(byte[] bytes, int offset, int length) {
+        return new Parser(bytes, offset, offset + length).readDocument();
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer. Buffers backed by an array are read without copying.
+     * @throws JsonException If the json is invalid
+     */
+    public Value read(ByteBuffer buffer) {
+        Value value;
+        if (buffer.hasArray()) {
+            value = read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            var bytes = new byte[buffer.remaining()];
+            buffer.duplicate().get(bytes);
+            value = read(bytes);
+        }
+        buffer.position(buffer.limit());
+        return value;
+    }
+
+    /**
+     * Reads a stream until its end. The stream is not closed.
+     * @throws JsonException If the json is invalid
+     */
+    public Value read(InputStream stream) throws IOException {
+        return read(stream.readAllBytes());
+    }
+
+    /**
+     * @throws JsonException If the json is invalid
+     */
+    public Value read(String json) {
+        return read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads json lazily. The bytes are validated up front, but objects and arrays are only decoded once they are accessed,
+     * and ones that never are are written out by {@link JsonWriter} by copying their bytes. This makes reading a few values
+     * out of a large document much cheaper than reading all of it.
+     * <p>
+     * The returned values keep the array, so it must not be modified while they are in use. Unlike other values,
+     * lazy values change internally when read, so they must not be read from multiple threads at once.
+     * @throws JsonException If the json is invalid
+     */
+    public Value readLazy(byte[] bytes) {
+        return readLazy(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads json lazily. See {@link #readLazy(byte[])}.
+     * @throws JsonException If the json is invalid
+     */
+    public Value readLazy(byte[] bytes, int offset, int length) {
+        var document = new LazyDocument(this, bytes, offset, offset + length);
+        new Parser(bytes, offset, offset + length).indexDocument(document);
+        return new Parser(document, offset).readDocument();
+    }
+
+    /**
+     * Reads json into a compact {@link JsonTape}.
+     * @throws JsonException If the json is invalid
+     */
+    public JsonTape readTape(byte[] bytes) {
+        return readTape(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads json into a compact {@link JsonTape}.
+     * @throws JsonException If the json is invalid
+     */
+    public JsonTape readTape(byte[] bytes, int offset, int length) {
+        var builder = new TapeBuilder();
+        new Parser(bytes, offset, offset + length).tapeDocument(builder);
+        return builder.build();
+    }
+
+    /**
+     * Reads json into a compact {@link JsonTape}.
+     * @throws JsonException If the json is invalid
+     */
+    public JsonTape readTape(String json) {
+        return readTape(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    Value.ObjectValue readObjectAt(LazyDocument document, int position) {
+        return new Parser(document, position).readObject();
+    }
+
+    Value.ArrayValue readArrayAt(LazyDocument document, int position) {
+        return new Parser(document, position).readArray();
+    }
+
+    private final class Parser {
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+        private int pos;
+        private int depth;
+        // Keys repeat a lot in json, so they are reused to save both decoding and memory
+        private String[] keyCache;
+        // Set when reading lazily, in which case objects and arrays are skipped over instead of read
+        private final @Nullable LazyDocument document;
+
+        private Parser(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            this.pos = start;
+            this.document = null;
+        }
+
+        private Parser(LazyDocument document, int pos) {
+            this.bytes = document.bytes;
+            this.start = document.start;
+            this.end = document.end;
+            this.pos = pos;
+            this.document = document;
+            this.keyCache = document.keyCache;
+        }
+
+        private Value readDocument() {
+            var value = readValue();
+            skipWhitespace();
+            if (pos != end) throw error("Unexpected data after json value");
+            return value;
+        }
+
+        private Value readValue() {
+            skipWhitespace();
+            if (pos >= end) throw error("Unexpected end of input");
+            return switch (bytes[pos]) {
+                case '{' -> document == null ? readObject() : new Value.ObjectValue(new LazyMap(document, pos, skipIndexed(document)));
+                case '[' -> document == null ? readArray() : new Value.ArrayValue(new LazyList(document, pos, skipIndexed(document)));
+                case '"' -> new Value.StringValue(readString(false));
+                case 't' -> readLiteral("true", Value.BooleanValue.TRUE);
+                case 'f' -> readLiteral("false", Value.BooleanValue.FALSE);
+                case 'n' -> readLiteral("null", Value.NullValue.NULL);
+                default -> new Value.NumberValue(readNumber());
+            };
+        }
+
+        private Value.ObjectValue readObject() {
+            enter();
+            var object = new Value.ObjectValue();
+            var map = object.value();
+            pos++;
+            skipWhitespace();
+            if (consume('}')) {
+                depth--;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                if (pos >= end || bytes[pos] != '"') throw error("Expected object key");
+                var keyPos = pos;
+                var key = readString(true);
+                skipWhitespace();
+                if (!consume(':')) throw error("Expected ':'");
+                var value = readValue();
+                if (map.put(key, value) != null && !allowDuplicateKeys) {
+                    pos = keyPos;
+                    throw error("Duplicate key '%s'".formatted(key));
+                }
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume('}')) throw error("Expected ',' or '}'");
+            depth--;
+            return object;
+        }
+
+        private Value.ArrayValue readArray() {
+            enter();
+            var array = new Value.ArrayValue();
+            var list = array.value();
+            pos++;
+            skipWhitespace();
+            if (consume(']')) {
+                depth--;
+                return array;
+            }
+            do {
+                list.add(readValue());
+                skipWhitespace();
+            } while (consume(','));
+            if (!consume(']')) throw error("Expected ',' or ']'");
+            depth--;
+            return array;
+        }
+
+        private void tapeDocument(TapeBuilder builder) {
+            tapeValue(builder);
+            skipWhitespace();
+            if (pos != end) throw error("Unexpected data after json value");
+        }
+
+        private void tapeValue(TapeBuilder builder) {
+            skipWhitespace();
+            if (pos >= end) throw error("Unexpected end of input");
+            switch (bytes[pos]) {
+                case '{' -> tapeObject(builder);
+                case '[' -> tapeArray(builder);
+                case '"' -> builder.string(readString(false));
+                case 't' -> builder.literal(readLiteral("true", JsonTape.TRUE));
+                case 'f' -> builder.literal(readLiteral("false", JsonTape.FALSE));
+                case 'n' -> builder.literal(readLiteral("null", JsonTape.NULL));
+                default -> builder.number(readNumber());
+            }
+        }
+
+        private void tapeObject(TapeBuilder builder) {
+            enter();
+            var container = builder.start(JsonTape.OBJECT);
+            var size = 0;
+            // Small objects are searched for duplicates directly on the tape
+            Map<String, Integer> keys = null;
+            pos++;
+            skipWhitespace();
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    if (pos >= end || bytes[pos] != '"') throw error("Expected object key");
+                    var keyPos = pos;
+                    var key = readString(true);
+                    // The map is built while every entry so far is complete, as the tape can't be walked past a key without its value
+                    if (keys == null && size >= MAX_SEARCHED_KEYS) keys = builder.keys(container);
+                    var previous = keys != null ? keys.getOrDefault(key, -1) : builder.findKey(container, key);
+                    if (previous != -1) {
+                        if (!allowDuplicateKeys) {
+                            pos = keyPos;
+                            throw error("Duplicate key '%s'".formatted(key));
+                        }
+                        builder.kill(previous);
+                        size--;
+                    }
+                    if (keys != null) keys.put(key, builder.length());
+                    builder.key(key);
+                    size++;
+                    skipWhitespace();
+                    if (!consume(':')) throw error("Expected ':'");
+                    tapeValue(builder);
+                    skipWhitespace();
+                } while (consume(','));
+                if (!consume('}')) throw error("Expected ',' or '}'");
+            }
+            builder.end(container, size);
+            depth--;
+        }
+
+        private void tapeArray(TapeBuilder builder) {
+            enter();
+            var container = builder.start(JsonTape.ARRAY);
+            var size = 0;
+            pos++;
+            skipWhitespace();
+            if (!consume(']')) {
+                do {
+                    tapeValue(builder);
+                    size++;
+                    skipWhitespace();
+                } while (consume(','));
+                if (!consume(']')) throw error("Expected ',' or ']'");
+            }
+            builder.end(container, size);
+            depth--;
+        }
+
+        /**
+         * Skips an object or array that was indexed by {@link #indexDocument}.
+         * @return The position just past it
+         */
+        private int skipIndexed(LazyDocument document) {
+            pos = document.endOf(pos);
+            return pos;
+        }
+
+        /**
+         * Validates a document and records where its objects and arrays end, without creating any values.
+         */
+        private void indexDocument(LazyDocument document) {
+            skipValue(document);
+            skipWhitespace();
+            if (pos != end) throw error("Unexpected data after json value");
+        }
+
+        private void skipValue(LazyDocument document) {
+            skipWhitespace();
+            if (pos >= end) throw error("Unexpected end of input");
+            switch (bytes[pos]) {
+                case '{' -> skipObject(document);
+                case '[' -> skipArray(document);
+                case '"' -> skipString();
+                case 't' -> readLiteral("true", Value.BooleanValue.TRUE);
+                case 'f' -> readLiteral("false", Value.BooleanValue.FALSE);
+                case 'n' -> readLiteral("null", Value.NullValue.NULL);
+                default -> readNumber();
+            }
+        }
+
+        private void skipObject(LazyDocument document) {
+            enter();
+            var container = document.open(pos);
+            // Duplicates have to be found now, as decoding later mustn't fail
+            var keys = allowDuplicateKeys ? null : new HashSet<String>();
+            pos++;
+            skipWhitespace();
+            if (!consume('}')) {
+                do {
+                    skipWhitespace();
+                    if (pos >= end || bytes[pos] != '"') throw error("Expected object key");
+                    if (keys == null) {
+                        skipString();
+                    } else {
+                        var keyPos = pos;
+                        var key = readString(true);
+                        if (!keys.add(key)) {
+                            pos = keyPos;
+                            throw error("Duplicate key '%s'".formatted(key));
+                        }
+                    }
+                    skipWhitespace();
+                    if (!consume(':')) throw error("Expected ':'");
+                    skipValue(document);
+                    skipWhitespace();
+                } while (consume(','));
+                if (!consume('}')) throw error("Expected ',' or '}'");
+            }
+            document.close(container, pos);
+            depth--;
+        }
+
+        private void skipArray(LazyDocument document) {
+            enter();
+            var container = document.open(pos);
+            pos++;
+            skipWhitespace();
+            if (!consume(']')) {
+                do {
+                    skipValue(document);
+                    skipWhitespace();
+                } while (consume(','));
+                if (!consume(']')) throw error("Expected ',' or ']'");
+            }
+            document.close(container, pos);
+            depth--;
+        }
+
+        private void skipString() {
+            pos++;
+            while (true) {
+                if (pos >= end) throw error("Unterminated string");
+                var b = bytes[pos];
+                if (b == '"') {
+                    pos++;
+                    return;
+                }
+                if (b >= 0 && b < 0x20) throw error("Control character in string");
+                pos++;
+                if (b != '\\') continue;
+                if (pos >= end) throw error("Unterminated string");
+                switch (bytes[pos++]) {
+                    case '"', '\\', '/', 'b', 'f', 'n', 'r', 't' -> {}
+                    case 'u' -> readUnicodeEscape();
+                    default -> {
+                        pos--;
+                        throw error("Invalid escape sequence");
+                    }
+                }
+            }
+        }
+
+        private void enter() {
+            if (++depth > maxDepth) throw error("Json is nested deeper than %s levels".formatted(maxDepth));
+        }
+
+        private <T> T readLiteral(String literal, T value) {
+            var length = literal.length();
+            if (end - pos < length) throw error("Invalid literal");
+            for (int i = 0; i < length; i++) {
+                if (bytes[pos + i] != literal.charAt(i)) throw error("Invalid literal");
+            }
+            pos += length;
+            return value;
+        }
+
+        private double readNumber() {
+            var numberStart = pos;
+            var negative = consume('-');
+            // Up to 19 digits fit in a long, anything longer takes the slow path anyway
+            long mantissa = 0;
+            var digits = 0;
+            var exponent = 0;
+
+            if (pos < end && bytes[pos] == '0') {
+                pos++;
+            } else if (isDigit()) {
+                while (isDigit()) {
+                    if (digits < 19) mantissa = mantissa * 10 + (bytes[pos] - '0');
+                    else exponent++;
+                    digits++;
+                    pos++;
+                }
+            } else {
+                throw error(negative ? "Invalid number" : "Unexpected character");
+            }
+
+            if (consume('.')) {
+                if (!isDigit()) throw error("Invalid number");
+                while (isDigit()) {
+                    if (digits < 19) {
+                        mantissa = mantissa * 10 + (bytes[pos] - '0');
+                        exponent--;
+                    }
+                    if (mantissa != 0) digits++;
+                    pos++;
+                }
+            }
+
+            if (pos < end && (bytes[pos] == 'e' || bytes[pos] == 'E')) {
+                pos++;
+                var negativeExponent = consume('-');
+                if (!negativeExponent) consume('+');
+                if (!isDigit()) throw error("Invalid number");
+                var explicitExponent = 0;
+                while (isDigit()) {
+                    // Larger exponents overflow or underflow no matter the mantissa
+                    if (explicitExponent < 100_000) explicitExponent = explicitExponent * 10 + (bytes[pos] - '0');
+                    pos++;
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+
+            // Both the mantissa and the power of ten are exact doubles here, so a single operation rounds correctly
+            if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+                double value = mantissa;
+                if (exponent > 0) value *= POWERS_OF_TEN[exponent];
+                else if (exponent < 0) value /= POWERS_OF_TEN[-exponent];
+                return negative ? -value : value;
+            }
+            return Double.parseDouble(new String(bytes, numberStart, pos - numberStart, StandardCharsets.ISO_8859_1));
+        }
+
+        private boolean isDigit() {
+            return pos < end && bytes[pos] >= '0' && bytes[pos] <= '9';
+        }
+
+        private String readString(boolean key) {
+            var stringStart = ++pos;
+            var hash = 0;
+            while (true) {
+                if (pos >= end) throw error("Unterminated string");
+                var b = bytes[pos];
+                if (b == '"') break;
+                // Escapes, control characters and anything outside ascii (negative bytes) take the slow path
+                if (b == '\\' || b < 0x20) return readStringSlow(stringStart);
+                hash = 31 * hash + b;
+                pos++;
+            }
+            var length = pos - stringStart;
+            pos++;
+            return key ? cachedKey(stringStart, length, hash) : new String(bytes, stringStart, length, StandardCharsets.ISO_8859_1);
+        }
+
+        private String cachedKey(int keyStart, int length, int hash) {
+            if (keyCache == null) keyCache = new String[KEY_CACHE_SIZE];
+            var slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+            var cached = keyCache[slot];
+            if (cached != null && cached.length() == length) {
+                var matches = true;
+                for (int i = 0; i < length; i++) {
+                    if (cached.charAt(i) != bytes[keyStart + i]) {
+                        matches = false;
+                        break;
+                    }
+                }
+                if (matches) return cached;
+            }
+            var key = new String(bytes, keyStart, length, StandardCharsets.ISO_8859_1);
+            keyCache[slot] = key;
+            return key;
+        }
+
+        private String readStringSlow(int stringStart) {
+            var builder = new StringBuilder(pos - stringStart + 16);
+            builder.append(new String(bytes, stringStart, pos - stringStart, StandardCharsets.ISO_8859_1));
+            while (true) {
+                var runStart = pos;
+                while (pos < end && bytes[pos] != '"' && bytes[pos] != '\\' && (bytes[pos] & 0xFF) >= 0x20) {
+                    pos++;
+                }
+                if (pos > runStart) builder.append(new String(bytes, runStart, pos - runStart, StandardCharsets.UTF_8));
+                if (pos >= end) throw error("Unterminated string");
+
+                var b = bytes[pos];
+                if (b == '"') {
+                    pos++;
+                    return builder.toString();
+                }
+                if (b != '\\') throw error("Control character in string");
+                pos++;
+                if (pos >= end) throw error("Unterminated string");
+                switch (bytes[pos++]) {
+                    case '"' -> builder.append('"');
+                    case '\\' -> builder.append('\\');
+                    case '/' -> builder.append('/');
+                    case 'b' -> builder.append('\b');
+                    case 'f' -> builder.append('\f');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    case 't' -> builder.append('\t');
+                    case 'u' -> builder.append(readUnicodeEscape());
+                    default -> {
+                        pos--;
+                        throw error("Invalid escape sequence");
+                    }
+                }
+            }
+        }
+
+        private char readUnicodeEscape() {
+            if (end - pos < 4) throw error("Invalid unicode escape");
+            var value = 0;
+            for (int i = 0; i < 4; i++) {
+                var digit = Character.digit(bytes[pos++], 16);
+                if (digit < 0) throw error("Invalid unicode escape");
+                value = value * 16 + digit;
+            }
+            return (char) value;
+        }
+
+        private boolean consume(char expected) {
+            if (pos < end && bytes[pos] == expected) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespace() {
+            while (pos < end) {
+                var b = bytes[pos];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return;
+                pos++;
+            }
+        }
+
+        private JsonException error(String message) {
+            var line = 1;
+            var lineStart = start;
+            for (int i = start; i < pos && i < end; i++) {
+                if (bytes[i] == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            return new JsonException(message, pos - start, line, pos - lineStart + 1);
+        }
+    }
+}
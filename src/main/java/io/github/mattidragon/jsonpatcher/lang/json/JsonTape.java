@@ -0,0 +1,138 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+
+/**
+ * A compact, immutable json document. The document is stored as a flat array of entries, with strings in a pool
+ * where each distinct string is stored once. This takes far less memory than the equivalent values,
+ * which makes tapes suitable for keeping many documents in memory.
+ * <p>
+ * Tapes are used through {@link #toValue() views}, which read straight from the tape. A view of an object or array
+ * only copies its contents into regular storage once it's written to, and only for that object or array.
+ * Tapes are thread safe, but each view belongs to a single thread like other values.
+ */
+public final class JsonTape {
+    // Each entry is a tag in the top byte and a payload below it
+    static final long OBJECT = 1L << 56;
+    static final long ARRAY = 2L << 56;
+    static final long KEY = 3L << 56;
+    // A key that is followed by a later duplicate. It and its value are skipped.
+    static final long DEAD_KEY = 4L << 56;
+    static final long STRING = 5L << 56;
+    // Followed by an entry holding the bits of the number
+    static final long NUMBER = 6L << 56;
+    static final long TRUE = 7L << 56;
+    static final long FALSE = 8L << 56;
+    static final long NULL = 9L << 56;
+    static final long TAG_MASK = 0xFFL << 56;
+    // Objects and arrays store their size above the index of the entry after them. Larger sizes are counted when needed.
+    static final int MAX_STORED_SIZE = 0xFFFFFF;
+
+    final long[] tape;
+    final String[] strings;
+
+    JsonTape(long[] tape, String[] strings) {
+        this.tape = tape;
+        this.strings = strings;
+    }
+
+    /**
+     * Creates a tape with the contents of a value.
+     * @throws IllegalArgumentException If the value contains functions or contains itself
+     */
+    public static JsonTape of(Value value) {
+        var builder = new TapeBuilder();
+        builder.value(value, 0);
+        return builder.build();
+    }
+
+    /**
+     * Creates a new view of this tape. Writes to a view don't affect the tape or other views.
+     */
+    public Value toValue() {
+        return value(0);
+    }
+
+    /**
+     * The approximate number of bytes used by this tape, including the strings.
+     */
+    public long estimatedSize() {
+        long size = 16 + 8L * tape.length + 16 + 4L * strings.length;
+        for (var string : strings) {
+            size += 40 + string.length();
+        }
+        return size;
+    }
+
+    static long tag(long entry) {
+        return entry & TAG_MASK;
+    }
+
+    /**
+     * @return The index of the entry after the value at an index
+     */
+    int next(int index) {
+        return next(tape, index);
+    }
+
+    static int next(long[] tape, int index) {
+        var entry = tape[index];
+        var tag = tag(entry);
+        if (tag == OBJECT || tag == ARRAY) return (int) entry;
+        return tag == NUMBER ? index + 2 : index + 1;
+    }
+
+    /**
+     * @return The number of entries of an object or elements of an array
+     */
+    int size(int index) {
+        var size = (int) (tape[index] >>> 32) & MAX_STORED_SIZE;
+        if (size < MAX_STORED_SIZE) return size;
+        size = 0;
+        var array = tag(tape[index]) == ARRAY;
+        var end = next(index);
+        for (int i = index + 1; i < end; ) {
+            if (array) {
+                size++;
+                i = next(i);
+            } else {
+                if (tag(tape[i]) == KEY) size++;
+                i = next(i + 1);
+            }
+        }
+        return size;
+    }
+
+    String string(int index) {
+        return strings[(int) tape[index]];
+    }
+
+    /**
+     * Reads the value at an index. Objects and arrays become new views.
+     */
+    Value value(int index) {
+        var entry = tape[index];
+        var tag = tag(entry);
+        if (tag == OBJECT) return new Value.ObjectValue(new TapeMap(this, index));
+        if (tag == ARRAY) return new Value.ArrayValue(new TapeList(this, index));
+        if (tag == STRING) return new Value.StringValue(strings[(int) entry]);
+        if (tag == NUMBER) return new Value.NumberValue(Double.longBitsToDouble(tape[index + 1]));
+        if (tag == TRUE) return Value.BooleanValue.TRUE;
+        if (tag == FALSE) return Value.BooleanValue.FALSE;
+        if (tag == NULL) return Value.NullValue.NULL;
+        throw new IllegalStateException("Unexpected tape entry " + Long.toHexString(entry));
+    }
+
+    /**
+     * Whether the value at an index is an object or array, which views have to keep so that writes to them stick.
+     */
+    boolean isContainer(int index) {
+        var tag = tag(tape[index]);
+        return tag == OBJECT || tag == ARRAY;
+    }
+
+    @Override
+    public String toString() {
+        return JsonWriter.COMPACT.writeToString(toValue());
+    }
+}
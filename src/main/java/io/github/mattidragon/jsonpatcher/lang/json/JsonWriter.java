@@ -0,0 +1,344 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link Value}s as json. Output is buffered internally and written to the target in chunks, which are flushed
+ * once the value is written. Targets are not closed. Instances are thread safe.
+ * <p>
+ * Integral numbers are written without a fraction. Functions and numbers that json can't represent,
+ * like {@code NaN}, can't be written and cause an {@link IllegalArgumentException}.
+ * <p>
+ * Objects and arrays {@linkplain JsonReader#readLazy(byte[]) read lazily} that were never accessed are written
+ * by copying the bytes they were read from, so they keep their original formatting.
+ * @param indent The indent used for each level of pretty printed output, or null for compact output
+ * @param maxDepth The maximum nesting depth of objects and arrays, which also stops cyclic values
+ */
+public record JsonWriter(@Nullable String indent, int maxDepth) {
+    public static final JsonWriter COMPACT = new JsonWriter(null, 512);
+    public static final JsonWriter PRETTY = new JsonWriter("  ", 512);
+    private static final int BUFFER_SIZE = 8192;
+
+    public JsonWriter {
+        if (indent != null && !indent.chars().allMatch(c -> c == ' ' || c == '\t')) throw new IllegalArgumentException("Indent may only contain spaces and tabs");
+        if (maxDepth < 1) throw new IllegalArgumentException("maxDepth must be positive, was %s".formatted(maxDepth));
+    }
+
+    public boolean isPretty() {
+        return indent != null;
+    }
+
+    public void write(Value value, OutputStream stream) throws IOException {
+        new ByteGenerator((bytes, length) -> stream.write(bytes, 0, length)).writeDocument(value);
+    }
+
+    public void write(Value value, WritableByteChannel channel) throws IOException {
+        new ByteGenerator((bytes, length) -> {
+            var buffer = ByteBuffer.wrap(bytes, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }).writeDocument(value);
+    }
+
+    public void write(Value value, Writer writer) throws IOException {
+        new CharGenerator((chars, length) -> writer.write(chars, 0, length)).writeDocument(value);
+    }
+
+    /**
+     * Writes a value as UTF-8 bytes.
+     */
+    public byte[] toBytes(Value value) {
+        var stream = new ByteArrayOutputStream();
+        try {
+            write(value, stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return stream.toByteArray();
+    }
+
+    public String writeToString(Value value) {
+        var builder = new StringBuilder();
+        try {
+            new CharGenerator((chars, length) -> builder.append(chars, 0, length)).writeDocument(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return builder.toString();
+    }
+
+    @FunctionalInterface
+    private interface ByteTarget {
+        void write(byte[] bytes, int length) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface CharTarget {
+        void write(char[] chars, int length) throws IOException;
+    }
+
+    /**
+     * Walks the value. Subclasses buffer the output in their own unit.
+     */
+    private abstract class Generator {
+        protected abstract void ascii(char c) throws IOException;
+
+        protected abstract void ascii(String string) throws IOException;
+
+        /**
+         * Writes a quoted and escaped string.
+         */
+        protected abstract void string(String string) throws IOException;
+
+        /**
+         * Writes json from UTF-8 bytes as is.
+         */
+        protected abstract void raw(byte[] bytes, int from, int to) throws IOException;
+
+        protected abstract void flush() throws IOException;
+
+        void writeDocument(Value value) throws IOException {
+            value(value, 0);
+            flush();
+        }
+
+        private void value(Value value, int depth) throws IOException {
+            switch (value) {
+                case Value.ObjectValue object when object.value() instanceof LazyMap map && !map.isExpanded() -> raw(map.document.bytes, map.start, map.end);
+                case Value.ArrayValue array when array.value() instanceof LazyList list && !list.isExpanded() -> raw(list.document.bytes, list.start, list.end);
+                case Value.ObjectValue object -> object(object, depth + 1);
+                case Value.ArrayValue array -> array(array, depth + 1);
+                case Value.StringValue(var string) -> string(string);
+                case Value.NumberValue(var number) -> number(number);
+                case Value.BooleanValue bool -> ascii(bool.value() ? "true" : "false");
+                case Value.NullValue ignored -> ascii("null");
+                case Value.FunctionValue ignored -> throw new IllegalArgumentException("Can't write function as json");
+            }
+        }
+
+        private void object(Value.ObjectValue object, int depth) throws IOException {
+            checkDepth(depth);
+            ascii('{');
+            var first = true;
+            for (var entry : object.value().entrySet()) {
+                if (!first) ascii(',');
+                first = false;
+                newLine(depth);
+                string(entry.getKey());
+                ascii(':');
+                if (indent != null) ascii(' ');
+                value(entry.getValue(), depth);
+            }
+            if (!first) newLine(depth - 1);
+            ascii('}');
+        }
+
+        private void array(Value.ArrayValue array, int depth) throws IOException {
+            checkDepth(depth);
+            ascii('[');
+            var elements = array.value();
+            for (int i = 0; i < elements.size(); i++) {
+                if (i != 0) ascii(',');
+                newLine(depth);
+                value(elements.get(i), depth);
+            }
+            if (!elements.isEmpty()) newLine(depth - 1);
+            ascii(']');
+        }
+
+        private void checkDepth(int depth) {
+            if (depth > maxDepth) throw new IllegalArgumentException("Value is nested deeper than %s levels or contains itself".formatted(maxDepth));
+        }
+
+        private void newLine(int depth) throws IOException {
+            if (indent == null) return;
+            ascii('\n');
+            for (int i = 0; i < depth; i++) {
+                ascii(indent);
+            }
+        }
+
+        private void number(double number) throws IOException {
+            if (!Double.isFinite(number)) throw new IllegalArgumentException("Can't write %s as json".formatted(number));
+            // Doubles represent every integer up to 2^53 exactly, so those are written like integers
+            if (number == (long) number && Math.abs(number) <= 0x1p53) {
+                integer((long) number);
+            } else {
+                ascii(Double.toString(number));
+            }
+        }
+
+        private void integer(long value) throws IOException {
+            if (value < 0) {
+                ascii('-');
+                value = -value;
+            }
+            var divisor = 1L;
+            while (value / divisor >= 10) {
+                divisor *= 10;
+            }
+            for (; divisor > 0; divisor /= 10) {
+                ascii((char) ('0' + value / divisor % 10));
+            }
+        }
+
+        /**
+         * @return The escape for a character that has to be escaped in json, or null if it can be written as is
+         */
+        @Nullable
+        protected static String escape(char c) {
+            return switch (c) {
+                case '"' -> "\\\"";
+                case '\\' -> "\\\\";
+                case '\n' -> "\\n";
+                case '\r' -> "\\r";
+                case '\t' -> "\\t";
+                case '\b' -> "\\b";
+                case '\f' -> "\\f";
+                default -> c < 0x20 ? "\\u%04x".formatted((int) c) : null;
+            };
+        }
+    }
+
+    private final class ByteGenerator extends Generator {
+        private final ByteTarget target;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int length;
+
+        private ByteGenerator(ByteTarget target) {
+            this.target = target;
+        }
+
+        // The longest single write is a four byte character or a six byte escape
+        private void ensure(int count) throws IOException {
+            if (length + count > buffer.length) flush();
+        }
+
+        @Override
+        protected void ascii(char c) throws IOException {
+            ensure(1);
+            buffer[length++] = (byte) c;
+        }
+
+        @Override
+        protected void ascii(String string) throws IOException {
+            for (int i = 0; i < string.length(); i++) {
+                ascii(string.charAt(i));
+            }
+        }
+
+        @Override
+        protected void string(String string) throws IOException {
+            ascii('"');
+            var size = string.length();
+            for (int i = 0; i < size; i++) {
+                var c = string.charAt(i);
+                ensure(6);
+                if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                    buffer[length++] = (byte) c;
+                } else if (c < 0x80) {
+                    ascii(escape(c));
+                } else if (c < 0x800) {
+                    buffer[length++] = (byte) (0xC0 | c >> 6);
+                    buffer[length++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    var codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    buffer[length++] = (byte) (0xF0 | codePoint >> 18);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired surrogates can't be encoded in UTF-8, but json escapes can still carry them
+                    ascii("\\u%04x".formatted((int) c));
+                } else {
+                    buffer[length++] = (byte) (0xE0 | c >> 12);
+                    buffer[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buffer[length++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            ascii('"');
+        }
+
+        @Override
+        protected void raw(byte[] bytes, int from, int to) throws IOException {
+            while (from < to) {
+                if (length == buffer.length) flush();
+                var count = Math.min(to - from, buffer.length - length);
+                System.arraycopy(bytes, from, buffer, length, count);
+                length += count;
+                from += count;
+            }
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            if (length == 0) return;
+            target.write(buffer, length);
+            length = 0;
+        }
+    }
+
+    private final class CharGenerator extends Generator {
+        private final CharTarget target;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int length;
+
+        private CharGenerator(CharTarget target) {
+            this.target = target;
+        }
+
+        @Override
+        protected void ascii(char c) throws IOException {
+            if (length == buffer.length) flush();
+            buffer[length++] = c;
+        }
+
+        @Override
+        protected void ascii(String string) throws IOException {
+            for (int i = 0; i < string.length(); i++) {
+                ascii(string.charAt(i));
+            }
+        }
+
+        @Override
+        protected void string(String string) throws IOException {
+            ascii('"');
+            for (int i = 0; i < string.length(); i++) {
+                var c = string.charAt(i);
+                var escape = c < 0x80 ? escape(c) : null;
+                if (escape == null) {
+                    ascii(c);
+                } else {
+                    ascii(escape);
+                }
+            }
+            ascii('"');
+        }
+
+        @Override
+        protected void raw(byte[] bytes, int from, int to) throws IOException {
+            var string = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            for (int i = 0; i < string.length(); i++) {
+                ascii(string.charAt(i));
+            }
+        }
+
+        @Override
+        protected void flush() throws IOException {
+            if (length == 0) return;
+            target.write(buffer, length);
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import java.util.Arrays;
+
+/**
+ * The bytes behind lazily read json, along with where each object and array in them ends. The bytes are validated
+ * before any values are created, so decoding parts of them later can't fail.
+ */
+final class LazyDocument {
+    final JsonReader reader;
+    final byte[] bytes;
+    final int start;
+    final int end;
+    // Containers are recorded in the order they start in, so their starts are sorted
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+    // Shared by all parsers of the document, so that decoded keys are reused across objects
+    final String[] keyCache = new String[JsonReader.KEY_CACHE_SIZE];
+
+    LazyDocument(JsonReader reader, byte[] bytes, int start, int end) {
+        this.reader = reader;
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Records the start of an object or array.
+     * @return The index of the container, for {@link #close}
+     */
+    int open(int position) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = position;
+        return count++;
+    }
+
+    void close(int container, int position) {
+        ends[container] = position;
+    }
+
+    /**
+     * @param position The position of the opening bracket of an object or array
+     * @return The position just past the closing bracket
+     */
+    int endOf(int position) {
+        var index = Arrays.binarySearch(starts, 0, count, position);
+        if (index < 0) throw new IllegalStateException("No container starts at " + position);
+        return ends[index];
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.ArrayStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The contents of a lazily read json array. The elements are decoded on first access, with objects and arrays
+ * among them left lazy in turn. Until then {@link JsonWriter} copies the original bytes of the array.
+ */
+final class LazyList extends ArrayStorage {
+    final LazyDocument document;
+    final int start;
+    final int end;
+    private @Nullable List<Value> contents;
+
+    LazyList(LazyDocument document, int start, int end) {
+        this.document = document;
+        this.start = start;
+        this.end = end;
+    }
+
+    boolean isExpanded() {
+        return contents != null;
+    }
+
+    private List<Value> contents() {
+        if (contents == null) contents = document.reader.readArrayAt(document, start).value();
+        return contents;
+    }
+
+    @Override
+    public Value get(int index) {
+        return contents().get(index);
+    }
+
+    @Override
+    public Value set(int index, Value element) {
+        return contents().set(index, element);
+    }
+
+    @Override
+    public boolean add(Value element) {
+        modCount++;
+        return contents().add(element);
+    }
+
+    @Override
+    public void add(int index, Value element) {
+        modCount++;
+        contents().add(index, element);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Value> values) {
+        modCount++;
+        return contents().addAll(values);
+    }
+
+    @Override
+    public Value remove(int index) {
+        modCount++;
+        return contents().remove(index);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Value> filter) {
+        modCount++;
+        return contents().removeIf(filter);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        contents().clear();
+    }
+
+    @Override
+    public int size() {
+        return contents().size();
+    }
+}
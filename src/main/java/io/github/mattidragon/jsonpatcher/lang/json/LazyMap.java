@@ -0,0 +1,77 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.ObjectStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The contents of a lazily read json object. The entries are decoded on first access, with objects and arrays
+ * among them left lazy in turn. Until then {@link JsonWriter} copies the original bytes of the object.
+ */
+final class LazyMap extends ObjectStorage {
+    final LazyDocument document;
+    final int start;
+    final int end;
+    private @Nullable Map<String, Value> contents;
+
+    LazyMap(LazyDocument document, int start, int end) {
+        this.document = document;
+        this.start = start;
+        this.end = end;
+    }
+
+    boolean isExpanded() {
+        return contents != null;
+    }
+
+    private Map<String, Value> contents() {
+        if (contents == null) contents = document.reader.readObjectAt(document, start).value();
+        return contents;
+    }
+
+    @Override
+    protected Value getValue(String key) {
+        return contents().get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return contents().containsKey(key);
+    }
+
+    @Override
+    protected Value putValue(String key, Value value) {
+        return contents().put(key, value);
+    }
+
+    @Override
+    protected Value removeValue(String key) {
+        return contents().remove(key);
+    }
+
+    @Override
+    protected Iterator<String> keys() {
+        return contents().keySet().iterator();
+    }
+
+    @Override
+    public void clear() {
+        contents().clear();
+    }
+
+    @Override
+    public int size() {
+        return contents().size();
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return contents().entrySet();
+    }
+}
@@ -0,0 +1,140 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.mattidragon.jsonpatcher.lang.json.JsonTape.*;
+
+/**
+ * Appends entries to a {@link JsonTape}. Objects and arrays are started, filled and then ended,
+ * at which point their size and end are filled in.
+ */
+final class TapeBuilder {
+    private static final int MAX_DEPTH = 512;
+
+    private long[] tape = new long[64];
+    private int length;
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    /**
+     * @param tag {@link JsonTape#OBJECT} or {@link JsonTape#ARRAY}
+     * @return The index of the container, for {@link #end}
+     */
+    int start(long tag) {
+        return append(tag);
+    }
+
+    void end(int container, int size) {
+        tape[container] |= (long) Math.min(size, MAX_STORED_SIZE) << 32 | length;
+    }
+
+    /**
+     * @return The index the next entry will be added at
+     */
+    int length() {
+        return length;
+    }
+
+    void key(String key) {
+        append(KEY | stringIndex(key));
+    }
+
+    void string(String string) {
+        append(STRING | stringIndex(string));
+    }
+
+    void number(double number) {
+        append(NUMBER);
+        append(Double.doubleToRawLongBits(number));
+    }
+
+    /**
+     * @param tag {@link JsonTape#TRUE}, {@link JsonTape#FALSE} or {@link JsonTape#NULL}
+     */
+    void literal(long tag) {
+        append(tag);
+    }
+
+    /**
+     * Finds an earlier key of an object that is still being filled.
+     * @return The index of the key, or -1 if the object doesn't have it yet
+     */
+    int findKey(int object, String key) {
+        var index = stringIndices.get(key);
+        if (index == null) return -1;
+        for (int i = object + 1; i < length; i = JsonTape.next(tape, i + 1)) {
+            if (tape[i] == (KEY | index)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the keys of an object that is still being filled, for objects too large to search with {@link #findKey}.
+     */
+    Map<String, Integer> keys(int object) {
+        var keys = new HashMap<String, Integer>();
+        for (int i = object + 1; i < length; i = JsonTape.next(tape, i + 1)) {
+            if (JsonTape.tag(tape[i]) == KEY) keys.put(strings.get((int) tape[i]), i);
+        }
+        return keys;
+    }
+
+    /**
+     * Marks a key as replaced by a later one, which hides it and its value.
+     */
+    void kill(int key) {
+        tape[key] = DEAD_KEY | tape[key] & ~TAG_MASK;
+    }
+
+    JsonTape build() {
+        return new JsonTape(Arrays.copyOf(tape, length), strings.toArray(String[]::new));
+    }
+
+    void value(Value value, int depth) {
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("Value is nested deeper than %s levels or contains itself".formatted(MAX_DEPTH));
+        switch (value) {
+            case Value.ObjectValue object -> {
+                var container = start(OBJECT);
+                for (var entry : object.value().entrySet()) {
+                    key(entry.getKey());
+                    value(entry.getValue(), depth + 1);
+                }
+                end(container, object.value().size());
+            }
+            case Value.ArrayValue array -> {
+                var container = start(ARRAY);
+                for (var element : array.value()) {
+                    value(element, depth + 1);
+                }
+                end(container, array.value().size());
+            }
+            case Value.StringValue(var string) -> string(string);
+            case Value.NumberValue(var number) -> number(number);
+            case Value.BooleanValue bool -> literal(bool.value() ? TRUE : FALSE);
+            case Value.NullValue ignored -> literal(NULL);
+            case Value.FunctionValue ignored -> throw new IllegalArgumentException("Can't store function in a json tape");
+        }
+    }
+
+    private int stringIndex(String string) {
+        var index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndices.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    private int append(long entry) {
+        if (length == tape.length) tape = Arrays.copyOf(tape, length * 2);
+        tape[length] = entry;
+        return length++;
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.ArrayStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The contents of an array in a view of a {@link JsonTape}. Reads go to the tape until the first write,
+ * which copies the elements into an overlay that is used from then on.
+ */
+final class TapeList extends ArrayStorage {
+    private final JsonTape tape;
+    private final int index;
+    private final int size;
+    // The tape indices of the elements, found on first read
+    private @Nullable int[] elements;
+    // Views of nested objects and arrays, kept so that writes to them aren't lost
+    private @Nullable Value[] children;
+    private @Nullable List<Value> overlay;
+
+    TapeList(JsonTape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+        this.size = tape.size(index);
+    }
+
+    private int[] elements() {
+        if (elements != null) return elements;
+        var elements = new int[size];
+        var end = tape.next(index);
+        for (int i = index + 1, j = 0; i < end; i = tape.next(i)) {
+            elements[j++] = i;
+        }
+        return this.elements = elements;
+    }
+
+    private List<Value> overlay() {
+        if (overlay == null) {
+            var overlay = new Value.ArrayValue().value();
+            for (int i = 0; i < size; i++) {
+                overlay.add(get(i));
+            }
+            this.overlay = overlay;
+        }
+        return overlay;
+    }
+
+    @Override
+    public Value get(int index) {
+        if (overlay != null) return overlay.get(index);
+        var elementIndex = elements()[index];
+        if (!tape.isContainer(elementIndex)) return tape.value(elementIndex);
+        if (children == null) children = new Value[size];
+        var child = children[index];
+        if (child == null) children[index] = child = tape.value(elementIndex);
+        return child;
+    }
+
+    @Override
+    public Value set(int index, Value element) {
+        return overlay().set(index, element);
+    }
+
+    @Override
+    public boolean add(Value element) {
+        modCount++;
+        return overlay().add(element);
+    }
+
+    @Override
+    public void add(int index, Value element) {
+        modCount++;
+        overlay().add(index, element);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Value> values) {
+        modCount++;
+        return overlay().addAll(values);
+    }
+
+    @Override
+    public Value remove(int index) {
+        modCount++;
+        return overlay().remove(index);
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Value> filter) {
+        modCount++;
+        return overlay().removeIf(filter);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        overlay().clear();
+    }
+
+    @Override
+    public int size() {
+        return overlay != null ? overlay.size() : size;
+    }
+}
@@ -0,0 +1,178 @@
+package io.github.mattidragon.jsonpatcher.lang.json;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.ObjectStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The contents of an object in a view of a {@link JsonTape}. Reads go to the tape until the first write,
+ * which copies the entries into an overlay that is used from then on.
+ */
+final class TapeMap extends ObjectStorage {
+    // Larger objects get a hash index instead of being searched
+    private static final int MAX_SEARCHED_SIZE = 16;
+
+    private final JsonTape tape;
+    private final int index;
+    private final int size;
+    // The tape indices of the keys, found on first read
+    private @Nullable int[] keys;
+    private @Nullable Map<String, Integer> keyIndex;
+    // Views of nested objects and arrays, kept so that writes to them aren't lost
+    private @Nullable Value[] children;
+    private @Nullable Map<String, Value> overlay;
+
+    TapeMap(JsonTape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+        this.size = tape.size(index);
+    }
+
+    private int[] keyPositions() {
+        if (keys != null) return keys;
+        var keys = new int[size];
+        var end = tape.next(index);
+        for (int i = index + 1, j = 0; i < end; i = tape.next(i + 1)) {
+            if (JsonTape.tag(tape.tape[i]) == JsonTape.KEY) keys[j++] = i;
+        }
+        return this.keys = keys;
+    }
+
+    /**
+     * @return The position of a key among the entries, or -1 if there is no such key
+     */
+    private int find(Object key) {
+        var keys = keyPositions();
+        if (keys.length > MAX_SEARCHED_SIZE) {
+            if (keyIndex == null) {
+                keyIndex = new HashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    keyIndex.put(tape.string(keys[i]), i);
+                }
+            }
+            return keyIndex.getOrDefault(key, -1);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (tape.string(keys[i]).equals(key)) return i;
+        }
+        return -1;
+    }
+
+    private String keyAt(int position) {
+        return tape.string(keyPositions()[position]);
+    }
+
+    private Value valueAt(int position) {
+        var valueIndex = keyPositions()[position] + 1;
+        if (!tape.isContainer(valueIndex)) return tape.value(valueIndex);
+        if (children == null) children = new Value[size];
+        var child = children[position];
+        if (child == null) children[position] = child = tape.value(valueIndex);
+        return child;
+    }
+
+    private Map<String, Value> overlay() {
+        if (overlay == null) {
+            var overlay = new Value.ObjectValue().value();
+            for (int i = 0; i < size; i++) {
+                overlay.put(keyAt(i), valueAt(i));
+            }
+            this.overlay = overlay;
+        }
+        return overlay;
+    }
+
+    @Override
+    protected Value getValue(String key) {
+        if (overlay != null) return overlay.get(key);
+        var position = find(key);
+        return position == -1 ? null : valueAt(position);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return overlay != null ? overlay.containsKey(key) : find(key) != -1;
+    }
+
+    @Override
+    protected Value putValue(String key, Value value) {
+        return overlay().put(key, value);
+    }
+
+    @Override
+    protected Value removeValue(String key) {
+        return overlay().remove(key);
+    }
+
+    @Override
+    protected Iterator<String> keys() {
+        // Goes through the entry iterator, which moves to the overlay on writes
+        return keySet().iterator();
+    }
+
+    @Override
+    public void clear() {
+        overlay().clear();
+    }
+
+    @Override
+    public int size() {
+        return overlay != null ? overlay.size() : size;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        if (overlay != null) return overlay.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Value>> iterator() {
+                return overlay != null ? overlay.entrySet().iterator() : new TapeIterator();
+            }
+
+            @Override
+            public int size() {
+                return TapeMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates the entries on the tape. Writing through it moves the map to the overlay, which has the same order,
+     * so the iteration can continue on the tape.
+     */
+    private final class TapeIterator implements Iterator<Entry<String, Value>> {
+        private int next;
+        private @Nullable String last;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        public Entry<String, Value> next() {
+            if (next >= size) throw new NoSuchElementException();
+            var key = keyAt(next);
+            var value = valueAt(next++);
+            last = key;
+            return new SimpleEntry<>(key, value) {
+                @Override
+                public Value setValue(Value value) {
+                    put(key, value);
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) throw new IllegalStateException();
+            TapeMap.this.remove(last);
+            last = null;
+        }
+    }
+}
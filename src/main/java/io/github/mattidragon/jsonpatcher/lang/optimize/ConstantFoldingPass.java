@@ -0,0 +1,57 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.*;
+
+/**
+ * Evaluates operators whose operands are literals. Operations that would fail are left alone so that the error happens at runtime.
+ */
+public class ConstantFoldingPass implements OptimizationPass {
+    @Override
+    public Program apply(Program program, LangConfig config) {
+        return new Rewriter(config).rewrite(program);
+    }
+
+    private static class Rewriter extends TreeRewriter {
+        private final LangConfig config;
+
+        private Rewriter(LangConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        protected Expression rewriteExpression(Expression expression) {
+            return switch (expression) {
+                case BinaryExpression binary when binary.first() instanceof ValueExpression first && binary.second() instanceof ValueExpression second -> {
+                    try {
+                        yield literal(binary.op().apply(first.value(), second.value(), binary.pos(), config), expression);
+                    } catch (EvaluationException e) {
+                        yield expression;
+                    }
+                }
+                case UnaryExpression(ValueExpression input, var op, var pos) -> {
+                    try {
+                        yield literal(op.apply(input.value(), pos, config), expression);
+                    } catch (EvaluationException e) {
+                        yield expression;
+                    }
+                }
+                case ShortedBinaryExpression(ValueExpression first, var second, var op, var pos) when op == ShortedBinaryExpression.Operator.AND
+                        -> first.value().asBoolean() ? second : first;
+                case ShortedBinaryExpression(ValueExpression first, var second, var op, var pos) when op == ShortedBinaryExpression.Operator.OR
+                        -> first.value().asBoolean() ? first : second;
+                case TernaryExpression(ValueExpression condition, var ifTrue, var ifFalse, var pos)
+                        -> condition.value().asBoolean() ? ifTrue : ifFalse;
+                default -> expression;
+            };
+        }
+
+        private static Expression literal(Value value, Expression original) {
+            return value instanceof Value.Primitive primitive ? new ValueExpression(primitive, original.pos()) : original;
+        }
+    }
+}
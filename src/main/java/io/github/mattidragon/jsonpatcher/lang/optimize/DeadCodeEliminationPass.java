@@ -0,0 +1,57 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ValueExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes code that can never run or has no effect: branches with literal conditions, statements after
+ * {@code return}, {@code break} and {@code continue}, and statements that only evaluate a literal.
+ * Works best after {@link ConstantFoldingPass}.
+ */
+public class DeadCodeEliminationPass implements OptimizationPass {
+    @Override
+    public Program apply(Program program, LangConfig config) {
+        program = new Rewriter().rewrite(program);
+        var statements = removeDeadStatements(program.statements());
+        return statements == program.statements() ? program : new Program(statements, program.layout());
+    }
+
+    private static class Rewriter extends TreeRewriter {
+        @Override
+        protected Statement rewriteStatement(Statement statement) {
+            return switch (statement) {
+                case IfStatement(ValueExpression condition, var action, var elseAction, var pos) -> {
+                    if (condition.value().asBoolean()) yield action;
+                    yield elseAction == null ? new EmptyStatement(pos) : elseAction;
+                }
+                case WhileLoopStatement(ValueExpression condition, var body, var pos) when !condition.value().asBoolean()
+                        -> new EmptyStatement(pos);
+                case BlockStatement block -> {
+                    var statements = removeDeadStatements(block.statements());
+                    yield statements == block.statements() ? block : new BlockStatement(statements, block.pos(), block.layout());
+                }
+                default -> statement;
+            };
+        }
+    }
+
+    /**
+     * Removes statements without effects and everything after statements that always jump, returning the same list if nothing was removed.
+     */
+    private static List<Statement> removeDeadStatements(List<Statement> statements) {
+        var result = new ArrayList<Statement>(statements.size());
+        for (var statement : statements) {
+            if (statement instanceof EmptyStatement) continue;
+            if (statement instanceof ExpressionStatement(ValueExpression ignored)) continue;
+            result.add(statement);
+            if (statement instanceof ReturnStatement || statement instanceof BreakStatement || statement instanceof ContinueStatement) break;
+        }
+        return result.size() == statements.size() ? statements : List.copyOf(result);
+    }
+}
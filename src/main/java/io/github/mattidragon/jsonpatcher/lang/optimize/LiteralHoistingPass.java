@@ -0,0 +1,57 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.*;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Replaces array and object literals that only contain constants with {@link ConstantLiteralExpression}s,
+ * so that they are copied from a template instead of being built from scratch on every evaluation.
+ */
+public class LiteralHoistingPass implements OptimizationPass {
+    @Override
+    public Program apply(Program program, LangConfig config) {
+        return new Rewriter().rewrite(program);
+    }
+
+    private static class Rewriter extends TreeRewriter {
+        @Override
+        protected Expression rewriteExpression(Expression expression) {
+            switch (expression) {
+                case ArrayInitializerExpression array -> {
+                    var template = new Value.ArrayValue();
+                    for (var element : array.contents()) {
+                        var value = constantValue(element);
+                        if (value == null) return expression;
+                        template.value().add(value);
+                    }
+                    return new ConstantLiteralExpression(template, array.pos());
+                }
+                case ObjectInitializerExpression object -> {
+                    var template = new Value.ObjectValue();
+                    for (var entry : object.contents()) {
+                        var value = constantValue(entry.value());
+                        if (value == null) return expression;
+                        template.value().put(entry.name(), value);
+                    }
+                    return new ConstantLiteralExpression(template, object.pos());
+                }
+                default -> {
+                    return expression;
+                }
+            }
+        }
+
+        @Nullable
+        private static Value constantValue(Expression expression) {
+            return switch (expression) {
+                case ValueExpression literal -> literal.value();
+                case ConstantLiteralExpression literal -> literal.value();
+                default -> null;
+            };
+        }
+    }
+}
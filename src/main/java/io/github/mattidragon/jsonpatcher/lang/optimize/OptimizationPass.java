@@ -0,0 +1,13 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+
+/**
+ * A transformation of a resolved program that keeps its behavior. Passes are run by an {@link Optimizer}.
+ * Passes run after variables are resolved, so they must keep declarations in the scopes they were in.
+ */
+@FunctionalInterface
+public interface OptimizationPass {
+    Program apply(Program program, LangConfig config);
+}
@@ -0,0 +1,47 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Runs optimization passes over parsed programs. The parser uses the optimizer from {@link LangConfig#optimizer()},
+ * which is {@link #NONE} unless configured otherwise.
+ * @param passes The passes to run, in order
+ * @param dumpTarget Receives the optimized tree as text, for debugging passes
+ */
+public record Optimizer(List<OptimizationPass> passes, @Nullable Consumer<String> dumpTarget) {
+    public static final Optimizer NONE = new Optimizer(List.of(), null);
+
+    public Optimizer {
+        passes = List.copyOf(passes);
+    }
+
+    public Optimizer(List<OptimizationPass> passes) {
+        this(passes, null);
+    }
+
+    /**
+     * The default set of passes: constant folding, then dead code elimination, then literal hoisting.
+     */
+    public static Optimizer standard() {
+        return new Optimizer(List.of(new ConstantFoldingPass(), new DeadCodeEliminationPass(), new LiteralHoistingPass()));
+    }
+
+    public Optimizer withDump(Consumer<String> dumpTarget) {
+        return new Optimizer(passes, dumpTarget);
+    }
+
+    public Program optimize(Program program, LangConfig config) {
+        for (var pass : passes) {
+            program = pass.apply(program, config);
+        }
+        if (dumpTarget != null) {
+            dumpTarget.accept(TreePrinter.print(program));
+        }
+        return program;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.mattidragon.jsonpatcher.lang.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.TypeFeedback;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+
+/**
+ * Prints program trees as indented text, one node per line. Record components that aren't child nodes or positions are shown next to the node name.
+ */
+public class TreePrinter {
+    private final StringBuilder builder = new StringBuilder();
+
+    private TreePrinter() {
+    }
+
+    public static String print(ProgramNode node) {
+        var printer = new TreePrinter();
+        printer.print(node, 0);
+        return printer.builder.toString();
+    }
+
+    private void print(ProgramNode node, int depth) {
+        builder.append("  ".repeat(depth)).append(node.getClass().getSimpleName());
+        if (node.getClass().isRecord()) {
+            for (var component : node.getClass().getRecordComponents()) {
+                Object value;
+                try {
+                    value = component.getAccessor().invoke(node);
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    continue;
+                }
+                if (value == null || value instanceof ProgramNode || value instanceof Iterable<?> || value instanceof Optional<?>
+                    || value instanceof SourceSpan || value instanceof TypeFeedback<?> || value instanceof Throwable) continue;
+                builder.append(' ').append(component.getName()).append('=').append(value);
+            }
+        }
+        builder.append('\n');
+        for (var child : node.getChildren()) {
+            print(child, depth + 1);
+        }
+    }
+}
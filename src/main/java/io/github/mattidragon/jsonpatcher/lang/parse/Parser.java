@@ -74,7 +74,12 @@ public class Parser {
             errors.add(e);
         } catch (EndParsingException ignored) {}
 
-        return new Result(new Program(statements), metadata, errors);
+        var program = new Program(statements);
+        VariableResolver.resolve(program);
+        if (errors.isEmpty()) {
+            program = config.optimizer().optimize(program, config);
+        }
+        return new Result(program, metadata, errors);
     }
 
     private Statement statement() {
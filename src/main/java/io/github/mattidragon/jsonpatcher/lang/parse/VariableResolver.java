@@ -0,0 +1,206 @@
+package io.github.mattidragon.jsonpatcher.lang.parse;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.FunctionExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArgument;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Binds variables in a program to slots in flat frames, which allows the interpreter to skip name lookups.
+ * The scopes created here mirror the frames created at runtime: programs, blocks, loops and functions each get their own.
+ * <p>
+ * Declarations are hoisted to the start of their scope, so functions can refer to variables that are declared after them.
+ * Reading a slot before its declaration has run fails at runtime just like a missing variable.
+ * Names that aren't declared anywhere in the program, like builtin libraries and variables from the host, are left unresolved and looked up by name.
+ */
+public class VariableResolver {
+    private static final int[] NO_SHADOWED = new int[0];
+
+    private final Set<String> declaredNames = new HashSet<>();
+    private @Nullable Scope scope = null;
+
+    private VariableResolver() {
+    }
+
+    public static void resolve(Program program) {
+        var resolver = new VariableResolver();
+        resolver.pushScope();
+        program.statements().forEach(resolver::hoist);
+        program.statements().forEach(resolver::visit);
+        resolver.popScope(program.layout());
+        program.layout().declareNames(resolver.declaredNames);
+    }
+
+    private void visit(ProgramNode node) {
+        switch (node) {
+            case BlockStatement statement -> visitScope(statement.statements(), statement.layout());
+            case ForLoopStatement statement -> visitScope(statement.getChildren(), statement.layout());
+            case ForEachLoopStatement statement -> {
+                // The iterable is evaluated before the loop frames are created
+                visit(statement.iterable());
+                pushScope();
+                declare(statement.variableName());
+                hoist(statement.body());
+                bindDeclaration(statement.variableName(), statement.slot());
+                visit(statement.body());
+                popScope(statement.layout());
+            }
+            case FunctionExpression expression -> {
+                // The function keeps every frame around it alive
+                for (var scope = this.scope; scope != null; scope = scope.parent) {
+                    scope.captured = true;
+                }
+                pushScope();
+                // Arguments are created one by one, so default values can only see the arguments before them
+                for (var argument : expression.args().arguments()) {
+                    argument.defaultValue().ifPresent(this::visit);
+                    if (argument.target() instanceof FunctionArgument.Target.Variable variable) {
+                        declare(variable.name());
+                    }
+                }
+                hoist(expression.body());
+                visit(expression.body());
+                popScope(expression.layout());
+            }
+            case VariableCreationStatement statement -> {
+                visit(statement.initializer());
+                bindDeclaration(statement.name(), statement.slot());
+            }
+            case FunctionDeclarationStatement statement -> {
+                visit(statement.value());
+                bindDeclaration(statement.name(), statement.slot());
+            }
+            case ImportStatement statement -> bindDeclaration(statement.variableName(), statement.slot());
+            case VariableAccessExpression expression -> bindAccess(expression.name(), expression.slot());
+            default -> node.getChildren().forEach(this::visit);
+        }
+    }
+
+    /**
+     * Visits the contents of a block or loop. Scopes that declare nothing don't need a frame, so they are elided and
+     * their contents are bound to the surrounding scope instead. Scopes with deletes are kept, as deleting a variable
+     * from an outer scope is an error.
+     */
+    private void visitScope(Iterable<? extends ProgramNode> children, FrameLayout layout) {
+        pushScope();
+        children.forEach(this::hoist);
+        if (currentScope().slots.isEmpty() && !deletesDirectly(children)) {
+            scope = currentScope().parent;
+            layout.elide();
+            children.forEach(this::visit);
+            return;
+        }
+        children.forEach(this::visit);
+        popScope(layout);
+    }
+
+    /**
+     * Checks whether any of the nodes delete a variable from the current scope, without looking into nodes with their own scopes.
+     */
+    private static boolean deletesDirectly(Iterable<? extends ProgramNode> nodes) {
+        for (var node : nodes) {
+            var deletes = switch (node) {
+                case DeleteStatement statement -> statement.target() instanceof VariableAccessExpression;
+                case BlockStatement ignored -> false;
+                case ForLoopStatement ignored -> false;
+                case ForEachLoopStatement ignored -> false;
+                case FunctionExpression ignored -> false;
+                default -> deletesDirectly(node.getChildren());
+            };
+            if (deletes) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Declares all variables that will be created directly in the current scope by the node.
+     */
+    private void hoist(ProgramNode node) {
+        switch (node) {
+            case VariableCreationStatement statement -> declare(statement.name());
+            case FunctionDeclarationStatement statement -> declare(statement.name());
+            case ImportStatement statement -> declare(statement.variableName());
+            // These create their own frames
+            case BlockStatement ignored -> {}
+            case ForLoopStatement ignored -> {}
+            case ForEachLoopStatement ignored -> {}
+            // Expressions never declare variables in the surrounding scope
+            case Expression ignored -> {}
+            default -> node.getChildren().forEach(this::hoist);
+        }
+    }
+
+    private void declare(String name) {
+        var scope = currentScope();
+        scope.slots.putIfAbsent(name, scope.slots.size());
+    }
+
+    private void bindDeclaration(String name, VariableSlot slot) {
+        var index = currentScope().slots.get(name);
+        if (index == null) throw new IllegalStateException("Variable %s was not hoisted (the resolver is broken)".formatted(name));
+
+        slot.resolve(0, index, findShadowed(name, currentScope().parent, 1));
+        declaredNames.add(name);
+    }
+
+    private void bindAccess(String name, VariableSlot slot) {
+        var depth = 0;
+        for (var scope = this.scope; scope != null; scope = scope.parent, depth++) {
+            var index = scope.slots.get(name);
+            if (index != null) {
+                // Accesses before the declaration runs fall back to the outer variables
+                slot.resolve(depth, index, findShadowed(name, scope.parent, depth + 1));
+                return;
+            }
+        }
+    }
+
+    private static int[] findShadowed(String name, @Nullable Scope scope, int depth) {
+        var shadowed = NO_SHADOWED;
+        for (var outer = scope; outer != null; outer = outer.parent, depth++) {
+            var outerIndex = outer.slots.get(name);
+            if (outerIndex != null) {
+                shadowed = Arrays.copyOf(shadowed, shadowed.length + 2);
+                shadowed[shadowed.length - 2] = depth;
+                shadowed[shadowed.length - 1] = outerIndex;
+            }
+        }
+        return shadowed;
+    }
+
+    private void pushScope() {
+        scope = new Scope(scope);
+    }
+
+    private void popScope(FrameLayout layout) {
+        var scope = currentScope();
+        layout.resolve(scope.slots.size(), scope.captured);
+        this.scope = scope.parent;
+    }
+
+    private Scope currentScope() {
+        if (scope == null) throw new IllegalStateException("No scope (the resolver is broken)");
+        return scope;
+    }
+
+    private static final class Scope {
+        private final @Nullable Scope parent;
+        private final HashMap<String, Integer> slots = new HashMap<>();
+        private boolean captured = false;
+
+        private Scope(@Nullable Scope parent) {
+            this.parent = parent;
+        }
+    }
+}
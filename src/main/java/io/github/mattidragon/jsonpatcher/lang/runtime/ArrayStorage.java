@@ -0,0 +1,33 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Base for custom contents of {@link Value.ArrayValue}s, which lets hosts expose their own json trees as values
+ * without converting them. An array created with an instance reads and writes through it directly.
+ * Only the first array created with an instance uses it, later ones copy it. See {@link ValueStorage}.
+ * <p>
+ * Implementations provide {@link #get}, {@link #set}, {@link #add(int, Object)}, {@link #remove(int)} and
+ * {@link #size()}, converting between their own nodes and values like {@link ObjectStorage} does.
+ * Indexed access should be fast, as arrays are mostly read by index.
+ */
+public abstract class ArrayStorage extends AbstractList<Value> implements RandomAccess, ValueStorage {
+    private boolean claimed;
+
+    @Override
+    public abstract Value set(int index, Value element);
+
+    @Override
+    public abstract void add(int index, Value element);
+
+    @Override
+    public abstract Value remove(int index);
+
+    @Override
+    public final boolean claim() {
+        if (claimed) return false;
+        claimed = true;
+        return true;
+    }
+}
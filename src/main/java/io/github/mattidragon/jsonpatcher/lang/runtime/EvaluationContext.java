@@ -6,10 +6,12 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Libraries;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public record EvaluationContext(Value.ObjectValue root, VariableStack variables, LibraryLocator libraryLocator, Consumer<Value> debugConsumer, LangConfig config) {
     private static final ThreadLocal<Set<String>> LIBRARY_RECURSION_DETECTOR = ThreadLocal.withInitial(HashSet::new);
@@ -26,6 +28,27 @@ public record EvaluationContext(Value.ObjectValue root, VariableStack variables,
         return new EvaluationContext(root, new VariableStack(config, variables), libraryLocator, debugConsumer, config);
     }
 
+    public EvaluationContext newScope(FrameLayout layout) {
+        return new EvaluationContext(root, new VariableStack(config, variables, layout.size()), libraryLocator, debugConsumer, config);
+    }
+
+    /**
+     * Creates a scope that receives the values of return statements run within it.
+     */
+    public EvaluationContext newFunctionScope(FrameLayout layout) {
+        return new EvaluationContext(root, new VariableStack(config, variables, layout.size(), true), libraryLocator, debugConsumer, config);
+    }
+
+    /**
+     * Creates the scope that a program runs in. Collisions between the names declared by the program and named variables
+     * are found here once, instead of on every declaration.
+     */
+    public EvaluationContext newProgramScope(FrameLayout layout) {
+        var variables = VariableStack.program(config, this.variables, layout.size());
+        if (layout.isResolved()) variables.checkCollisions(layout.declaredNames());
+        return new EvaluationContext(root, variables, libraryLocator, debugConsumer, config);
+    }
+
     public void log(Value value) {
         debugConsumer.accept(value);
     }
@@ -64,9 +87,14 @@ public record EvaluationContext(Value.ObjectValue root, VariableStack variables,
     }
 
     public static class Builder {
+        // The builtin libraries are frozen, so a single frame of them is shared by all contexts
+        private static final VariableStack BUILTIN_FRAME = VariableStack.shared(Libraries.BUILTIN.entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get())));
+
         private final LangConfig config;
         private Value.ObjectValue root = new Value.ObjectValue();
-        private final VariableStack variables;
+        private final LinkedHashMap<String, Value> variables = new LinkedHashMap<>();
         private LibraryLocator libraryLocator;
         private Consumer<Value> debugConsumer = x -> System.out.println("Debug from patch: " + x);
         private Map<String, Supplier<Value.ObjectValue>> stdlib = Libraries.BUILTIN;
@@ -76,7 +104,6 @@ public record EvaluationContext(Value.ObjectValue root, VariableStack variables,
             libraryLocator = (name, obj, pos, config1) -> {
                 throw new EvaluationException(config1, "No libraries available", pos);
             };
-            variables = new VariableStack(config);
         }
 
         public Builder root(Value.ObjectValue root) {
@@ -93,7 +120,9 @@ public record EvaluationContext(Value.ObjectValue root, VariableStack variables,
         }
 
         public Builder variable(String name, Value value) {
-            variables.createVariable(name, value, false, null);
+            if (variables.putIfAbsent(name, value) != null) {
+                throw new EvaluationException(config, "Cannot create variable with duplicate name: %s".formatted(name), null);
+            }
             return this;
         }
 
@@ -113,8 +142,16 @@ public record EvaluationContext(Value.ObjectValue root, VariableStack variables,
         }
 
         public EvaluationContext build() {
-            stdlib.forEach((name, supplier) -> variables.createVariable(name, supplier.get(), false, null));
-            return new EvaluationContext(root, variables, libraryLocator, debugConsumer, config).newScope();
+            VariableStack stack;
+            if (stdlib == Libraries.BUILTIN) {
+                stack = new VariableStack(config, BUILTIN_FRAME);
+            } else {
+                // Custom libraries may not be safe to share, so they are created for each context
+                stack = new VariableStack(config);
+                stdlib.forEach((name, supplier) -> stack.createVariable(name, supplier.get(), false, null));
+            }
+            variables.forEach((name, value) -> stack.createVariable(name, value, false, null));
+            return new EvaluationContext(root, stack, libraryLocator, debugConsumer, config).newScope();
         }
     }
 }
@@ -0,0 +1,98 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.VariableResolver;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Describes the frame created by a node that opens a new scope, as determined by the {@link VariableResolver}.
+ * Unresolved layouts create frames without slots, where variables are stored by name.
+ */
+public final class FrameLayout {
+    private int size = -1;
+    private boolean elided = false;
+    private boolean captured = true;
+    private Set<String> declaredNames = Set.of();
+
+    public boolean isResolved() {
+        return size >= 0;
+    }
+
+    /**
+     * The amount of variable slots in the frame.
+     */
+    public int size() {
+        return Math.max(size, 0);
+    }
+
+    /**
+     * Whether the node can skip creating the frame and run directly in the surrounding one.
+     * The resolver elides scopes that declare nothing and bound their contents to the surrounding scope.
+     */
+    public boolean isElided() {
+        return elided;
+    }
+
+    /**
+     * Whether functions created within the scope may keep the frame alive. Frames that aren't captured can be reused,
+     * for example between loop iterations. Unresolved layouts are always treated as captured.
+     */
+    public boolean isCaptured() {
+        return captured;
+    }
+
+    /**
+     * The names of all variables declared in slots anywhere in the program, if this is the layout of a program.
+     * Used to check for collisions with named variables once when the program starts.
+     */
+    public Set<String> declaredNames() {
+        return declaredNames;
+    }
+
+    @ApiStatus.Internal
+    public void declareNames(Set<String> names) {
+        this.declaredNames = Set.copyOf(names);
+    }
+
+    @ApiStatus.Internal
+    public void resolve(int size) {
+        resolve(size, true);
+    }
+
+    @ApiStatus.Internal
+    public void resolve(int size, boolean captured) {
+        this.size = size;
+        this.captured = captured;
+    }
+
+    @ApiStatus.Internal
+    public void elide() {
+        this.size = 0;
+        this.elided = true;
+        this.captured = false;
+    }
+
+    // Layouts are resolved by the parser before the tree is handed out, so they compare by value like the rest of the node
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FrameLayout other
+               && size == other.size
+               && elided == other.elided
+               && captured == other.captured
+               && declaredNames.equals(other.declaredNames);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(size, elided, captured, declaredNames);
+    }
+
+    @Override
+    public String toString() {
+        if (elided) return "FrameLayout[elided]";
+        if (!isResolved()) return "FrameLayout[unresolved]";
+        return captured ? "FrameLayout[size=%s, captured]".formatted(size) : "FrameLayout[size=%s]".formatted(size);
+    }
+}
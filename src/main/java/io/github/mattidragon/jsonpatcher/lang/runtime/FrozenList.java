@@ -0,0 +1,42 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import java.util.List;
+
+/**
+ * The read only contents of a frozen {@link Value.ArrayValue}. See {@link Value#freeze()}.
+ */
+final class FrozenList extends ArrayStorage {
+    private final List<Value> elements;
+
+    /**
+     * @param elements The contents, which may still be filled in until the list is shared
+     */
+    FrozenList(List<Value> elements) {
+        this.elements = elements;
+    }
+
+    @Override
+    public Value get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public Value set(int index, Value element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void add(int index, Value element) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Value remove(int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+}
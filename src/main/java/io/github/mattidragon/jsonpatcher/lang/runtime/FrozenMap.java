@@ -0,0 +1,70 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The read only contents of a frozen {@link Value.ObjectValue}. See {@link Value#freeze()}.
+ */
+final class FrozenMap extends ObjectStorage {
+    private final ShapedMap contents;
+    private final Map<String, Value> entries;
+
+    /**
+     * @param entries The contents, which may still be filled in until the map is shared
+     */
+    FrozenMap(ShapedMap entries) {
+        this.contents = entries;
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    @Nullable
+    Shape shape() {
+        return contents.shape();
+    }
+
+    Value valueAt(int index) {
+        return contents.valueAt(index);
+    }
+
+    @Override
+    protected Value getValue(String key) {
+        return entries.get(key);
+    }
+
+    @Override
+    protected Value putValue(String key, Value value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Value removeValue(String key) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Iterator<String> keys() {
+        return entries.keySet().iterator();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return entries.entrySet();
+    }
+}
@@ -0,0 +1,116 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Base for custom contents of {@link Value.ObjectValue}s, which lets hosts expose their own json trees as values
+ * without converting them. An object created with an instance reads and writes through it directly.
+ * Only the first object created with an instance uses it, later ones copy it. See {@link ValueStorage}.
+ * <p>
+ * Implementations convert between their own nodes and values as entries are accessed. Nested objects and arrays
+ * are usually returned as new values backed by another storage, which is fine as long as writes to them reach the
+ * same node. Objects that don't use custom storage are written to storages when they are stored in one, and are
+ * typically converted at that point.
+ */
+public abstract class ObjectStorage extends AbstractMap<String, Value> implements ValueStorage {
+    private boolean claimed;
+
+    /**
+     * @return The value of a key, or null if there is no such key
+     */
+    @Nullable
+    protected abstract Value getValue(String key);
+
+    /**
+     * Sets the value of a key, adding it after the existing keys if it's new.
+     * @return The previous value, or null if the key is new
+     */
+    @Nullable
+    protected abstract Value putValue(String key, Value value);
+
+    /**
+     * @return The removed value, or null if there was no such key
+     */
+    @Nullable
+    protected abstract Value removeValue(String key);
+
+    /**
+     * Iterates the keys in order. The iterator should support removal, which is used when entries are removed during iteration.
+     */
+    protected abstract Iterator<String> keys();
+
+    @Override
+    public abstract int size();
+
+    @Override
+    public final boolean claim() {
+        if (claimed) return false;
+        claimed = true;
+        return true;
+    }
+
+    @Override
+    public Value get(Object key) {
+        return key instanceof String string ? getValue(string) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Value put(String key, Value value) {
+        return putValue(key, value);
+    }
+
+    @Override
+    public Value remove(Object key) {
+        return key instanceof String string ? removeValue(string) : null;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Value>> iterator() {
+                var keys = keys();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Value> next() {
+                        var key = keys.next();
+                        return new SimpleEntry<>(key, getValue(key)) {
+                            @Override
+                            public Value setValue(Value value) {
+                                putValue(key, value);
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public void remove() {
+                        keys.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ObjectStorage.this.size();
+            }
+        };
+    }
+}
@@ -5,8 +5,17 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
 
 import java.util.List;
 
-public record Program(List<Statement> statements) implements ProgramNode {
+public record Program(List<Statement> statements, FrameLayout layout) implements ProgramNode {
+    public Program(List<Statement> statements) {
+        this(statements, new FrameLayout());
+    }
+
+    /**
+     * Runs the program in a new frame below the variables of the context. The program can read, assign and delete
+     * the variables of the context, but the variables it declares are removed once it finishes.
+     */
     public void execute(EvaluationContext context) {
+        context = context.newProgramScope(layout);
         try {
             for (var statement : statements) {
                 statement.run(context);
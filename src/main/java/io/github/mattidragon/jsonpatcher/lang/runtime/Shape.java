@@ -0,0 +1,104 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The keys of an object, in insertion order. Objects that had the same keys added in the same order share a shape,
+ * so they only need to store their values. Shapes are immutable and form a tree, where each shape knows the shapes
+ * that adding a key to it leads to.
+ * <p>
+ * Shapes are never freed, so their number is limited. Objects that would need a shape past the limits,
+ * or that have keys removed, store their keys in a plain map instead.
+ */
+public final class Shape {
+    /**
+     * The most keys an object can have while still using shapes. Large objects are usually dictionaries anyway.
+     */
+    static final int MAX_KEYS = 32;
+    /**
+     * The most shapes that can be reached from a single shape. Objects with keys taken from data, like maps of ids,
+     * would otherwise create a new shape for each key.
+     */
+    static final int MAX_TRANSITIONS = 32;
+    /**
+     * The total number of keys stored by all shapes, as each shape stores the keys of its parents as well.
+     */
+    static final int MAX_TOTAL_KEYS = 1 << 20;
+
+    static final Shape EMPTY = new Shape(new String[0], new int[0]);
+    private static final AtomicInteger TOTAL_KEYS = new AtomicInteger();
+
+    private final String[] keys;
+    // Comparing cached hashes first keeps the linear search cheap
+    private final int[] hashes;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    private Shape(String[] keys, int[] hashes) {
+        this.keys = keys;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Finds the index of a key in the values of objects with this shape.
+     * @return The index, or -1 if objects of this shape don't have the key
+     */
+    public int indexOf(String key) {
+        var hash = key.hashCode();
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == hash && keys[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    String key(int index) {
+        return keys[index];
+    }
+
+    List<String> keys() {
+        return Collections.unmodifiableList(Arrays.asList(keys));
+    }
+
+    /**
+     * Finds the shape that adding a key to an object of this shape leads to.
+     * @return The shape, or null if the limits on shapes were reached
+     */
+    @Nullable
+    Shape withKey(String key) {
+        var existing = transitions.get(key);
+        if (existing != null) return existing;
+        if (keys.length >= MAX_KEYS || transitions.size() >= MAX_TRANSITIONS) return null;
+        if (TOTAL_KEYS.addAndGet(keys.length + 1) > MAX_TOTAL_KEYS) {
+            TOTAL_KEYS.addAndGet(-keys.length - 1);
+            return null;
+        }
+
+        var newKeys = Arrays.copyOf(keys, keys.length + 1);
+        var newHashes = Arrays.copyOf(hashes, hashes.length + 1);
+        newKeys[keys.length] = key;
+        newHashes[hashes.length] = key.hashCode();
+        var shape = new Shape(newKeys, newHashes);
+        existing = transitions.putIfAbsent(key, shape);
+        if (existing != null) {
+            // Another thread won the race, so the keys reserved for our copy are returned
+            TOTAL_KEYS.addAndGet(-keys.length - 1);
+            return existing;
+        }
+        return shape;
+    }
+
+    @Override
+    public String toString() {
+        return "Shape" + Arrays.toString(keys);
+    }
+}
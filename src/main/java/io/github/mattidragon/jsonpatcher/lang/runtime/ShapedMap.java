@@ -0,0 +1,246 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The contents of a {@link Value.ObjectValue}. Keys are stored in a shared {@link Shape} and values in an array,
+ * until a key is removed or the shape limits are reached. After that the map stores its entries in a {@link LinkedHashMap},
+ * as removing keys from the middle of a shape would change the insertion order.
+ * <p>
+ * Copying a map shares its storage with the copy until either of them is written to. See {@link SharedStorage}.
+ */
+final class ShapedMap extends AbstractMap<String, Value> {
+    private static final Value[] NO_VALUES = new Value[0];
+    private static final AtomicReferenceFieldUpdater<ShapedMap, SharedStorage> STORAGE = AtomicReferenceFieldUpdater.newUpdater(ShapedMap.class, SharedStorage.class, "storage");
+
+    private Shape shape = Shape.EMPTY;
+    private Value[] values = NO_VALUES;
+    private @Nullable LinkedHashMap<String, Value> dictionary;
+    // Set while the values or dictionary may be visible to other maps
+    private volatile @Nullable SharedStorage storage;
+    private int modCount;
+
+    ShapedMap() {
+    }
+
+    ShapedMap(Map<String, Value> entries) {
+        if (entries instanceof ShapedMap source) {
+            storage = source.share();
+            shape = source.shape;
+            values = source.values;
+            dictionary = source.dictionary;
+            return;
+        }
+        if (!entries.isEmpty()) values = new Value[Math.min(entries.size(), Shape.MAX_KEYS)];
+        entries.forEach(this::put);
+    }
+
+    private SharedStorage share() {
+        return SharedStorage.share(this, STORAGE, dictionary == null ? shape.size() : 0);
+    }
+
+    private void unshare() {
+        if (dictionary != null) {
+            dictionary = new LinkedHashMap<>(dictionary);
+        } else {
+            values = Arrays.copyOf(values, values.length);
+        }
+        storage = null;
+    }
+
+    /**
+     * @return The shape, or null if the map has switched to storing its keys in a map
+     */
+    @Nullable
+    Shape shape() {
+        return dictionary == null ? shape : null;
+    }
+
+    /**
+     * Reads a value by its index in the shape. Only valid while {@link #shape()} returns the shape the index came from.
+     */
+    Value valueAt(int index) {
+        return values[index];
+    }
+
+    @Override
+    public Value get(Object key) {
+        if (dictionary != null) return dictionary.get(key);
+        if (!(key instanceof String string)) return null;
+        var index = shape.indexOf(string);
+        return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (dictionary != null) return dictionary.containsKey(key);
+        return key instanceof String string && shape.indexOf(string) >= 0;
+    }
+
+    @Override
+    public Value put(String key, Value value) {
+        if (dictionary != null) {
+            if (storage != null) unshare();
+            return dictionary.put(key, value);
+        }
+
+        var index = shape.indexOf(key);
+        if (index >= 0) {
+            if (storage != null) unshare();
+            var old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        var next = shape.withKey(key);
+        if (next == null) {
+            toDictionary().put(key, value);
+            return null;
+        }
+        var size = shape.size();
+        var storage = this.storage;
+        if (size == values.length) {
+            // Growing copies the values anyway, so the copy is no longer shared
+            values = Arrays.copyOf(values, Math.max(4, size * 2));
+            this.storage = null;
+        } else if (storage != null && !storage.claim(size, 1)) {
+            unshare();
+        }
+        values[size] = value;
+        shape = next;
+        modCount++;
+        return null;
+    }
+
+    @Override
+    public Value remove(Object key) {
+        if (!containsKey(key)) return null;
+        modCount++;
+        return toDictionary().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        shape = Shape.EMPTY;
+        values = NO_VALUES;
+        dictionary = null;
+        storage = null;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return dictionary != null ? dictionary.size() : shape.size();
+    }
+
+    private LinkedHashMap<String, Value> toDictionary() {
+        if (dictionary != null && storage != null) unshare();
+        if (dictionary == null) {
+            dictionary = new LinkedHashMap<>();
+            for (int i = 0; i < shape.size(); i++) {
+                dictionary.put(shape.key(i), values[i]);
+            }
+            shape = Shape.EMPTY;
+            values = NO_VALUES;
+            storage = null;
+        }
+        return dictionary;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<String, Value>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Value>> iterator() {
+                if (dictionary == null) return new EntryIterator(shape.keys().iterator());
+                // Entries of a shared dictionary can't be written directly
+                if (storage != null) return new EntryIterator(dictionary.keySet().iterator());
+                return dictionary.entrySet().iterator();
+            }
+
+            @Override
+            public int size() {
+                return ShapedMap.this.size();
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Value>> {
+        // Iterates over the keys at the start, so that iteration can continue if removing an entry replaces the storage
+        private final Iterator<String> keys;
+        private int expectedModCount = modCount;
+        private int next;
+        private @Nullable String current;
+
+        private EntryIterator(Iterator<String> keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return keys.hasNext();
+        }
+
+        @Override
+        public Entry<String, Value> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            current = keys.next();
+            return new ShapeEntry(current, next++);
+        }
+
+        @Override
+        public void remove() {
+            if (current == null) throw new IllegalStateException();
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            ShapedMap.this.remove(current);
+            expectedModCount = modCount;
+            current = null;
+        }
+    }
+
+    private final class ShapeEntry implements Entry<String, Value> {
+        private final String key;
+        private final int index;
+
+        private ShapeEntry(String key, int index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        @Override
+        public Value getValue() {
+            // Keys are only appended while the map uses shapes, so the index stays valid until it switches
+            return dictionary == null && index < shape.size() && shape.key(index).equals(key) ? values[index] : get(key);
+        }
+
+        @Override
+        public Value setValue(Value value) {
+            return put(key, value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry<?, ?> entry && key.equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
+
+/**
+ * The contents of a {@link Value.ArrayValue}. Works like an {@link ArrayList}, except that copies and slices
+ * share their elements with the original until either of them is written to. See {@link SharedStorage}.
+ * <p>
+ * While every element is a number they are stored unboxed in a {@code double[]}. Writing anything else
+ * boxes them into a {@code Value[]} for good, except that an empty list picks its representation again on the next add.
+ * Reading a number as a value boxes it on every read without changing the list, so that reads stay safe on lists
+ * shared between threads. Loops and library functions read numeric lists with {@link #getDouble} instead.
+ */
+final class SharedList extends AbstractList<Value> implements RandomAccess {
+    private static final Value[] NO_ELEMENTS = new Value[0];
+    private static final double[] NO_NUMBERS = new double[0];
+    private static final AtomicReferenceFieldUpdater<SharedList, SharedStorage> STORAGE = AtomicReferenceFieldUpdater.newUpdater(SharedList.class, SharedStorage.class, "storage");
+
+    // Exactly one of these holds the elements
+    private @Nullable Value[] elements;
+    private @Nullable double[] numbers;
+    // Only non-zero for slices, which are always shared, so exclusive lists can index the elements directly
+    private int offset;
+    private int size;
+    // Set while the elements may be visible to other lists
+    private volatile @Nullable SharedStorage storage;
+
+    SharedList() {
+        elements = NO_ELEMENTS;
+    }
+
+    SharedList(Collection<? extends Value> values) {
+        if (values instanceof SharedList source) {
+            storage = source.share();
+            elements = source.elements;
+            numbers = source.numbers;
+            offset = source.offset;
+            size = source.size;
+        } else {
+            var array = values.toArray(NO_ELEMENTS);
+            size = array.length;
+            numbers = unbox(array);
+            if (numbers == null) elements = array;
+        }
+    }
+
+    /**
+     * Creates a list that shares a range of the elements of another list.
+     */
+    SharedList(SharedList source, int from, int to) {
+        Objects.checkFromToIndex(from, to, source.size);
+        storage = source.share();
+        elements = source.elements;
+        numbers = source.numbers;
+        offset = source.offset + from;
+        size = to - from;
+    }
+
+    /**
+     * @return The numbers, or null if there are no values or some of them aren't numbers
+     */
+    @Nullable
+    private static double[] unbox(Value[] values) {
+        if (values.length == 0) return null;
+        var numbers = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (!(values[i] instanceof Value.NumberValue(var number))) return null;
+            numbers[i] = number;
+        }
+        return numbers;
+    }
+
+    boolean isNumeric() {
+        return numbers != null;
+    }
+
+    /**
+     * Reads a number without boxing it. Only valid while {@link #isNumeric()} is true.
+     */
+    double getDouble(int index) {
+        Objects.checkIndex(index, size);
+        return Objects.requireNonNull(numbers)[offset + index];
+    }
+
+    private SharedStorage share() {
+        return SharedStorage.share(this, STORAGE, offset + size);
+    }
+
+    private int capacity() {
+        return numbers != null ? numbers.length : Objects.requireNonNull(elements).length;
+    }
+
+    private void unshare(int capacity) {
+        var length = Math.max(capacity, size);
+        if (numbers != null) {
+            numbers = Arrays.copyOfRange(numbers, offset, offset + length);
+        } else {
+            elements = Arrays.copyOfRange(Objects.requireNonNull(elements), offset, offset + length);
+        }
+        offset = 0;
+        storage = null;
+    }
+
+    /**
+     * Switches to boxed storage. The boxed elements are a new array, so they are never shared.
+     */
+    private void box(int capacity) {
+        var numbers = Objects.requireNonNull(this.numbers);
+        var boxed = new Value[Math.max(capacity, size)];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = new Value.NumberValue(numbers[offset + i]);
+        }
+        this.elements = boxed;
+        this.numbers = null;
+        offset = 0;
+        storage = null;
+    }
+
+    /**
+     * Lets an empty list pick the representation that suits the elements about to be added.
+     */
+    private void prepareEmpty(boolean numeric) {
+        if (size != 0 || (numbers != null) == numeric) return;
+        numbers = numeric ? NO_NUMBERS : null;
+        elements = numeric ? null : NO_ELEMENTS;
+        offset = 0;
+        storage = null;
+    }
+
+    /**
+     * Makes room for appending elements, copying the elements if they can't be appended to in place.
+     */
+    private void prepareAppend(int count) {
+        var end = offset + size;
+        var storage = this.storage;
+        if (storage != null) {
+            if (end + count <= capacity() && storage.claim(end, count)) return;
+            unshare(grow(count));
+        } else if (end + count > capacity()) {
+            unshare(grow(count));
+        }
+    }
+
+    private int grow(int count) {
+        return Math.max(size + count, Math.max(size * 2, 4));
+    }
+
+    @Override
+    public Value get(int index) {
+        Objects.checkIndex(index, size);
+        if (numbers != null) return new Value.NumberValue(numbers[offset + index]);
+        return Objects.requireNonNull(elements)[offset + index];
+    }
+
+    @Override
+    public Value set(int index, Value element) {
+        Objects.checkIndex(index, size);
+        if (numbers != null) {
+            if (element instanceof Value.NumberValue(var number)) {
+                if (storage != null) unshare(size);
+                var old = numbers[index];
+                numbers[index] = number;
+                return new Value.NumberValue(old);
+            }
+            box(size);
+        } else if (storage != null) {
+            unshare(size);
+        }
+        var elements = Objects.requireNonNull(this.elements);
+        var old = elements[index];
+        elements[index] = element;
+        return old;
+    }
+
+    @Override
+    public boolean add(Value element) {
+        var isNumber = element instanceof Value.NumberValue;
+        prepareEmpty(isNumber);
+        if (numbers != null && !isNumber) box(grow(1));
+        prepareAppend(1);
+        if (numbers != null) {
+            numbers[offset + size] = ((Value.NumberValue) element).value();
+        } else {
+            Objects.requireNonNull(elements)[offset + size] = element;
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, Value element) {
+        Objects.checkIndex(index, size + 1);
+        if (index == size) {
+            add(element);
+            return;
+        }
+        if (numbers != null && !(element instanceof Value.NumberValue)) box(grow(1));
+        if (storage != null || size == capacity()) unshare(grow(1));
+        if (numbers != null) {
+            System.arraycopy(numbers, index, numbers, index + 1, size - index);
+            numbers[index] = ((Value.NumberValue) element).value();
+        } else {
+            var elements = Objects.requireNonNull(this.elements);
+            System.arraycopy(elements, index, elements, index + 1, size - index);
+            elements[index] = element;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Value> values) {
+        if (values.isEmpty()) return false;
+        if (values instanceof SharedList other && other.numbers != null) {
+            // Numbers are copied without boxing them. The source is read before appending, in case it's this list.
+            var source = other.numbers;
+            var from = other.offset;
+            var count = other.size;
+            prepareEmpty(true);
+            if (numbers != null) {
+                prepareAppend(count);
+                System.arraycopy(source, from, numbers, offset + size, count);
+                size += count;
+                modCount++;
+                return true;
+            }
+        }
+
+        var added = values.toArray(NO_ELEMENTS);
+        var addedNumbers = unbox(added);
+        prepareEmpty(addedNumbers != null);
+        if (numbers != null && addedNumbers == null) box(size + added.length);
+        prepareAppend(added.length);
+        if (numbers != null) {
+            System.arraycopy(Objects.requireNonNull(addedNumbers), 0, numbers, offset + size, added.length);
+        } else {
+            System.arraycopy(added, 0, Objects.requireNonNull(elements), offset + size, added.length);
+        }
+        size += added.length;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Value remove(int index) {
+        var old = get(index);
+        if (storage != null) unshare(size);
+        if (numbers != null) {
+            System.arraycopy(numbers, index + 1, numbers, index, size - index - 1);
+            size--;
+        } else {
+            var elements = Objects.requireNonNull(this.elements);
+            System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+            elements[--size] = null;
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Value> filter) {
+        // Elements are tested before anything is removed, like in ArrayList
+        var kept = new boolean[size];
+        var count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!filter.test(get(i))) {
+                kept[i] = true;
+                count++;
+            }
+        }
+        if (count == size) return false;
+
+        if (numbers != null) {
+            var remaining = new double[size];
+            for (int i = 0, j = 0; i < size; i++) {
+                if (kept[i]) remaining[j++] = numbers[offset + i];
+            }
+            numbers = remaining;
+        } else {
+            var elements = Objects.requireNonNull(this.elements);
+            var remaining = new Value[size];
+            for (int i = 0, j = 0; i < size; i++) {
+                if (kept[i]) remaining[j++] = elements[offset + i];
+            }
+            this.elements = remaining;
+        }
+        offset = 0;
+        size = count;
+        storage = null;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        elements = NO_ELEMENTS;
+        numbers = null;
+        offset = 0;
+        size = 0;
+        storage = null;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Tracks an array that is shared by several copies of an object or array. Each copy sees a prefix of the array,
+ * so the copy that ends where the used part of the array ends can keep appending in place.
+ * Every other write copies the array first.
+ * <p>
+ * Claims are atomic because constants are copied from multiple threads.
+ */
+final class SharedStorage {
+    private static final AtomicIntegerFieldUpdater<SharedStorage> USED = AtomicIntegerFieldUpdater.newUpdater(SharedStorage.class, "used");
+
+    private volatile int used;
+
+    SharedStorage(int used) {
+        this.used = used;
+    }
+
+    /**
+     * Gets the storage of a map or list that is about to be copied, creating one if its contents aren't shared yet.
+     * @param owner The map or list being copied
+     * @param field The volatile field of the owner that holds its storage
+     * @param used The end of the contents of the owner, used if a new storage is created
+     */
+    static <T> SharedStorage share(T owner, AtomicReferenceFieldUpdater<T, SharedStorage> field, int used) {
+        var storage = field.get(owner);
+        if (storage != null) return storage;
+        // Constants are copied from multiple threads, so they all need to agree on the storage
+        field.compareAndSet(owner, null, new SharedStorage(used));
+        return field.get(owner);
+    }
+
+    /**
+     * Claims the slots right after the used part of the array.
+     * @param end The end of the contents of the copy that wants to append
+     * @param count The number of slots to claim, which the caller has checked to fit in the array
+     * @return Whether the slots were claimed. If not, another copy already appended past {@code end}.
+     */
+    boolean claim(int end, int count) {
+        return USED.compareAndSet(this, end, end + count);
+    }
+}
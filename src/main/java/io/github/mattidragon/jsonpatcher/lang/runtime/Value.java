@@ -13,6 +13,39 @@ public sealed interface Value {
 
     boolean asBoolean();
 
+    /**
+     * Returns a deeply immutable version of this value, which can be shared between contexts and threads.
+     * Writes to frozen objects and arrays throw an {@link EvaluationException}. Primitives and functions are returned as is.
+     */
+    default Value freeze() {
+        return freeze(this, new IdentityHashMap<>());
+    }
+
+    private static Value freeze(Value value, IdentityHashMap<Value, Value> frozen) {
+        return switch (value) {
+            case ObjectValue object when !object.isFrozen() -> {
+                var existing = frozen.get(object);
+                if (existing != null) yield existing;
+                // The copy is registered before its contents are frozen, so that cycles are preserved
+                var entries = new ShapedMap();
+                var copy = new ObjectValue(new FrozenMap(entries));
+                frozen.put(object, copy);
+                object.value().forEach((key, entry) -> entries.put(key, freeze(entry, frozen)));
+                yield copy;
+            }
+            case ArrayValue array when !array.isFrozen() -> {
+                var existing = frozen.get(array);
+                if (existing != null) yield existing;
+                var elements = new ArrayList<Value>(array.value().size());
+                var copy = new ArrayValue(new FrozenList(elements));
+                frozen.put(array, copy);
+                array.value().forEach(element -> elements.add(freeze(element, frozen)));
+                yield copy;
+            }
+            default -> value;
+        };
+    }
+
     @NotNull
     static Value convertNull(@Nullable Value value) {
         return value == null ? NullValue.NULL : value;
@@ -20,7 +53,7 @@ public sealed interface Value {
 
     record ObjectValue(Map<String, Value> value) implements Value {
         public ObjectValue {
-            value = new LinkedHashMap<>(value);
+            value = value instanceof ValueStorage storage && storage.claim() ? value : new ShapedMap(value);
         }
 
         public ObjectValue() {
@@ -33,14 +66,54 @@ public sealed interface Value {
         }
 
         public void set(String key, Value value, LangConfig config, @Nullable SourceSpan pos) {
+            requireMutable(config, pos);
             this.value.put(key, value);
         }
 
         public void remove(String key, LangConfig config, SourceSpan pos) {
+            requireMutable(config, pos);
             if (!value.containsKey(key)) throw new EvaluationException(config, "Object %s has no key %s".formatted(this, key), pos);
             value.remove(key);
         }
 
+        @Override
+        public ObjectValue freeze() {
+            return (ObjectValue) Value.super.freeze();
+        }
+
+        public boolean isFrozen() {
+            return value instanceof FrozenMap;
+        }
+
+        /**
+         * The shape of this object. Objects with the same shape have the same keys in the same order.
+         * @return The shape, or null if this object stores its keys in a plain map
+         * @see #getAt(int)
+         */
+        @Nullable
+        public Shape shape() {
+            return switch (value) {
+                case ShapedMap map -> map.shape();
+                case FrozenMap map -> map.shape();
+                default -> null;
+            };
+        }
+
+        /**
+         * Reads a value by its index in the {@link #shape() shape} of this object.
+         * Only valid while the object still has the shape the index was found in.
+         */
+        public Value getAt(int index) {
+            return value instanceof ShapedMap map ? map.valueAt(index) : ((FrozenMap) value).valueAt(index);
+        }
+
+        /**
+         * Throws if this object is frozen. Code that modifies the map directly should call this first.
+         */
+        public void requireMutable(LangConfig config, @Nullable SourceSpan pos) {
+            if (isFrozen()) throw new EvaluationException(config, "Cannot modify frozen object %s".formatted(this), pos);
+        }
+
         @Override
         public boolean asBoolean() {
             return !value.isEmpty();
@@ -70,7 +143,7 @@ public sealed interface Value {
 
     record ArrayValue(List<Value> value) implements Value {
         public ArrayValue {
-            value = new ArrayList<>(value);
+            value = value instanceof ValueStorage storage && storage.claim() ? value : new SharedList(value);
         }
 
         public ArrayValue() {
@@ -81,14 +154,54 @@ public sealed interface Value {
             return this.value.get(fixIndex(index, config, pos));
         }
 
+        /**
+         * Whether every element is a number stored without boxing. Such arrays can be read with {@link #getDouble}.
+         */
+        public boolean isNumeric() {
+            return value instanceof SharedList list && list.isNumeric();
+        }
+
+        /**
+         * Reads a number from an array that {@linkplain #isNumeric() is numeric}, without boxing it.
+         */
+        public double getDouble(int index, LangConfig config, @Nullable SourceSpan pos) {
+            return ((SharedList) value).getDouble(fixIndex(index, config, pos));
+        }
+
         public void set(int index, Value value, LangConfig config, @Nullable SourceSpan pos) {
+            requireMutable(config, pos);
             this.value.set(fixIndex(index, config, pos), value);
         }
 
         public void remove(int index, LangConfig config, SourceSpan pos) {
+            requireMutable(config, pos);
             value.remove(fixIndex(index, config, pos));
         }
 
+        /**
+         * Creates a new array with a range of the elements of this one. The elements are shared until either array is modified.
+         */
+        public ArrayValue slice(int from, int to) {
+            if (value instanceof SharedList list) return new ArrayValue(new SharedList(list, from, to));
+            return new ArrayValue(value.subList(from, to));
+        }
+
+        @Override
+        public ArrayValue freeze() {
+            return (ArrayValue) Value.super.freeze();
+        }
+
+        public boolean isFrozen() {
+            return value instanceof FrozenList;
+        }
+
+        /**
+         * Throws if this array is frozen. Code that modifies the list directly should call this first.
+         */
+        public void requireMutable(LangConfig config, @Nullable SourceSpan pos) {
+            if (isFrozen()) throw new EvaluationException(config, "Cannot modify frozen array %s".formatted(this), pos);
+        }
+
         private int fixIndex(int index, LangConfig config, @Nullable SourceSpan pos) {
             if (index >= value.size() || index < -value.size())
                 throw new EvaluationException(config, "Array index out of bounds (index: %s, size: %s)".formatted(index, value.size()), pos);
@@ -0,0 +1,16 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+/**
+ * Implemented by maps and lists that {@link Value.ObjectValue} and {@link Value.ArrayValue} use as their contents directly,
+ * instead of copying them into their own storage. Such maps and lists back a single value: the first value created
+ * with one takes it over, and any later values copy it like any other map or list.
+ * <p>
+ * Hosts should extend {@link ObjectStorage} or {@link ArrayStorage} rather than implementing this directly.
+ */
+public interface ValueStorage {
+    /**
+     * Takes over this storage for a value.
+     * @return Whether the storage was taken over. Only the first call may return true.
+     */
+    boolean claim();
+}
@@ -0,0 +1,69 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.VariableResolver;
+import org.jetbrains.annotations.ApiStatus;
+
+import java.util.Arrays;
+
+/**
+ * The location of a variable in the frame chain, as determined by the {@link VariableResolver}.
+ * Variables with unresolved slots are looked up by name instead. This is the case for builtin libraries,
+ * variables provided by the host and for trees that never went through the resolver.
+ */
+public final class VariableSlot {
+    private static final int[] NO_SHADOWED = new int[0];
+
+    private int depth = -1;
+    private int index = -1;
+    private int[] shadowed = NO_SHADOWED;
+
+    public boolean isResolved() {
+        return index >= 0;
+    }
+
+    /**
+     * The amount of frames to walk up before reaching the frame that holds the variable.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * The index of the variable within its frame.
+     */
+    public int index() {
+        return index;
+    }
+
+    /**
+     * Pairs of depth and index for variables with the same name in outer frames.
+     * Declarations check these to keep variables from shadowing each other, and accesses fall back to them
+     * while the variable itself doesn't exist.
+     */
+    public int[] shadowed() {
+        return shadowed;
+    }
+
+    @ApiStatus.Internal
+    public void resolve(int depth, int index, int[] shadowed) {
+        this.depth = depth;
+        this.index = index;
+        this.shadowed = shadowed;
+    }
+
+    // Slots are resolved by the parser before the tree is handed out, so they compare by value like the rest of the node
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VariableSlot other && depth == other.depth && index == other.index && Arrays.equals(shadowed, other.shadowed);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * depth + index) + Arrays.hashCode(shadowed);
+    }
+
+    @Override
+    public String toString() {
+        return isResolved() ? "VariableSlot[depth=%s, index=%s]".formatted(depth, index) : "VariableSlot[unresolved]";
+    }
+}
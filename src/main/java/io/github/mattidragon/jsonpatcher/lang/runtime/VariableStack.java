@@ -2,84 +2,366 @@ package io.github.mattidragon.jsonpatcher.lang.runtime;
 
 import io.github.mattidragon.jsonpatcher.lang.LangConfig;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnexpectedValueException;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * A frame of variables. Variables that were bound by the {@link io.github.mattidragon.jsonpatcher.lang.parse.VariableResolver}
+ * live in flat slots, while everything else (builtins, host variables and unresolved code) is stored by name.
+ */
 public final class VariableStack {
-    private final LangConfig config;
+    private static final Value[] NO_SLOTS = new Value[0];
+    private static final boolean[] NO_MUTABILITY = new boolean[0];
+    // Marks slots whose number is stored in the numbers array. Compared by identity and never handed out.
+    private static final Value UNBOXED = new Value.NumberValue(Double.NaN);
+
+    // Only null for shared frames, which are never used directly
+    private final @Nullable LangConfig config;
     private final @Nullable VariableStack parent;
-    private final HashMap<String, Value> mutable = new HashMap<>();
-    private final HashMap<String, Value> immutable = new HashMap<>();
+    private final Value[] slots;
+    private final boolean[] mutableSlots;
+    // Numbers assigned with setDouble, created on demand
+    private @Nullable double[] numbers;
+    private final boolean functionFrame;
+    private final boolean programFrame;
+    private @Nullable Value returnValue;
+    // Named variables are rare outside the root frame, so the maps are created on demand
+    private @Nullable HashMap<String, Value> mutable;
+    private @Nullable HashMap<String, Value> immutable;
+    // Names declared by the running program that are already taken by named variables, or null when they are unknown
+    private @Nullable Set<String> collisions;
 
     public VariableStack(LangConfig config) {
-        this.config = config;
-        this.parent = null;
+        this(config, null);
     }
 
     public VariableStack(LangConfig config, @Nullable VariableStack parent) {
+        this(config, parent, 0);
+    }
+
+    public VariableStack(LangConfig config, @Nullable VariableStack parent, int slotCount) {
+        this(config, parent, slotCount, false);
+    }
+
+    public VariableStack(LangConfig config, @Nullable VariableStack parent, int slotCount, boolean functionFrame) {
+        this(config, parent, slotCount, functionFrame, false);
+    }
+
+    private VariableStack(LangConfig config, @Nullable VariableStack parent, int slotCount, boolean functionFrame, boolean programFrame) {
         this.config = config;
+        this.functionFrame = functionFrame;
+        this.programFrame = programFrame;
         this.parent = parent;
+        this.collisions = parent == null ? null : parent.collisions;
+        this.slots = slotCount == 0 ? NO_SLOTS : new Value[slotCount];
+        this.mutableSlots = slotCount == 0 ? NO_MUTABILITY : new boolean[slotCount];
+    }
+
+    private VariableStack(Map<String, Value> variables) {
+        this.config = null;
+        this.functionFrame = false;
+        this.programFrame = false;
+        this.parent = null;
+        this.slots = NO_SLOTS;
+        this.mutableSlots = NO_MUTABILITY;
+        this.immutable = new HashMap<>(variables);
+    }
+
+    /**
+     * Creates a root frame of immutable variables that can be shared by any number of contexts and threads.
+     * Shared frames may only be used as parents, as lookups and errors always go through the frames below them.
+     * The values should be {@linkplain Value#freeze() frozen}, because they are visible to all users of the frame.
+     */
+    public static VariableStack shared(Map<String, Value> variables) {
+        return new VariableStack(variables);
+    }
+
+    /**
+     * Creates the frame that a program runs in. Programs used to run directly in the frame they were given,
+     * so named variables of the parent can still be deleted from here. Variables declared by the program are
+     * gone once it finishes.
+     */
+    public static VariableStack program(LangConfig config, VariableStack parent, int slotCount) {
+        return new VariableStack(config, parent, slotCount, true, true);
     }
 
     public Value getVariable(String name, SourceSpan pos) {
-        if (mutable.containsKey(name)) {
-            return mutable.get(name);
+        for (var frame = this; frame != null; frame = frame.parent) {
+            var value = frame.getNamed(name);
+            if (value != null) return value;
         }
-        if (immutable.containsKey(name)) {
-            return immutable.get(name);
+        throw new EvaluationException(config, "Cannot find variable with name %s".formatted(name), pos);
+    }
+
+    public Value getVariable(String name, VariableSlot slot, SourceSpan pos) {
+        if (!slot.isResolved()) return getVariable(name, pos);
+        var frame = frame(slot.depth());
+        var value = frame.read(slot.index());
+        if (value == null) {
+            var shadowed = findShadowed(slot);
+            return shadowed == null ? getVariable(name, pos) : shadowed.value();
         }
-        if (parent != null) {
-            return parent.getVariable(name, pos);
+        return value;
+    }
+
+    /**
+     * Reads a number without boxing it if the slot holds one.
+     * @throws UnexpectedValueException If the variable isn't a number
+     */
+    public double getDouble(String name, VariableSlot slot, SourceSpan pos) {
+        if (slot.isResolved()) {
+            var frame = frame(slot.depth());
+            var index = slot.index();
+            var value = frame.slots[index];
+            if (value == UNBOXED) return frame.numbers[index];
+            if (value != null) return UnexpectedValueException.unbox(value);
         }
-        throw new EvaluationException(config, "Cannot find variable with name %s".formatted(name), pos);
+        return UnexpectedValueException.unbox(getVariable(name, slot, pos));
     }
 
     @VisibleForTesting
     public boolean hasVariable(String name) {
-        if (mutable.containsKey(name)) return true;
-        if (immutable.containsKey(name)) return true;
-        if (parent != null) return parent.hasVariable(name);
+        for (var frame = this; frame != null; frame = frame.parent) {
+            if (frame.getNamed(name) != null) return true;
+        }
         return false;
     }
 
     public void setVariable(String name, Value value, SourceSpan pos) {
-        if (parent != null && parent.hasVariable(name)) {
-            parent.setVariable(name, value, pos);
-        } else if (mutable.containsKey(name)) {
-            mutable.put(name, value);
-        } else if (immutable.containsKey(name)) {
-            throw new EvaluationException(config, "Attempt to assign to mutable variable %s".formatted(name), pos);
-        } else {
-            throw new EvaluationException(config, "Cannot find variable with name %s".formatted(name), pos);
+        for (var frame = this; frame != null; frame = frame.parent) {
+            if (frame.mutable != null && frame.mutable.containsKey(name)) {
+                frame.mutable.put(name, value);
+                return;
+            }
+            if (frame.immutable != null && frame.immutable.containsKey(name)) {
+                throw new EvaluationException(config, "Attempt to assign to mutable variable %s".formatted(name), pos);
+            }
+        }
+        throw new EvaluationException(config, "Cannot find variable with name %s".formatted(name), pos);
+    }
+
+    public void setVariable(String name, VariableSlot slot, Value value, SourceSpan pos) {
+        if (!slot.isResolved()) {
+            setVariable(name, value, pos);
+            return;
+        }
+
+        var frame = frame(slot.depth());
+        var index = slot.index();
+        if (frame.slots[index] == null) {
+            var shadowed = findShadowed(slot);
+            if (shadowed == null) {
+                setVariable(name, value, pos);
+                return;
+            }
+            frame = shadowed.frame;
+            index = shadowed.index;
+        }
+        if (!frame.mutableSlots[index]) throw new EvaluationException(config, "Attempt to assign to mutable variable %s".formatted(name), pos);
+        frame.slots[index] = value;
+    }
+
+    /**
+     * Assigns a number to a variable. Slots keep it unboxed, so that updating a counter doesn't allocate.
+     */
+    public void setDouble(String name, VariableSlot slot, double value, SourceSpan pos) {
+        if (slot.isResolved()) {
+            var frame = frame(slot.depth());
+            var index = slot.index();
+            if (frame.slots[index] != null && frame.mutableSlots[index]) {
+                if (frame.numbers == null) frame.numbers = new double[frame.slots.length];
+                frame.numbers[index] = value;
+                frame.slots[index] = UNBOXED;
+                return;
+            }
         }
+        setVariable(name, slot, new Value.NumberValue(value), pos);
     }
 
     public void createVariable(String name, Value value, boolean mutable, SourceSpan pos) {
         if (hasVariable(name)) throw new EvaluationException(config, "Cannot create variable with duplicate name: %s".formatted(name), pos);
-        if (mutable) this.mutable.put(name, value);
-        else this.immutable.put(name, value);
+        createVariableUnsafe(name, value, mutable);
+    }
+
+    public void createVariable(String name, VariableSlot slot, Value value, boolean mutable, SourceSpan pos) {
+        if (!slot.isResolved()) {
+            createVariable(name, value, mutable, pos);
+            return;
+        }
+
+        var index = slot.index();
+        if (frame(slot.depth()).slots[index] != null || isShadowing(slot) || collides(name)) {
+            throw new EvaluationException(config, "Cannot create variable with duplicate name: %s".formatted(name), pos);
+        }
+        createVariableUnsafe(index, value, mutable);
+    }
+
+    /**
+     * Finds the names that the program declares in slots which are already taken by named variables, like builtins and host variables.
+     * Resolved programs never create named variables themselves, so the result holds for the whole run and is inherited by all
+     * frames created below this one, which lets declarations skip walking the whole chain of frames.
+     */
+    public void checkCollisions(Set<String> declaredNames) {
+        var collisions = new HashSet<String>();
+        for (var name : declaredNames) {
+            if (hasVariable(name)) collisions.add(name);
+        }
+        this.collisions = collisions.isEmpty() ? Set.of() : collisions;
+    }
+
+    private boolean collides(String name) {
+        var collisions = this.collisions;
+        if (collisions == null) return hasVariable(name);
+        return !collisions.isEmpty() && collisions.contains(name);
+    }
+
+    private boolean isShadowing(VariableSlot slot) {
+        return findShadowed(slot) != null;
+    }
+
+    /**
+     * Finds the closest variable in an outer frame that has the same name as the slot. Code that runs before a declaration
+     * or after a delete sees that variable, as it would if the variables were looked up by name.
+     */
+    @Nullable
+    private ShadowedSlot findShadowed(VariableSlot slot) {
+        var shadowed = slot.shadowed();
+        for (int i = 0; i < shadowed.length; i += 2) {
+            var frame = frame(shadowed[i]);
+            if (frame.slots[shadowed[i + 1]] != null) return new ShadowedSlot(frame, shadowed[i + 1]);
+        }
+        return null;
     }
 
     /**
      * Creates a variable without checking for duplicates.
      */
     public void createVariableUnsafe(String name, Value value, boolean mutable) {
-        if (mutable) this.mutable.put(name, value);
-        else this.immutable.put(name, value);
+        if (mutable) {
+            if (this.mutable == null) this.mutable = new HashMap<>();
+            this.mutable.put(name, value);
+        } else {
+            if (this.immutable == null) this.immutable = new HashMap<>();
+            this.immutable.put(name, value);
+        }
+    }
+
+    /**
+     * Creates a variable in a slot of this frame without checking for duplicates.
+     */
+    public void createVariableUnsafe(int index, Value value, boolean mutable) {
+        slots[index] = value;
+        mutableSlots[index] = mutable;
+    }
+
+    /**
+     * Creates a variable holding a number in a slot of this frame without boxing it or checking for duplicates.
+     */
+    public void createVariableUnsafe(int index, double value, boolean mutable) {
+        if (numbers == null) numbers = new double[slots.length];
+        numbers[index] = value;
+        slots[index] = UNBOXED;
+        mutableSlots[index] = mutable;
+    }
+
+    /**
+     * Removes all variables from this frame, so that it can be reused for another iteration of a loop.
+     */
+    public void reset() {
+        Arrays.fill(slots, null);
+        mutable = null;
+        immutable = null;
     }
 
     public void deleteVariable(String name, SourceSpan pos) {
-        if (immutable.containsKey(name)) {
-            immutable.remove(name);
-            return;
-        }
-        if (mutable.containsKey(name)) {
-            mutable.remove(name);
+        if (immutable != null && immutable.remove(name) != null) return;
+        if (mutable != null && mutable.remove(name) != null) return;
+        if (programFrame && parent != null && parent.config != null) {
+            parent.deleteVariable(name, pos);
+            // The program may now declare a variable with the freed name
+            if (collisions != null && collisions.contains(name) && !hasVariable(name)) collisions.remove(name);
             return;
         }
         if (hasVariable(name)) throw new EvaluationException(config, "Cannot delete variable from outer scope: %s".formatted(name), pos);
         throw new EvaluationException(config, "Cannot find variable with name %s".formatted(name), pos);
     }
+
+    public void deleteVariable(String name, VariableSlot slot, SourceSpan pos) {
+        if (!slot.isResolved()) {
+            deleteVariable(name, pos);
+            return;
+        }
+
+        var frame = frame(slot.depth());
+        var index = slot.index();
+        if (frame.slots[index] == null) {
+            if (isShadowing(slot)) throw new EvaluationException(config, "Cannot delete variable from outer scope: %s".formatted(name), pos);
+            deleteVariable(name, pos);
+            return;
+        }
+        if (frame != this) throw new EvaluationException(config, "Cannot delete variable from outer scope: %s".formatted(name), pos);
+        slots[index] = null;
+    }
+
+    /**
+     * Stores the value of a return statement in the closest function frame.
+     */
+    public void setReturnValue(Value value) {
+        var frame = this;
+        while (!frame.functionFrame && frame.parent != null) {
+            frame = frame.parent;
+        }
+        frame.returnValue = value;
+    }
+
+    /**
+     * Removes and returns the value stored by {@link #setReturnValue}, or the null value if there is none.
+     */
+    public Value takeReturnValue() {
+        var value = returnValue;
+        returnValue = null;
+        return value == null ? Value.NullValue.NULL : value;
+    }
+
+    private VariableStack frame(int depth) {
+        var frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.parent;
+        }
+        return frame;
+    }
+
+    @Nullable
+    private Value read(int index) {
+        var value = slots[index];
+        if (value == UNBOXED) {
+            // Frames with slots belong to a single run, so the box can be kept until the next unboxed assignment
+            value = new Value.NumberValue(numbers[index]);
+            slots[index] = value;
+        }
+        return value;
+    }
+
+    private record ShadowedSlot(VariableStack frame, int index) {
+        public Value value() {
+            return frame.read(index);
+        }
+    }
+
+    @Nullable
+    private Value getNamed(String name) {
+        if (mutable != null) {
+            var value = mutable.get(name);
+            if (value != null) return value;
+        }
+        if (immutable != null) return immutable.get(name);
+        return null;
+    }
 }
@@ -6,14 +6,127 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
-import java.util.function.BiPredicate;
+import java.util.Objects;
+
+/**
+ * Applies a binary operator to two operands. The type feedback is a plain field rather than a record component,
+ * so it doesn't take part in equality.
+ */
+public final class BinaryExpression implements Expression {
+    private final Expression first;
+    private final Expression second;
+    private final Operator op;
+    private final SourceSpan pos;
+    private final TypeFeedback<Specialization> feedback;
+
+    public BinaryExpression(Expression first, Expression second, Operator op, SourceSpan pos) {
+        this(first, second, op, pos, new TypeFeedback<>());
+    }
+
+    public BinaryExpression(Expression first, Expression second, Operator op, SourceSpan pos, TypeFeedback<Specialization> feedback) {
+        this.first = first;
+        this.second = second;
+        this.op = op;
+        this.pos = pos;
+        this.feedback = feedback;
+    }
+
+    public Expression first() {
+        return first;
+    }
+
+    public Expression second() {
+        return second;
+    }
+
+    public Operator op() {
+        return op;
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return pos;
+    }
+
+    public TypeFeedback<Specialization> feedback() {
+        return feedback;
+    }
 
-public record BinaryExpression(Expression first, Expression second, Operator op, SourceSpan pos) implements Expression {
     @Override
     public Value evaluate(EvaluationContext context) {
-        return op.apply(first.evaluate(context), second.evaluate(context), pos, context.config());
+        var specialization = feedback.specialization();
+        if (specialization != null && specialization.isNumeric()) {
+            // Operands are evaluated unboxed, so nested arithmetic only allocates the final result
+            if (specialization.isComparison()) return compare(specialization, context);
+            try {
+                return new Value.NumberValue(evaluateDouble(context));
+            } catch (UnexpectedValueException e) {
+                return e.value();
+            }
+        }
+        return apply(this.first.evaluate(context), this.second.evaluate(context), context);
+    }
+
+    @Override
+    public double evaluateDouble(EvaluationContext context) {
+        var specialization = feedback.specialization();
+        if (specialization == null || !specialization.isNumeric() || specialization.isComparison()) {
+            return Expression.super.evaluateDouble(context);
+        }
+
+        double first;
+        try {
+            first = this.first.evaluateDouble(context);
+        } catch (UnexpectedValueException e) {
+            return UnexpectedValueException.unbox(apply(e.value(), this.second.evaluate(context), context));
+        }
+        double second;
+        try {
+            second = this.second.evaluateDouble(context);
+        } catch (UnexpectedValueException e) {
+            return UnexpectedValueException.unbox(apply(new Value.NumberValue(first), e.value(), context));
+        }
+        return specialization.apply(first, second);
+    }
+
+    private Value compare(Specialization specialization, EvaluationContext context) {
+        double first;
+        try {
+            first = this.first.evaluateDouble(context);
+        } catch (UnexpectedValueException e) {
+            return apply(e.value(), this.second.evaluate(context), context);
+        }
+        double second;
+        try {
+            second = this.second.evaluateDouble(context);
+        } catch (UnexpectedValueException e) {
+            return apply(new Value.NumberValue(first), e.value(), context);
+        }
+        return Value.BooleanValue.of(specialization.compare(first, second));
+    }
+
+    /**
+     * Applies the operator to already evaluated operands, using and updating the type feedback of this node.
+     */
+    public Value apply(Value first, Value second, EvaluationContext context) {
+        var specialization = feedback.specialization();
+        if (specialization != null) {
+            var result = specialization.apply(first, second);
+            if (result != null) return result;
+            feedback.generalize();
+        } else if (!feedback.isGeneric()) {
+            var found = Specialization.find(op, first, second);
+            if (found != null) {
+                feedback.specialize(found);
+            } else {
+                feedback.generalize();
+            }
+        }
+
+        return op.apply(first, second, pos, context.config());
     }
 
     @Override
@@ -21,6 +134,141 @@ public record BinaryExpression(Expression first, Expression second, Operator op,
         return List.of(first, second);
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof BinaryExpression other
+               && Objects.equals(first, other.first)
+               && Objects.equals(second, other.second)
+               && Objects.equals(op, other.op)
+               && Objects.equals(pos, other.pos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, second, op, pos);
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryExpression[first=%s, second=%s, op=%s, pos=%s]".formatted(first, second, op, pos);
+    }
+
+    /**
+     * Fast paths for the most common operand types of builtin operators.
+     * Each one has the same result as the operator it replaces whenever it applies.
+     */
+    public enum Specialization {
+        NUMBER_ADD, NUMBER_SUBTRACT, NUMBER_MULTIPLY, NUMBER_DIVIDE, NUMBER_MODULO, NUMBER_EXPONENT,
+        NUMBER_LESS_THAN, NUMBER_GREATER_THAN, NUMBER_LESS_THAN_EQUAL, NUMBER_GREATER_THAN_EQUAL, NUMBER_EQUALS, NUMBER_NOT_EQUALS,
+        STRING_CONCAT, STRING_EQUALS, STRING_NOT_EQUALS;
+
+        /**
+         * Applies the specialization to the operands.
+         * @return The result, or null if the operands aren't of the types this specialization handles
+         */
+        @Nullable
+        public Value apply(Value first, Value second) {
+            if (first instanceof Value.NumberValue(var number1) && second instanceof Value.NumberValue(var number2)) {
+                return switch (this) {
+                    case NUMBER_ADD -> new Value.NumberValue(number1 + number2);
+                    case NUMBER_SUBTRACT -> new Value.NumberValue(number1 - number2);
+                    case NUMBER_MULTIPLY -> new Value.NumberValue(number1 * number2);
+                    case NUMBER_DIVIDE -> new Value.NumberValue(number1 / number2);
+                    case NUMBER_MODULO -> new Value.NumberValue(number1 % number2);
+                    case NUMBER_EXPONENT -> new Value.NumberValue(Math.pow(number1, number2));
+                    case NUMBER_LESS_THAN -> Value.BooleanValue.of(number1 < number2);
+                    case NUMBER_GREATER_THAN -> Value.BooleanValue.of(number1 > number2);
+                    case NUMBER_LESS_THAN_EQUAL -> Value.BooleanValue.of(number1 <= number2);
+                    case NUMBER_GREATER_THAN_EQUAL -> Value.BooleanValue.of(number1 >= number2);
+                    case NUMBER_EQUALS -> Value.BooleanValue.of(number1 == number2);
+                    case NUMBER_NOT_EQUALS -> Value.BooleanValue.of(number1 != number2);
+                    default -> null;
+                };
+            }
+            if (first instanceof Value.StringValue(var string1) && second instanceof Value.StringValue(var string2)) {
+                return switch (this) {
+                    case STRING_CONCAT -> new Value.StringValue(string1 + string2);
+                    case STRING_EQUALS -> Value.BooleanValue.of(string1.equals(string2));
+                    case STRING_NOT_EQUALS -> Value.BooleanValue.of(!string1.equals(string2));
+                    default -> null;
+                };
+            }
+            return null;
+        }
+
+        /**
+         * Whether the specialization takes two numbers.
+         */
+        public boolean isNumeric() {
+            return compareTo(NUMBER_NOT_EQUALS) <= 0;
+        }
+
+        /**
+         * Whether the specialization takes two numbers and returns a boolean.
+         */
+        public boolean isComparison() {
+            return compareTo(NUMBER_LESS_THAN) >= 0 && compareTo(NUMBER_NOT_EQUALS) <= 0;
+        }
+
+        /**
+         * Applies a numeric specialization that returns a number to unboxed operands.
+         */
+        public double apply(double first, double second) {
+            return switch (this) {
+                case NUMBER_ADD -> first + second;
+                case NUMBER_SUBTRACT -> first - second;
+                case NUMBER_MULTIPLY -> first * second;
+                case NUMBER_DIVIDE -> first / second;
+                case NUMBER_MODULO -> first % second;
+                case NUMBER_EXPONENT -> Math.pow(first, second);
+                default -> throw new IllegalStateException("%s doesn't return a number".formatted(this));
+            };
+        }
+
+        /**
+         * Applies a numeric comparison to unboxed operands.
+         */
+        public boolean compare(double first, double second) {
+            return switch (this) {
+                case NUMBER_LESS_THAN -> first < second;
+                case NUMBER_GREATER_THAN -> first > second;
+                case NUMBER_LESS_THAN_EQUAL -> first <= second;
+                case NUMBER_GREATER_THAN_EQUAL -> first >= second;
+                case NUMBER_EQUALS -> first == second;
+                case NUMBER_NOT_EQUALS -> first != second;
+                default -> throw new IllegalStateException("%s isn't a numeric comparison".formatted(this));
+            };
+        }
+
+        /**
+         * Finds a specialization for a builtin operator and the operands it was first applied to.
+         * Custom operators are never specialized.
+         */
+        @Nullable
+        public static Specialization find(Operator op, Value first, Value second) {
+            if (first instanceof Value.NumberValue && second instanceof Value.NumberValue) {
+                if (op == Operator.PLUS) return NUMBER_ADD;
+                if (op == Operator.MINUS) return NUMBER_SUBTRACT;
+                if (op == Operator.MULTIPLY) return NUMBER_MULTIPLY;
+                if (op == Operator.DIVIDE) return NUMBER_DIVIDE;
+                if (op == Operator.MODULO) return NUMBER_MODULO;
+                if (op == Operator.EXPONENT) return NUMBER_EXPONENT;
+                if (op == Operator.LESS_THAN) return NUMBER_LESS_THAN;
+                if (op == Operator.GREATER_THAN) return NUMBER_GREATER_THAN;
+                if (op == Operator.LESS_THAN_EQUAL) return NUMBER_LESS_THAN_EQUAL;
+                if (op == Operator.GREATER_THAN_EQUAL) return NUMBER_GREATER_THAN_EQUAL;
+                if (op == Operator.EQUALS) return NUMBER_EQUALS;
+                if (op == Operator.NOT_EQUALS) return NUMBER_NOT_EQUALS;
+            }
+            if (first instanceof Value.StringValue && second instanceof Value.StringValue) {
+                if (op == Operator.PLUS) return STRING_CONCAT;
+                if (op == Operator.EQUALS) return STRING_EQUALS;
+                if (op == Operator.NOT_EQUALS) return STRING_NOT_EQUALS;
+            }
+            return null;
+        }
+    }
+
     public interface Operator {
         Value apply(Value first, Value second, SourceSpan pos, LangConfig config);
 
@@ -35,15 +283,14 @@ public record BinaryExpression(Expression first, Expression second, Operator op,
             }
             if (first instanceof Value.ArrayValue array1
                 && second instanceof Value.ArrayValue array2) {
-                var array = new Value.ArrayValue();
-                array.value().addAll(array1.value());
+                // Copies share storage with the original, so appending to a fresh result doesn't copy it again
+                var array = new Value.ArrayValue(array1.value());
                 array.value().addAll(array2.value());
                 return array;
             }
             if (first instanceof Value.ObjectValue object1
                 && second instanceof Value.ObjectValue object2) {
-                var object = new Value.ObjectValue();
-                object.value().putAll(object1.value());
+                var object = new Value.ObjectValue(object1.value());
                 object.value().putAll(object2.value());
                 return (object);
             }
@@ -182,7 +429,7 @@ public record BinaryExpression(Expression first, Expression second, Operator op,
             return first == Value.NullValue.NULL && second == Value.NullValue.NULL;
         }
 
-        private static Operator numberComparison(BiPredicate<Double, Double> predicate) {
+        private static Operator numberComparison(NumberComparison predicate) {
             return (first, second, pos, config) -> {
                 if (first instanceof Value.NumberValue number1
                     && second instanceof Value.NumberValue number2) {
@@ -191,5 +438,10 @@ public record BinaryExpression(Expression first, Expression second, Operator op,
                 throw new EvaluationException(config, "Can't compare %s and %s".formatted(second, first), pos);
             };
         }
+
+        @FunctionalInterface
+        interface NumberComparison {
+            boolean test(double first, double second);
+        }
     }
 }
@@ -0,0 +1,53 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+
+import java.util.List;
+
+/**
+ * An array or object literal with only constant contents. Each evaluation returns a fresh deep copy of the template,
+ * which is cheaper than evaluating the initializer again. Created by the {@link io.github.mattidragon.jsonpatcher.lang.optimize.LiteralHoistingPass}.
+ * @param value The template, which is never exposed to code
+ */
+public record ConstantLiteralExpression(Value value, SourceSpan pos) implements Expression {
+    @Override
+    public Value evaluate(EvaluationContext context) {
+        return copy(value);
+    }
+
+    private static Value copy(Value value) {
+        // Only nested arrays and objects are replaced, so templates without them stay shared with their copies
+        return switch (value) {
+            case Value.ArrayValue array -> {
+                var copy = new Value.ArrayValue(array.value());
+                // Numbers have nothing to copy
+                if (array.isNumeric()) yield copy;
+                var elements = array.value();
+                for (int i = 0; i < elements.size(); i++) {
+                    if (isContainer(elements.get(i))) copy.value().set(i, copy(elements.get(i)));
+                }
+                yield copy;
+            }
+            case Value.ObjectValue object -> {
+                var copy = new Value.ObjectValue(object.value());
+                object.value().forEach((key, entry) -> {
+                    if (isContainer(entry)) copy.value().put(key, copy(entry));
+                });
+                yield copy;
+            }
+            default -> value;
+        };
+    }
+
+    private static boolean isContainer(Value value) {
+        return value instanceof Value.ArrayValue || value instanceof Value.ObjectValue;
+    }
+
+    @Override
+    public Iterable<? extends ProgramNode> getChildren() {
+        return List.of();
+    }
+}
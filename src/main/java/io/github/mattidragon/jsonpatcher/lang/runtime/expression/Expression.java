@@ -10,6 +10,15 @@ public interface Expression extends ProgramNode {
     Value evaluate(EvaluationContext context);
     SourceSpan pos();
 
+    /**
+     * Evaluates the expression to an unboxed number. Arithmetic overrides this to avoid allocating temporary values,
+     * and parents call it when their type feedback says that the result is a number.
+     * @throws UnexpectedValueException If the result isn't a number. The exception carries the result instead
+     */
+    default double evaluateDouble(EvaluationContext context) {
+        return UnexpectedValueException.unbox(evaluate(context));
+    }
+
     default EvaluationException error(EvaluationContext context, String message) {
         return new EvaluationException(context.config(), message, pos());
     }
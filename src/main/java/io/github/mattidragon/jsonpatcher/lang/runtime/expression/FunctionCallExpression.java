@@ -2,26 +2,105 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
 
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
-import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArguments;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+
+/**
+ * Calls a function. The argument count of a call never changes, so the call remembers the arguments of the last
+ * defined function it checked and only checks the count again when a different function is called.
+ * The cache is left out of equality, like type feedback.
+ */
+public final class FunctionCallExpression implements Expression {
+    private static final Value[] NO_ARGUMENTS = new Value[0];
+
+    private final Expression function;
+    private final List<Expression> arguments;
+    private final SourceSpan pos;
+    // Immutable, so a stale read from another thread only costs another check
+    private @Nullable FunctionArguments checked;
+
+    public FunctionCallExpression(Expression function, List<Expression> arguments, SourceSpan pos) {
+        this.function = function;
+        this.arguments = List.copyOf(arguments);
+        this.pos = pos;
+    }
+
+    public Expression function() {
+        return function;
+    }
+
+    public List<Expression> arguments() {
+        return arguments;
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return pos;
+    }
 
-public record FunctionCallExpression(Expression function, List<Expression> arguments, SourceSpan pos) implements Expression {
     @Override
     public Value evaluate(EvaluationContext context) {
-        var function = this.function.evaluate(context);
+        if (this.function instanceof PropertyAccessExpression access) {
+            // Method calls on builtin types pass the receiver as the first argument instead of binding the method first
+            var receiver = access.parent().evaluate(context);
+            var method = access.findMethod(receiver);
+            if (method != null) {
+                var arguments = new Value[this.arguments.size() + 1];
+                arguments[0] = receiver;
+                for (int i = 0; i < this.arguments.size(); i++) {
+                    arguments[i + 1] = this.arguments.get(i).evaluate(context);
+                }
+                return method.execute(context, arguments, pos);
+            }
+            return call(context, access.get(context, receiver), evaluateArguments(context));
+        }
+        return call(context, this.function.evaluate(context), evaluateArguments(context));
+    }
+
+    /**
+     * Calls a function value with already evaluated arguments, skipping the argument count check if this call
+     * already checked the function.
+     * @param arguments The arguments, which must be as many as this call has
+     */
+    public Value call(EvaluationContext context, Value function, Value[] arguments) {
         if (!(function instanceof Value.FunctionValue functionValue)) {
             throw error(context, "Tried to call %s, not a function".formatted(function));
         }
 
-        return functionValue.function().execute(
-                context,
-                arguments.stream().map(expression -> expression.evaluate(context)).toList(),
-                pos
-        );
+        if (functionValue.function() instanceof PatchFunction.DefinedPatchFunction defined) {
+            if (defined.args() != checked) {
+                // Let the function report a wrong count itself
+                if (!defined.accepts(arguments.length)) return defined.execute(context, arguments, pos);
+                checked = defined.args();
+            }
+            return defined.call(context, arguments, pos);
+        }
+        return functionValue.function().execute(context, arguments, pos);
+    }
+
+    private Value[] evaluateArguments(EvaluationContext context) {
+        // Unrolled for common argument counts, so the JIT doesn't need to see through the list iteration
+        return switch (arguments.size()) {
+            case 0 -> NO_ARGUMENTS;
+            case 1 -> new Value[]{arguments.get(0).evaluate(context)};
+            case 2 -> new Value[]{arguments.get(0).evaluate(context), arguments.get(1).evaluate(context)};
+            case 3 -> new Value[]{arguments.get(0).evaluate(context), arguments.get(1).evaluate(context), arguments.get(2).evaluate(context)};
+            case 4 -> new Value[]{arguments.get(0).evaluate(context), arguments.get(1).evaluate(context), arguments.get(2).evaluate(context), arguments.get(3).evaluate(context)};
+            default -> {
+                var values = new Value[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = arguments.get(i).evaluate(context);
+                }
+                yield values;
+            }
+        };
     }
 
     @Override
@@ -30,4 +109,22 @@ public record FunctionCallExpression(Expression function, List<Expression> argum
         list.add(function);
         return list;
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof FunctionCallExpression other
+               && function.equals(other.function)
+               && arguments.equals(other.arguments)
+               && Objects.equals(pos, other.pos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(function, arguments, pos);
+    }
+
+    @Override
+    public String toString() {
+        return "FunctionCallExpression[function=%s, arguments=%s, pos=%s]".formatted(function, arguments, pos);
+    }
 }
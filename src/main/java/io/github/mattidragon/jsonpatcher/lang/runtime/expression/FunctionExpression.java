@@ -2,6 +2,7 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
 
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArguments;
@@ -10,10 +11,14 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
 
 import java.util.List;
 
-public record FunctionExpression(Statement body, FunctionArguments args, SourceSpan pos) implements Expression {
+public record FunctionExpression(Statement body, FunctionArguments args, SourceSpan pos, FrameLayout layout) implements Expression {
+    public FunctionExpression(Statement body, FunctionArguments args, SourceSpan pos) {
+        this(body, args, pos, new FrameLayout());
+    }
+
     @Override
     public Value evaluate(EvaluationContext context) {
-        return new Value.FunctionValue(new PatchFunction.DefinedPatchFunction(body, args, context));
+        return new Value.FunctionValue(new PatchFunction.DefinedPatchFunction(body, args, context, layout));
     }
 
     @Override
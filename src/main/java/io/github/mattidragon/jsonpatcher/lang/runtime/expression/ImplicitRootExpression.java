@@ -6,11 +6,45 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 
 import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads a property of the root object by its bare name. The inline cache is kept out of equality.
+ */
+public final class ImplicitRootExpression implements Reference {
+    private final String name;
+    private final SourceSpan pos;
+    private final PropertyCache cache;
+
+    public ImplicitRootExpression(String name, SourceSpan pos) {
+        this(name, pos, new PropertyCache());
+    }
+
+    public ImplicitRootExpression(String name, SourceSpan pos, PropertyCache cache) {
+        this.name = name;
+        this.pos = pos;
+        this.cache = cache;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return pos;
+    }
+
+    public PropertyCache cache() {
+        return cache;
+    }
 
-public record ImplicitRootExpression(String name, SourceSpan pos) implements Reference {
     @Override
     public Value get(EvaluationContext context) {
-        return context.root().get(name, context.config(), pos);
+        var root = context.root();
+        var value = cache.get(root, name);
+        if (value != null) return value;
+        return root.get(name, context.config(), pos);
     }
 
     @Override
@@ -27,4 +61,21 @@ public record ImplicitRootExpression(String name, SourceSpan pos) implements Ref
     public Iterable<? extends ProgramNode> getChildren() {
         return List.of();
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ImplicitRootExpression other
+               && Objects.equals(name, other.name)
+               && Objects.equals(pos, other.pos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, pos);
+    }
+
+    @Override
+    public String toString() {
+        return "ImplicitRootExpression[name=%s, pos=%s]".formatted(name, pos);
+    }
 }
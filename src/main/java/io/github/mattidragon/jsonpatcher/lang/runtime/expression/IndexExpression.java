@@ -11,7 +11,30 @@ public record IndexExpression(Expression parent, Expression index, SourceSpan po
     @Override
     public Value get(EvaluationContext context) {
         var parent = this.parent.evaluate(context);
-        var index = this.index.evaluate(context);
+        return get(context, parent, this.index.evaluate(context));
+    }
+
+    /**
+     * Reads numeric arrays without boxing the element.
+     */
+    @Override
+    public double evaluateDouble(EvaluationContext context) {
+        var parent = this.parent.evaluate(context);
+        if (!(parent instanceof Value.ArrayValue array && array.isNumeric())) {
+            return UnexpectedValueException.unbox(get(context, parent, this.index.evaluate(context)));
+        }
+        double index;
+        try {
+            index = this.index.evaluateDouble(context);
+        } catch (UnexpectedValueException e) {
+            return UnexpectedValueException.unbox(get(context, parent, e.value()));
+        }
+        // The index can write to the array, so it might not be numeric anymore
+        if (!array.isNumeric()) return UnexpectedValueException.unbox(get(context, parent, new Value.NumberValue(index)));
+        return array.getDouble((int) index, context.config(), pos);
+    }
+
+    private Value get(EvaluationContext context, Value parent, Value index) {
         if (parent instanceof Value.ObjectValue objectValue) {
             if (!(index instanceof Value.StringValue stringValue))
                 throw error(context, "Tried to index object by %s. Objects can only be indexed by string".formatted(index));
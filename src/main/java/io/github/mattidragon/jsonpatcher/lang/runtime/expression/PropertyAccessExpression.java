@@ -4,14 +4,78 @@ import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
 import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Libraries;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads a property of a value. Type feedback changes as the program runs, so only the parent, name and positions are compared.
+ */
+public final class PropertyAccessExpression implements Reference {
+    private final Expression parent;
+    private final String name;
+    private final SourceSpan pos;
+    private final SourceSpan namePos;
+    private final TypeFeedback<Specialization> feedback;
+
+    public PropertyAccessExpression(Expression parent, String name, SourceSpan pos, SourceSpan namePos) {
+        this(parent, name, pos, namePos, new TypeFeedback<>());
+    }
+
+    public PropertyAccessExpression(Expression parent, String name, SourceSpan pos, SourceSpan namePos, TypeFeedback<Specialization> feedback) {
+        this.parent = parent;
+        this.name = name;
+        this.pos = pos;
+        this.namePos = namePos;
+        this.feedback = feedback;
+    }
+
+    public Expression parent() {
+        return parent;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return pos;
+    }
+
+    public SourceSpan namePos() {
+        return namePos;
+    }
+
+    public TypeFeedback<Specialization> feedback() {
+        return feedback;
+    }
 
-public record PropertyAccessExpression(Expression parent, String name, SourceSpan pos, SourceSpan namePos) implements Reference {
     @Override
     public Value get(EvaluationContext context) {
-        var parent = this.parent.evaluate(context);
+        return get(context, parent.evaluate(context));
+    }
+
+    /**
+     * Reads the property from an already evaluated parent.
+     */
+    public Value get(EvaluationContext context, Value parent) {
+        var specialization = feedback.specialization();
+        if (specialization != null) {
+            var result = specialization.apply(parent, name);
+            if (result != null) return result;
+            feedback.generalize();
+        } else if (!feedback.isGeneric()) {
+            var found = Specialization.find(parent, name);
+            if (found != null) {
+                feedback.specialize(found);
+            } else {
+                feedback.generalize();
+            }
+        }
 
         switch (parent) {
             case Value.ObjectValue objectValue -> {
@@ -47,6 +111,20 @@ public record PropertyAccessExpression(Expression parent, String name, SourceSpa
         }
     }
 
+    /**
+     * Finds the builtin method that reading this property would bind to the value.
+     * @return The method, or null if the value has no method with the name
+     */
+    @Nullable
+    public PatchFunction.BuiltInPatchFunction findMethod(Value parent) {
+        return switch (parent) {
+            case Value.ArrayValue ignored when !name.equals("length") -> Libraries.ArraysLibrary.METHODS.get(name);
+            case Value.StringValue ignored -> Libraries.StringsLibrary.METHODS.get(name);
+            case Value.FunctionValue ignored -> Libraries.FunctionsLibrary.METHODS.get(name);
+            default -> null;
+        };
+    }
+
     @Override
     public void set(EvaluationContext context, Value value) {
         var parent = this.parent.evaluate(context);
@@ -71,4 +149,75 @@ public record PropertyAccessExpression(Expression parent, String name, SourceSpa
     public Iterable<? extends ProgramNode> getChildren() {
         return List.of(parent);
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof PropertyAccessExpression other
+               && Objects.equals(parent, other.parent)
+               && Objects.equals(name, other.name)
+               && Objects.equals(pos, other.pos)
+               && Objects.equals(namePos, other.namePos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(parent, name, pos, namePos);
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyAccessExpression[parent=%s, name=%s, pos=%s, namePos=%s]".formatted(parent, name, pos, namePos);
+    }
+
+    /**
+     * Fast paths for reading properties from a single type of value. Method lookups are done once and cached.
+     * @param method The method found for the property, if the property is a method
+     * @param cache The inline cache used for reading properties of objects
+     */
+    public record Specialization(Kind kind, @Nullable PatchFunction.BuiltInPatchFunction method, @Nullable PropertyCache cache) {
+        public Specialization(Kind kind, @Nullable PatchFunction.BuiltInPatchFunction method) {
+            this(kind, method, kind == Kind.OBJECT ? new PropertyCache() : null);
+        }
+
+        /**
+         * Reads the property from the value.
+         * @return The property, or null if the value isn't of the type this specialization handles or doesn't have the property
+         */
+        @Nullable
+        public Value apply(Value parent, String name) {
+            return switch (kind) {
+                // Objects never contain java nulls, so a missing key falls back to the generic path for the error
+                case OBJECT -> parent instanceof Value.ObjectValue object ? Objects.requireNonNull(cache).get(object, name) : null;
+                case ARRAY_LENGTH -> parent instanceof Value.ArrayValue array ? new Value.NumberValue(array.value().size()) : null;
+                case ARRAY_METHOD -> parent instanceof Value.ArrayValue array ? bind(array) : null;
+                case STRING_METHOD -> parent instanceof Value.StringValue string ? bind(string) : null;
+                case FUNCTION_METHOD -> parent instanceof Value.FunctionValue function ? bind(function) : null;
+            };
+        }
+
+        private Value bind(Value value) {
+            return new Value.FunctionValue(Objects.requireNonNull(method).bind(value));
+        }
+
+        @Nullable
+        public static Specialization find(Value parent, String name) {
+            return switch (parent) {
+                case Value.ObjectValue ignored -> new Specialization(Kind.OBJECT, null);
+                case Value.ArrayValue ignored when name.equals("length") -> new Specialization(Kind.ARRAY_LENGTH, null);
+                case Value.ArrayValue ignored -> method(Kind.ARRAY_METHOD, Libraries.ArraysLibrary.METHODS.get(name));
+                case Value.StringValue ignored -> method(Kind.STRING_METHOD, Libraries.StringsLibrary.METHODS.get(name));
+                case Value.FunctionValue ignored -> method(Kind.FUNCTION_METHOD, Libraries.FunctionsLibrary.METHODS.get(name));
+                default -> null;
+            };
+        }
+
+        @Nullable
+        private static Specialization method(Kind kind, @Nullable PatchFunction.BuiltInPatchFunction method) {
+            return method == null ? null : new Specialization(kind, method);
+        }
+
+        public enum Kind {
+            OBJECT, ARRAY_LENGTH, ARRAY_METHOD, STRING_METHOD, FUNCTION_METHOD
+        }
+    }
 }
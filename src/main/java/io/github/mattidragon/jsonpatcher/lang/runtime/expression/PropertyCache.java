@@ -0,0 +1,36 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Shape;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An inline cache for reading a property of objects. It remembers the {@link Shape} of the last object it read from
+ * and where the property was in it, so that objects built the same way skip the key lookup.
+ * Only one shape is kept, as most access sites only ever see one.
+ */
+public final class PropertyCache {
+    // Replaced as a whole, so that racing threads never see a shape paired with the wrong index
+    private @Nullable Entry entry;
+
+    /**
+     * Reads a property from an object.
+     * @return The value, or null if the object doesn't have the property
+     */
+    @Nullable
+    public Value get(Value.ObjectValue object, String name) {
+        var shape = object.shape();
+        if (shape == null) return object.value().get(name);
+
+        var entry = this.entry;
+        if (entry != null && entry.shape == shape) return object.getAt(entry.index);
+
+        var index = shape.indexOf(name);
+        if (index < 0) return null;
+        this.entry = new Entry(shape, index);
+        return object.getAt(index);
+    }
+
+    private record Entry(Shape shape, int index) {
+    }
+}
@@ -0,0 +1,46 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Records what a node has seen at runtime, so that it can take a fast path specialized for the values it usually gets.
+ * A node starts out uninitialized, picks a specialization on its first evaluation and becomes generic for good
+ * as soon as it sees values its specialization can't handle.
+ * <p>
+ * Specializations only ever pick a faster path with the same behavior, so racing updates from multiple threads are harmless.
+ * @param <T> The type of specialization used by the node
+ */
+public final class TypeFeedback<T> {
+    private @Nullable T specialization = null;
+    private boolean generic = false;
+
+    /**
+     * The current specialization, or null if the node hasn't been evaluated yet or is generic.
+     */
+    @Nullable
+    public T specialization() {
+        return specialization;
+    }
+
+    public boolean isGeneric() {
+        return generic;
+    }
+
+    @ApiStatus.Internal
+    public void specialize(T specialization) {
+        if (!generic) this.specialization = specialization;
+    }
+
+    @ApiStatus.Internal
+    public void generalize() {
+        generic = true;
+        specialization = null;
+    }
+
+    @Override
+    public String toString() {
+        if (generic) return "TypeFeedback[generic]";
+        return specialization == null ? "TypeFeedback[uninitialized]" : "TypeFeedback[%s]".formatted(specialization);
+    }
+}
@@ -12,9 +12,28 @@ import java.util.List;
 public record UnaryExpression(Expression input, Operator op, SourceSpan pos) implements Expression {
     @Override
     public Value evaluate(EvaluationContext context) {
+        if (op == Operator.MINUS) {
+            try {
+                return new Value.NumberValue(-input.evaluateDouble(context));
+            } catch (UnexpectedValueException e) {
+                return op.apply(e.value(), pos, context.config());
+            }
+        }
         return op.apply(input.evaluate(context), pos, context.config());
     }
 
+    @Override
+    public double evaluateDouble(EvaluationContext context) {
+        if (op == Operator.MINUS) {
+            try {
+                return -input.evaluateDouble(context);
+            } catch (UnexpectedValueException e) {
+                return UnexpectedValueException.unbox(op.apply(e.value(), pos, context.config()));
+            }
+        }
+        return Expression.super.evaluateDouble(context);
+    }
+
     @Override
     public Iterable<? extends ProgramNode> getChildren() {
         return List.of(input);
@@ -17,6 +17,42 @@ public record UnaryModificationExpression(boolean postfix, Reference target, Una
         return postfix ? oldValue : newValue;
     }
 
+    /**
+     * Increments and decrements of variables work on unboxed numbers, which the variable stack keeps unboxed as well.
+     */
+    @Override
+    public double evaluateDouble(EvaluationContext context) {
+        if (!(target instanceof VariableAccessExpression variable)
+            || operator != UnaryExpression.Operator.INCREMENT && operator != UnaryExpression.Operator.DECREMENT) {
+            return Expression.super.evaluateDouble(context);
+        }
+
+        var variables = context.variables();
+        double oldValue;
+        try {
+            oldValue = variables.getDouble(variable.name(), variable.slot(), variable.pos());
+        } catch (UnexpectedValueException e) {
+            // The operator reports the error for values that aren't numbers
+            var newValue = operator.apply(e.value(), pos, context.config());
+            target.set(context, newValue);
+            return UnexpectedValueException.unbox(postfix ? e.value() : newValue);
+        }
+        var newValue = operator == UnaryExpression.Operator.INCREMENT ? oldValue + 1 : oldValue - 1;
+        variables.setDouble(variable.name(), variable.slot(), newValue, variable.pos());
+        return postfix ? oldValue : newValue;
+    }
+
+    /**
+     * Applies the modification when its value isn't used, like in the incrementer of a for loop, without boxing the result.
+     */
+    public void run(EvaluationContext context) {
+        try {
+            evaluateDouble(context);
+        } catch (UnexpectedValueException ignored) {
+            // The modification was done on the generic path
+        }
+    }
+
     @Override
     public Iterable<? extends ProgramNode> getChildren() {
         return List.of(target);
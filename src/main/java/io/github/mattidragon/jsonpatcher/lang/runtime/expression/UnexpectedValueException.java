@@ -0,0 +1,34 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime.expression;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+
+/**
+ * Thrown by {@link Expression#evaluateDouble} when the expression didn't evaluate to a number.
+ * Callers catch it and continue with the value on their generic path, so the expression is never evaluated twice.
+ * It doesn't collect a stack trace or format its message up front, as it is part of normal control flow.
+ */
+public final class UnexpectedValueException extends RuntimeException {
+    private final Value value;
+
+    public UnexpectedValueException(Value value) {
+        super(null, null, false, false);
+        this.value = value;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Expected a number, got %s".formatted(value);
+    }
+
+    public Value value() {
+        return value;
+    }
+
+    /**
+     * Unboxes a number, or throws if the value isn't one.
+     */
+    public static double unbox(Value value) {
+        if (value instanceof Value.NumberValue(var number)) return number;
+        throw new UnexpectedValueException(value);
+    }
+}
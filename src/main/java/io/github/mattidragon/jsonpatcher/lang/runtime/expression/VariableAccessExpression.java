@@ -4,27 +4,80 @@ import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 
 import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads a variable. This is a class rather than a record, so that the slot assigned by the resolver
+ * stays out of the components used for equality and patterns.
+ */
+public final class VariableAccessExpression implements Reference {
+    private final String name;
+    private final SourceSpan pos;
+    private final VariableSlot slot;
+
+    public VariableAccessExpression(String name, SourceSpan pos) {
+        this(name, pos, new VariableSlot());
+    }
+
+    public VariableAccessExpression(String name, SourceSpan pos, VariableSlot slot) {
+        this.name = name;
+        this.pos = pos;
+        this.slot = slot;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SourceSpan pos() {
+        return pos;
+    }
+
+    public VariableSlot slot() {
+        return slot;
+    }
 
-public record VariableAccessExpression(String name, SourceSpan pos) implements Reference {
     @Override
     public Value get(EvaluationContext context) {
-        return context.variables().getVariable(name, pos);
+        return context.variables().getVariable(name, slot, pos);
+    }
+
+    @Override
+    public double evaluateDouble(EvaluationContext context) {
+        return context.variables().getDouble(name, slot, pos);
     }
 
     @Override
     public void set(EvaluationContext context, Value value) {
-        context.variables().setVariable(name, value, pos);
+        context.variables().setVariable(name, slot, value, pos);
     }
 
     @Override
     public void delete(EvaluationContext context) {
-        context.variables().deleteVariable(name, pos);
+        context.variables().deleteVariable(name, slot, pos);
     }
 
     @Override
     public Iterable<? extends ProgramNode> getChildren() {
         return List.of();
     }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof VariableAccessExpression other && name.equals(other.name) && Objects.equals(pos, other.pos);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, pos);
+    }
+
+    @Override
+    public String toString() {
+        return "VariableAccessExpression[name=%s, pos=%s]".formatted(name, pos);
+    }
 }
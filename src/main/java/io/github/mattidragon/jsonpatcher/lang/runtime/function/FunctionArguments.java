@@ -3,7 +3,6 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.function;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 
 import java.util.List;
-import java.util.Optional;
 
 public record FunctionArguments(List<FunctionArgument> arguments, boolean varargs) implements ProgramNode {
     public FunctionArguments {
@@ -11,7 +10,12 @@ public record FunctionArguments(List<FunctionArgument> arguments, boolean vararg
     }
     
     public int requiredArguments() {
-        return (int) arguments.stream().map(FunctionArgument::defaultValue).filter(Optional::isEmpty).count();
+        // Called on every function call, so this avoids streams
+        var count = 0;
+        for (var argument : arguments) {
+            if (argument.defaultValue().isEmpty()) count++;
+        }
+        return count;
     }
 
     @Override
@@ -3,15 +3,25 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.function;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.statement.Statement;
 import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Libraries;
 
+import java.util.Arrays;
 import java.util.List;
 
 public sealed interface PatchFunction {
     Value execute(EvaluationContext context, List<Value> args, SourceSpan callPos);
 
+    /**
+     * Calls the function with the arguments in an array. Defined functions read the array directly,
+     * which saves creating a list for every call. The array must not be modified after the call.
+     */
+    default Value execute(EvaluationContext context, Value[] args, SourceSpan callPos) {
+        return execute(context, Arrays.asList(args), callPos);
+    }
+
     default PatchFunction bind(Value value) {
         return Libraries.FunctionsLibrary.bind(new Value.FunctionValue(this), value).function();
     }
@@ -28,40 +38,77 @@ public sealed interface PatchFunction {
         }
     }
 
-    record DefinedPatchFunction(Statement body, FunctionArguments args, EvaluationContext context) implements PatchFunction {
+    record DefinedPatchFunction(Statement body, FunctionArguments args, EvaluationContext context, FrameLayout layout) implements PatchFunction {
+        public DefinedPatchFunction(Statement body, FunctionArguments args, EvaluationContext context) {
+            this(body, args, context, new FrameLayout());
+        }
+
         @Override
         public Value execute(EvaluationContext context, List<Value> args, SourceSpan callPos) {
-            if (args.size() < this.args.requiredArguments()) {
-                throw new EvaluationException(context.config(), "Incorrect function argument count: expected at least %s but found %s".formatted(this.args.requiredArguments(), args.size()), callPos);
-            }
+            return execute(context, args.toArray(Value[]::new), callPos);
+        }
+
+        @Override
+        public Value execute(EvaluationContext context, Value[] args, SourceSpan callPos) {
             var argEntryCount = this.args.arguments().size();
-            if (!this.args.varargs() && args.size() > argEntryCount) {
-                throw new EvaluationException(context.config(), "Incorrect function argument count: expected at most %s but found %s".formatted(argEntryCount, args.size()), callPos);
+            if (args.length < argEntryCount || this.args.varargs()) {
+                // Only functions with defaults or varargs accept fewer arguments than they declare
+                var required = this.args.requiredArguments();
+                if (args.length < required) {
+                    throw new EvaluationException(context.config(), "Incorrect function argument count: expected at least %s but found %s".formatted(required, args.length), callPos);
+                }
+            } else if (args.length > argEntryCount) {
+                throw new EvaluationException(context.config(), "Incorrect function argument count: expected at most %s but found %s".formatted(argEntryCount, args.length), callPos);
             }
+            return call(context, args, callPos);
+        }
 
+        /**
+         * Checks whether the function can be called with a number of arguments.
+         */
+        public boolean accepts(int count) {
+            var argEntryCount = args.arguments().size();
+            if (count < argEntryCount || args.varargs()) return count >= args.requiredArguments();
+            return count == argEntryCount;
+        }
+
+        /**
+         * Calls the function without checking the argument count. Call sites use this once they know that
+         * the function {@link #accepts} their argument count.
+         */
+        public Value call(EvaluationContext context, Value[] args, SourceSpan callPos) {
+            var argEntryCount = this.args.arguments().size();
             // We use the context the function was created in, not the one it was called in.
             // This allows for closures if we ever allow a function to escape its original scope
-            var functionContext = this.context.newScope();
-            
+            var functionContext = this.context.newFunctionScope(layout);
+            // Arguments are given slots in order when the function is resolved
+            var slot = 0;
+
             for (int i = 0; i < argEntryCount; i++) {
                 var argument = this.args.arguments().get(i);
                 
                 Value value;
-                if (i >= args.size()) {
+                if (i >= args.length) {
                     // Default arguments past the passed in values
-                    value = argument.defaultValue()
-                            .orElseThrow(() -> new IllegalStateException("No value for non-default argument got past checks"))
-                            .evaluate(functionContext);
+                    var defaultValue = argument.defaultValue();
+                    if (defaultValue.isEmpty()) throw new IllegalStateException("No value for non-default argument got past checks");
+                    value = defaultValue.get().evaluate(functionContext);
                 } else if (i == argEntryCount - 1 && this.args.varargs()) {
                     // If we're on the last argument of a varargs function, grab 'em all
-                    value = new Value.ArrayValue(args.stream().skip(i).toList());
+                    value = new Value.ArrayValue(Arrays.asList(args).subList(i, args.length));
                 } else {
                     // Normal argument passing
-                    value = args.get(i);
+                    value = args[i];
                 }
                 
                 switch (argument.target()) {
-                    case FunctionArgument.Target.Variable variable -> functionContext.variables().createVariableUnsafe(variable.name(), value, false);
+                    case FunctionArgument.Target.Variable variable -> {
+                        if (layout.isResolved()) {
+                            functionContext.variables().createVariableUnsafe(slot++, value, false);
+                        } else {
+                            functionContext.variables().createVariableUnsafe(variable.name(), value, false);
+                        }
+                    }
                     case FunctionArgument.Target.Root ignored when value instanceof Value.ObjectValue root 
                             -> functionContext = functionContext.withRoot(root);
                     case FunctionArgument.Target.Root.INSTANCE -> 
@@ -72,7 +119,7 @@ public sealed interface PatchFunction {
             try {
                 body.run(functionContext);
             } catch (ReturnException r) {
-                return r.value;
+                return functionContext.variables().takeReturnValue();
             } catch (EvaluationException e) {
                 throw new EvaluationException(context.config(), "Error while executing function", callPos, e);
             }
@@ -1,19 +1,15 @@
 package io.github.mattidragon.jsonpatcher.lang.runtime.function;
 
-import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
-import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
-
 /**
  * This exception is used for return statements.
  * Using a java exception makes this easier than handling returns at every point in the interpreter;
+ * The returned value is stored in the function frame with {@link io.github.mattidragon.jsonpatcher.lang.runtime.VariableStack#setReturnValue},
+ * which lets a single stackless instance be reused for every return.
  */
-public class ReturnException extends RuntimeException {
-    public final Value value;
-    public final SourceSpan pos;
+public final class ReturnException extends RuntimeException {
+    public static final ReturnException INSTANCE = new ReturnException();
 
-    public ReturnException(Value value, SourceSpan pos) {
-        super("A return exception wasn't handled. Something is wrong.");
-        this.value = value;
-        this.pos = pos;
+    private ReturnException() {
+        super("A return exception wasn't handled. Something is wrong.", null, false, false);
     }
 }
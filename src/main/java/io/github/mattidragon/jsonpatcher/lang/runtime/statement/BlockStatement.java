@@ -2,18 +2,23 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 
 import java.util.List;
 
-public record BlockStatement(List<Statement> statements, SourceSpan pos) implements Statement {
+public record BlockStatement(List<Statement> statements, SourceSpan pos, FrameLayout layout) implements Statement {
     public BlockStatement {
         statements = List.copyOf(statements);
     }
 
+    public BlockStatement(List<Statement> statements, SourceSpan pos) {
+        this(statements, pos, new FrameLayout());
+    }
+
     @Override
     public void run(EvaluationContext context) {
-        context = context.newScope();
+        if (!layout.isElided()) context = context.newScope(layout);
         for (var statement : statements) {
             statement.run(context);
         }
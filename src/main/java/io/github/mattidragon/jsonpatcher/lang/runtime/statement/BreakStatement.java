@@ -9,7 +9,7 @@ import java.util.List;
 public record BreakStatement(SourceSpan pos) implements Statement {
     @Override
     public void run(EvaluationContext context) {
-        throw new BreakException();
+        throw BreakException.INSTANCE;
     }
 
     @Override
@@ -22,9 +22,14 @@ public record BreakStatement(SourceSpan pos) implements Statement {
         return List.of();
     }
 
-    public static class BreakException extends RuntimeException {
-        public BreakException() {
-            super("Uncaught break statement");
+    /**
+     * Thrown to break out of the current iteration. There is only one stackless instance, so breaking is cheap.
+     */
+    public static final class BreakException extends RuntimeException {
+        public static final BreakException INSTANCE = new BreakException();
+
+        private BreakException() {
+            super("Uncaught break statement", null, false, false);
         }
     }
 }
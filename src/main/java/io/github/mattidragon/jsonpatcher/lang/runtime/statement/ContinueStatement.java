@@ -9,7 +9,7 @@ import java.util.List;
 public record ContinueStatement(SourceSpan pos) implements Statement {
     @Override
     public void run(EvaluationContext context) {
-        throw new ContinueException();
+        throw ContinueException.INSTANCE;
     }
 
     @Override
@@ -22,9 +22,14 @@ public record ContinueStatement(SourceSpan pos) implements Statement {
         return List.of();
     }
 
-    public static class ContinueException extends RuntimeException {
-        public ContinueException() {
-            super("Uncaught continue statement");
+    /**
+     * Thrown to continue out of the current iteration. There is only one stackless instance, so continuing is cheap.
+     */
+    public static final class ContinueException extends RuntimeException {
+        public static final ContinueException INSTANCE = new ContinueException();
+
+        private ContinueException() {
+            super("Uncaught continue statement", null, false, false);
         }
     }
 }
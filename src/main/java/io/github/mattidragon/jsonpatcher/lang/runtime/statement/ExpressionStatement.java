@@ -4,12 +4,17 @@ import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnaryModificationExpression;
 
 import java.util.List;
 
 public record ExpressionStatement(Expression expression) implements Statement {
     @Override
     public void run(EvaluationContext context) {
+        if (expression instanceof UnaryModificationExpression modification) {
+            modification.run(context);
+            return;
+        }
         expression.evaluate(context);
     }
 
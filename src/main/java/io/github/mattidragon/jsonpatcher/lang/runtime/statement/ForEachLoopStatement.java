@@ -3,24 +3,87 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
 
+import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.function.Consumer;
+
+public record ForEachLoopStatement(Expression iterable, String variableName, Statement body, SourceSpan pos, SourceSpan variablePos, FrameLayout layout, VariableSlot slot) implements Statement {
+    public ForEachLoopStatement(Expression iterable, String variableName, Statement body, SourceSpan pos, SourceSpan variablePos) {
+        this(iterable, variableName, body, pos, variablePos, new FrameLayout(), new VariableSlot());
+    }
 
-public record ForEachLoopStatement(Expression iterable, String variableName, Statement body, SourceSpan pos, SourceSpan variablePos) implements Statement {
     @Override
     public void run(EvaluationContext context) {
-        var values = iterable.evaluate(context);
+        loop(context, iterable.evaluate(context), body::run);
+    }
+
+    /**
+     * Runs the loop over already evaluated values, with the given code as the body.
+     * Shared with compilers that replace the body but keep the semantics of the loop.
+     */
+    public void loop(EvaluationContext context, Value values, Consumer<EvaluationContext> body) {
         if (!(values instanceof Value.ArrayValue arrayValue)) {
             throw new EvaluationException(context.config(), "Can only iterate arrays, tried to iterate %s".formatted(values), iterable.pos());
         }
+        // Without closures nothing can see the frame after an iteration, so a single frame is reset and reused
+        var reuseFrame = layout.isResolved() && !layout.isCaptured() && slot.isResolved();
+        var loopContext = reuseFrame ? context.newScope(layout) : null;
+        if (reuseFrame && arrayValue.isNumeric()) {
+            loopNumbers(loopContext, arrayValue, body);
+            return;
+        }
+        var first = true;
         for (var value : arrayValue.value()) {
-            var loopContext = context.newScope();
-            loopContext.variables().createVariable(variableName, value, false, pos);
+            if (!reuseFrame) {
+                loopContext = context.newScope(layout);
+                loopContext.variables().createVariable(variableName, slot, value, false, pos);
+            } else if (first) {
+                // Nothing outside the loop can declare variables while it runs, so the duplicate check only needs to be done once
+                loopContext.variables().createVariable(variableName, slot, value, false, pos);
+                first = false;
+            } else {
+                loopContext.variables().reset();
+                loopContext.variables().createVariableUnsafe(slot.index(), value, false);
+            }
+            try {
+                body.accept(loopContext);
+            } catch (BreakStatement.BreakException e) {
+                break;
+            } catch (ContinueStatement.ContinueException e) {
+                // Continue
+            }
+        }
+    }
+
+    /**
+     * Loops over a numeric array in a reused frame, binding the variable without boxing the numbers.
+     * Like the iterator of the array, it fails if the body adds or removes elements.
+     */
+    private void loopNumbers(EvaluationContext loopContext, Value.ArrayValue array, Consumer<EvaluationContext> body) {
+        var values = array.value();
+        var size = values.size();
+        var variables = loopContext.variables();
+        for (int i = 0; i != values.size(); i++) {
+            if (values.size() != size) throw new ConcurrentModificationException();
+            if (i == 0) {
+                variables.createVariable(variableName, slot, values.getFirst(), false, pos);
+            } else {
+                variables.reset();
+                // The body may have stored something other than a number in the array
+                if (array.isNumeric()) {
+                    variables.createVariableUnsafe(slot.index(), array.getDouble(i, loopContext.config(), pos), false);
+                } else {
+                    variables.createVariableUnsafe(slot.index(), values.get(i), false);
+                }
+            }
             try {
-                body.run(loopContext);
+                body.accept(loopContext);
             } catch (BreakStatement.BreakException e) {
                 break;
             } catch (ContinueStatement.ContinueException e) {
@@ -2,15 +2,20 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.FrameLayout;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
 
 import java.util.List;
 
-public record ForLoopStatement(Statement initializer, Expression condition, Statement incrementer, Statement body, SourceSpan pos) implements Statement {
+public record ForLoopStatement(Statement initializer, Expression condition, Statement incrementer, Statement body, SourceSpan pos, FrameLayout layout) implements Statement {
+    public ForLoopStatement(Statement initializer, Expression condition, Statement incrementer, Statement body, SourceSpan pos) {
+        this(initializer, condition, incrementer, body, pos, new FrameLayout());
+    }
+
     @Override
     public void run(EvaluationContext context) {
-        context = context.newScope();
+        if (!layout.isElided()) context = context.newScope(layout);
         for (initializer.run(context); condition.evaluate(context).asBoolean(); incrementer.run(context)) {
             try {
                 body.run(context);
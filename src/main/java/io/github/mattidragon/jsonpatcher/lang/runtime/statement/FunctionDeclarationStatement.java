@@ -3,14 +3,19 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.FunctionExpression;
 
 import java.util.List;
 
-public record FunctionDeclarationStatement(String name, FunctionExpression value, SourceSpan namePos) implements Statement {
+public record FunctionDeclarationStatement(String name, FunctionExpression value, SourceSpan namePos, VariableSlot slot) implements Statement {
+    public FunctionDeclarationStatement(String name, FunctionExpression value, SourceSpan namePos) {
+        this(name, value, namePos, new VariableSlot());
+    }
+
     @Override
     public void run(EvaluationContext context) {
-        context.variables().createVariable(name, value.evaluate(context), false, value.pos());
+        context.variables().createVariable(name, slot, value.evaluate(context), false, value.pos());
     }
 
     @Override
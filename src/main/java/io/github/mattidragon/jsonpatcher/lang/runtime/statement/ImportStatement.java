@@ -3,13 +3,18 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 
 import java.util.List;
 
-public record ImportStatement(String libraryName, String variableName, SourceSpan pos, SourceSpan variablePos, SourceSpan namePos) implements Statement {
+public record ImportStatement(String libraryName, String variableName, SourceSpan pos, SourceSpan variablePos, SourceSpan namePos, VariableSlot slot) implements Statement {
+    public ImportStatement(String libraryName, String variableName, SourceSpan pos, SourceSpan variablePos, SourceSpan namePos) {
+        this(libraryName, variableName, pos, variablePos, namePos, new VariableSlot());
+    }
+
     @Override
     public void run(EvaluationContext context) {
-        context.variables().createVariable(variableName, context.findLibrary(libraryName, pos), false, pos);
+        context.variables().createVariable(variableName, slot, context.findLibrary(libraryName, pos), false, pos);
     }
 
     @Override
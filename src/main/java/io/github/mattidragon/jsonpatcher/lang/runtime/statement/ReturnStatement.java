@@ -5,7 +5,6 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
-import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ValueExpression;
 import io.github.mattidragon.jsonpatcher.lang.runtime.function.ReturnException;
 
 import java.util.Optional;
@@ -13,7 +12,8 @@ import java.util.Optional;
 public record ReturnStatement(Optional<Expression> value, SourceSpan pos) implements Statement {
     @Override
     public void run(EvaluationContext context) {
-        throw new ReturnException(value.orElseGet(() -> new ValueExpression(Value.NullValue.NULL, pos)).evaluate(context), pos);
+        context.variables().setReturnValue(value.isPresent() ? value.get().evaluate(context) : Value.NullValue.NULL);
+        throw ReturnException.INSTANCE;
     }
 
     @Override
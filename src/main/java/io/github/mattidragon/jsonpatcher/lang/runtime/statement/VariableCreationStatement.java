@@ -3,15 +3,20 @@ package io.github.mattidragon.jsonpatcher.lang.runtime.statement;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.ProgramNode;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
 
 import java.util.List;
 
 public record VariableCreationStatement(String name, Expression initializer, boolean mutable, SourceSpan pos,
-                                        SourceSpan namePos) implements Statement {
+                                        SourceSpan namePos, VariableSlot slot) implements Statement {
+    public VariableCreationStatement(String name, Expression initializer, boolean mutable, SourceSpan pos, SourceSpan namePos) {
+        this(name, initializer, mutable, pos, namePos, new VariableSlot());
+    }
+
     @Override
     public void run(EvaluationContext context) {
-        context.variables().createVariable(name, initializer.evaluate(context), mutable, pos);
+        context.variables().createVariable(name, slot, initializer.evaluate(context), mutable, pos);
     }
 
     @Override
@@ -0,0 +1,16 @@
+package io.github.mattidragon.jsonpatcher.lang.runtime.stdlib;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a library class for the library processor, which generates its bindings at compile time.
+ * This lets the {@link LibraryBuilder} skip reflection when building the library.
+ * Libraries without generated bindings, for example when the processor isn't used, still work through reflection.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GenerateBindings {
+}
@@ -1,19 +1,22 @@
 package io.github.mattidragon.jsonpatcher.lang.runtime.stdlib;
 
+import io.github.mattidragon.jsonpatcher.lang.json.JsonException;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonReader;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonWriter;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourceSpan;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.ConcurrentModificationException;
 import java.util.Locale;
 import java.util.Map;
 import java.util.function.DoubleUnaryOperator;
 import java.util.function.Supplier;
 
 /**
- * Contains standard libraries. They are built using reflection over public class members.
+ * Contains standard libraries. They are built from public class members, using bindings generated by the library processor.
  * Private members are ignored and a zero argument public constructor is required.
  * Values of fields are placed directly into the library object, which methods are converted to functions first.
  * Method overloading is supported for differing argument counts only.
@@ -28,13 +31,23 @@ public class Libraries {
      * Libraries that are built in and always available.
      */
     public static final Map<String, Supplier<Value.ObjectValue>> BUILTIN = Map.of(
-            "math", new LibraryBuilder(MathLibrary.class)::build,
-            "arrays", new LibraryBuilder(ArraysLibrary.class)::build,
-            "objects", new LibraryBuilder(ObjectsLibrary.class)::build,
-            "strings", new LibraryBuilder(StringsLibrary.class)::build,
-            "functions", new LibraryBuilder(FunctionsLibrary.class)::build,
-            "debug", new LibraryBuilder(DebugLibrary.class)::build);
+            "math", frozen(new LibraryBuilder(MathLibrary.class)),
+            "arrays", frozen(new LibraryBuilder(ArraysLibrary.class)),
+            "objects", frozen(new LibraryBuilder(ObjectsLibrary.class)),
+            "strings", frozen(new LibraryBuilder(StringsLibrary.class)),
+            "functions", frozen(new LibraryBuilder(FunctionsLibrary.class)),
+            "debug", frozen(new LibraryBuilder(DebugLibrary.class)),
+            "json", frozen(new LibraryBuilder(JsonLibrary.class)));
 
+    /**
+     * Builds a library once and shares the frozen result, which is safe because library functions don't keep state.
+     */
+    private static Supplier<Value.ObjectValue> frozen(LibraryBuilder builder) {
+        var library = builder.build().freeze();
+        return () -> library;
+    }
+
+    @GenerateBindings
     public static class MathLibrary {
         public final Value.NumberValue PI = new Value.NumberValue(Math.PI);
         public final Value.NumberValue E = new Value.NumberValue(Math.E);
@@ -80,30 +93,35 @@ public class Libraries {
         }
     }
 
+    @GenerateBindings
     public static class ArraysLibrary {
         @DontBind
         public static final Map<String, PatchFunction.BuiltInPatchFunction> METHODS = new LibraryBuilder(ArraysLibrary.class, Method.class).getFunctions();
 
         @Method
         public Value.ArrayValue insert(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.NumberValue index, Value value) {
+            array.requireMutable(context.context().config(), context.callPos());
             array.value().add(fixIndexForInsert(context, (int) index.value(), array.value().size(), context.callPos()), value);
             return array;
         }
 
         @Method
-        public Value.ArrayValue push(Value.ArrayValue array, Value value) {
+        public Value.ArrayValue push(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value value) {
+            array.requireMutable(context.context().config(), context.callPos());
             array.value().add(value);
             return array;
         }
 
         @Method
         public Value pop(LibraryBuilder.FunctionContext context, Value.ArrayValue array) {
+            array.requireMutable(context.context().config(), context.callPos());
             if (array.value().isEmpty()) throw new EvaluationException(context.context().config(), "Can't pop from empty array", context.callPos());
             return array.value().removeLast();
         }
 
         @Method
         public Value.ArrayValue remove(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value element) {
+            array.requireMutable(context.context().config(), context.callPos());
             array.value().remove(element);
             return array;
         }
@@ -118,17 +136,21 @@ public class Libraries {
 
         @Method
         public Value.ArrayValue map(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.FunctionValue function) {
+            var values = array.value();
+            var size = values.size();
             var newArray = new Value.ArrayValue();
-            for (var value : array.value()) {
-                newArray.value().add(function.function().execute(context.context(), List.of(value), context.callPos()));
+            for (int i = 0; i != values.size(); i++) {
+                if (values.size() != size) throw new ConcurrentModificationException();
+                newArray.value().add(function.function().execute(context.context(), new Value[]{element(context, array, i)}, context.callPos()));
             }
             return newArray;
         }
 
         @Method
         public Value.ArrayValue replace(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.FunctionValue function) {
+            array.requireMutable(context.context().config(), context.callPos());
             for (int i = 0; i < array.value().size(); i++) {
-                array.value().set(i, function.function().execute(context.context(), List.of(array.get(i, context.context().config(), context.callPos())), context.callPos()));
+                array.value().set(i, function.function().execute(context.context(), new Value[]{array.get(i, context.context().config(), context.callPos())}, context.callPos()));
             }
             return array;
         }
@@ -137,7 +159,7 @@ public class Libraries {
         public Value.ArrayValue filter(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.FunctionValue function) {
             var newArray = new Value.ArrayValue();
             for (var value : array.value()) {
-                var result = function.function().execute(context.context(), List.of(value), context.callPos());
+                var result = function.function().execute(context.context(), new Value[]{value}, context.callPos());
                 if (result.asBoolean()) newArray.value().add(value);
             }
             return newArray;
@@ -145,42 +167,47 @@ public class Libraries {
 
         @Method
         public Value.ArrayValue removeIf(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.FunctionValue function) {
-            array.value().removeIf(value -> function.function().execute(context.context(), List.of(value), context.callPos()).asBoolean());
+            array.requireMutable(context.context().config(), context.callPos());
+            array.value().removeIf(value -> function.function().execute(context.context(), new Value[]{value}, context.callPos()).asBoolean());
             return array;
         }
 
         @Method
         public Value reduce(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.FunctionValue function, Value initialValue) {
+            var values = array.value();
+            var size = values.size();
             var result = initialValue;
-            for (var value : array.value()) {
-                result = function.function().execute(context.context(), List.of(result, value), context.callPos());
+            for (int i = 0; i != values.size(); i++) {
+                if (values.size() != size) throw new ConcurrentModificationException();
+                result = function.function().execute(context.context(), new Value[]{result, element(context, array, i)}, context.callPos());
             }
             return result;
         }
 
+        /**
+         * Reads an element for a callback. Numbers are only boxed for the call, and the array is read with
+         * {@link Value.ArrayValue#getDouble} while it is numeric, so it keeps its unboxed storage.
+         */
+        private static Value element(LibraryBuilder.FunctionContext context, Value.ArrayValue array, int index) {
+            if (array.isNumeric()) return new Value.NumberValue(array.getDouble(index, context.context().config(), context.callPos()));
+            return array.value().get(index);
+        }
+
         @Method
         public Value.ArrayValue slice(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.NumberValue start, Value.NumberValue end) {
-            var newArray = new Value.ArrayValue();
             var s = (int) start.value();
             var e = (int) end.value();
             if (s < 0 || s > array.value().size()) throw new EvaluationException(context.context().config(), "Array index out of bounds (index: %s, size: %s)".formatted(s, array.value().size()), context.callPos());
             if (e < 0 || e > array.value().size()) throw new EvaluationException(context.context().config(), "Array index out of bounds (index: %s, size: %s)".formatted(e, array.value().size()), context.callPos());
             if (s > e) throw new EvaluationException(context.context().config(), "Start index must be less than end index (start: %s, end: %s)".formatted(s, e), context.callPos());
-            for (int i = s; i < e; i++) {
-                newArray.value().add(array.value().get(i));
-            }
-            return newArray;
+            return array.slice(s, e);
         }
 
         @Method
         public Value.ArrayValue slice(LibraryBuilder.FunctionContext context, Value.ArrayValue array, Value.NumberValue start) {
-            var newArray = new Value.ArrayValue();
             var s = (int) start.value();
             if (s < 0 || s > array.value().size()) throw new EvaluationException(context.context().config(), "Array index out of bounds (index: %s, size: %s)".formatted(s, array.value().size()), context.callPos());
-            for (int i = s; i < array.value().size(); i++) {
-                newArray.value().add(array.value().get(i));
-            }
-            return newArray;
+            return array.slice(s, array.value().size());
         }
         
         @Method
@@ -198,6 +225,7 @@ public class Libraries {
         }
     }
     
+    @GenerateBindings
     public static class ObjectsLibrary {
         public Value.ArrayValue keys(Value.ObjectValue object) {
             var array = new Value.ArrayValue();
@@ -206,6 +234,7 @@ public class Libraries {
         }
     }
 
+    @GenerateBindings
     public static class StringsLibrary {
         @DontBind
         public static final Map<String, PatchFunction.BuiltInPatchFunction> METHODS = new LibraryBuilder(StringsLibrary.class, Method.class).getFunctions();
@@ -372,6 +401,7 @@ public class Libraries {
         }
     }
 
+    @GenerateBindings
     public static class FunctionsLibrary {
         @DontBind
         public static final Map<String, PatchFunction.BuiltInPatchFunction> METHODS = new LibraryBuilder(FunctionsLibrary.class, Method.class).getFunctions();
@@ -398,7 +428,7 @@ public class Libraries {
         public Value.FunctionValue then(Value.FunctionValue function, Value.FunctionValue next) {
             return new Value.FunctionValue(((PatchFunction.BuiltInPatchFunction) (context1, args, callPos) -> {
                 var result = function.function().execute(context1, args, callPos);
-                return next.function().execute(context1, List.of(result), callPos);
+                return next.function().execute(context1, new Value[]{result}, callPos);
             }));
         }
 
@@ -412,6 +442,30 @@ public class Libraries {
         }
     }
 
+    @GenerateBindings
+    public static class JsonLibrary {
+        public Value parse(LibraryBuilder.FunctionContext context, Value.StringValue json) {
+            try {
+                return JsonReader.DEFAULT.read(json.value());
+            } catch (JsonException e) {
+                throw new EvaluationException(context.context().config(), "Invalid json: %s".formatted(e.getMessage()), context.callPos());
+            }
+        }
+
+        public Value.StringValue stringify(LibraryBuilder.FunctionContext context, Value value) {
+            return stringify(context, value, Value.BooleanValue.FALSE);
+        }
+
+        public Value.StringValue stringify(LibraryBuilder.FunctionContext context, Value value, Value.BooleanValue pretty) {
+            try {
+                return new Value.StringValue((pretty.value() ? JsonWriter.PRETTY : JsonWriter.COMPACT).writeToString(value));
+            } catch (IllegalArgumentException e) {
+                throw new EvaluationException(context.context().config(), e.getMessage(), context.callPos());
+            }
+        }
+    }
+
+    @GenerateBindings
     public static class DebugLibrary {
         public void log(LibraryBuilder.FunctionContext context, Value value) {
             context.context().log(value);
@@ -5,21 +5,30 @@ import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
 
+/**
+ * Builds library objects from the public members of a class.
+ * If the class is annotated with {@link GenerateBindings}, the bindings generated at compile time are used, otherwise the class is scanned with reflection.
+ */
 public class LibraryBuilder {
     private final Class<?> libraryClass;
     private final Object instance;
     private final HashMap<String, PatchFunction.BuiltInPatchFunction> functions = new HashMap<>();
     private final HashMap<String, Value> constants = new HashMap<>();
+    private final HashMap<String, List<Invoker>> overloads = new HashMap<>();
     private final Class<? extends Annotation> filterAnnotation;
+    private final boolean generated;
 
     public LibraryBuilder(Class<?> libraryClass) {
         this(libraryClass, (Class<? extends Annotation>) null);
@@ -28,13 +37,22 @@ public class LibraryBuilder {
     public LibraryBuilder(Class<?> libraryClass, Class<? extends Annotation> filterAnnotation) {
         this.libraryClass = libraryClass;
         this.filterAnnotation = filterAnnotation;
-        try {
-            this.instance = libraryClass.getConstructor().newInstance();
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new IllegalStateException("Failed to build library object", e);
+        var bindings = findBindings(libraryClass, filterAnnotation);
+        if (bindings != null) {
+            this.instance = bindings.create();
+            this.generated = true;
+            bindings.register(instance, this);
+        } else {
+            try {
+                this.instance = libraryClass.getConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                throw new IllegalStateException("Failed to build library object", e);
+            }
+            this.generated = false;
+            findFunctions();
+            findConstants();
         }
         buildFunctions();
-        buildConstants();
     }
 
     public <T> LibraryBuilder(Class<T> libraryClass, T instance) {
@@ -45,60 +63,77 @@ public class LibraryBuilder {
         this.libraryClass = libraryClass;
         this.filterAnnotation = filterAnnotation;
         this.instance = instance;
+        var bindings = findBindings(libraryClass, filterAnnotation);
+        if (bindings != null) {
+            this.generated = true;
+            bindings.register(instance, this);
+        } else {
+            this.generated = false;
+            findFunctions();
+            findConstants();
+        }
         buildFunctions();
-        buildConstants();
     }
 
-    private void buildFunctions() {
-        var methods = findMethods();
-
-        methods.forEach((name, overloads) -> {
-            var byArgCount = groupOverloadsByArgCount(name, overloads);
+    /**
+     * Whether this library was built from generated bindings instead of reflection.
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
 
-            functions.put(name, (context, args, callPos) -> {
-                var overload = byArgCount.get(args.size());
-                if (overload == null) throw new EvaluationException(context.config(), "No overload of %s with %s arguments".formatted(name, args.size()), callPos);
+    /**
+     * Adds an overload of a function. Used by generated bindings.
+     * @param method Whether the function is annotated with {@link io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Method}
+     * @param parameterTypes The types of the arguments, without the context
+     */
+    @ApiStatus.Internal
+    public void addFunction(String name, boolean method, boolean wrapErrors, Class<?>[] parameterTypes, Body body) {
+        if (filterAnnotation != null && !method) return;
+        overloads.computeIfAbsent(name, key -> new ArrayList<>()).add(new Invoker(name, parameterTypes, wrapErrors, body));
+    }
 
-                var hasContext = overload.getParameterTypes()[0] == FunctionContext.class;
+    /**
+     * Adds a constant. Used by generated bindings.
+     */
+    @ApiStatus.Internal
+    public void addConstant(String name, Value value) {
+        // Constants can't have the method annotation, so they never pass the filter
+        if (filterAnnotation != null) return;
+        constants.put(name, value);
+    }
 
-                for (int i = 0; i < args.size(); i++) {
-                    var arg = args.get(i);
-                    var param = overload.getParameterTypes()[hasContext ? i + 1 : i];
-                    if (!param.isInstance(arg)) {
-                        throw new EvaluationException(context.config(), "Expected argument %s to be %s, was %s".formatted(i, getTypeName(param), arg), callPos);
-                    }
-                }
+    @SuppressWarnings("unchecked")
+    @Nullable
+    private static Bindings<Object> findBindings(Class<?> libraryClass, @Nullable Class<? extends Annotation> filterAnnotation) {
+        if (!libraryClass.isAnnotationPresent(GenerateBindings.class)) return null;
+        // Generated bindings only know about the method annotation
+        if (filterAnnotation != null && filterAnnotation != io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Method.class) return null;
+        try {
+            var bindingsClass = Class.forName(getBindingsName(libraryClass), true, libraryClass.getClassLoader());
+            return (Bindings<Object>) bindingsClass.getConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            // The processor didn't run, fall back to reflection
+            return null;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+            throw new IllegalStateException("Failed to load generated bindings for %s".formatted(libraryClass), e);
+        }
+    }
 
-                try {
-                    Object[] argsArray;
-                    if (hasContext) {
-                        argsArray = new Object[args.size() + 1];
-                        System.arraycopy(args.toArray(), 0, argsArray, 1, args.size());
-                        argsArray[0] = new FunctionContext(context, callPos);
-                    } else {
-                        argsArray = args.toArray();
-                    }
+    /**
+     * Gets the name of the class generated for a library, which has the names of nested classes joined with underscores.
+     */
+    public static String getBindingsName(Class<?> libraryClass) {
+        return libraryClass.getName().replace('$', '_') + "Bindings";
+    }
 
-                    var result = overload.invoke(instance, argsArray);
-
-                    if (result == null) return Value.NullValue.NULL;
-                    if (result instanceof Value value) return value;
-                    throw new IllegalStateException("Unexpected return value from library function %s: %s".formatted(name, result));
-                } catch (InvocationTargetException e) {
-                    if (e.getCause() instanceof EvaluationException e1) {
-                        if (overload.isAnnotationPresent(DisableErrorWrapping.class)) {
-                            throw e1;
-                        } else {
-                            throw new EvaluationException(context.config(), "Error while calling builtin function %s".formatted(name), callPos, e1);
-                        }
-                    } else {
-                        throw new RuntimeException("Unexpected error while calling builtin function %s".formatted(name), e);
-                    }
-                } catch (IllegalAccessException e) {
-                    throw new IllegalStateException("Library function %s is not accessible".formatted(name), e);
-                } catch (IllegalArgumentException e) {
-                    throw new IllegalStateException("Library function argument checks failed for %s".formatted(name), e);
-                }
+    private void buildFunctions() {
+        overloads.forEach((name, overloads) -> {
+            var invokers = groupOverloadsByArgCount(name, overloads);
+            functions.put(name, (context, args, callPos) -> {
+                var invoker = args.size() < invokers.length ? invokers[args.size()] : null;
+                if (invoker == null) throw new EvaluationException(context.config(), "No overload of %s with %s arguments".formatted(name, args.size()), callPos);
+                return invoker.invoke(context, args, callPos);
             });
         });
     }
@@ -123,25 +158,20 @@ public class LibraryBuilder {
         return typeName;
     }
 
-    private static HashMap<Integer, Method> groupOverloadsByArgCount(String name, List<Method> overloads) {
-        var byArgCount = new HashMap<Integer, Method>();
+    private static Invoker[] groupOverloadsByArgCount(String name, List<Invoker> overloads) {
+        var maxArgCount = overloads.stream().mapToInt(overload -> overload.parameterTypes().length).max().orElse(0);
+        var byArgCount = new Invoker[maxArgCount + 1];
         for (var overload : overloads) {
-            var argCount = overload.getParameterCount();
-            if (argCount >= 1 && overload.getParameterTypes()[0] == FunctionContext.class) {
-                argCount--;
-            }
-
-            if (byArgCount.containsKey(argCount)) {
+            var argCount = overload.parameterTypes().length;
+            if (byArgCount[argCount] != null) {
                 throw new IllegalStateException("Library function %s has multiple overloads with the same number of arguments".formatted(name));
             }
-            byArgCount.put(argCount, overload);
+            byArgCount[argCount] = overload;
         }
         return byArgCount;
     }
 
-    private HashMap<String, List<Method>> findMethods() {
-        var methods = new HashMap<String, List<Method>>();
-
+    private void findFunctions() {
         for (var method : libraryClass.getDeclaredMethods()) {
             if ((method.getModifiers() & Modifier.PUBLIC) == 0) continue;
             if (method.getAnnotation(DontBind.class) != null) continue;
@@ -170,12 +200,11 @@ public class LibraryBuilder {
             var nameOverride = method.getAnnotation(FunctionName.class);
             if (nameOverride != null) methodName = nameOverride.value();
 
-            methods.computeIfAbsent(methodName, name -> new ArrayList<>()).add(method);
+            overloads.computeIfAbsent(methodName, name -> new ArrayList<>()).add(Invoker.create(methodName, method, instance));
         }
-        return methods;
     }
 
-    private void buildConstants() {
+    private void findConstants() {
         for (var field : libraryClass.getDeclaredFields()) {
             if ((field.getModifiers() & Modifier.PUBLIC) == 0) continue;
             if (field.getAnnotation(DontBind.class) != null) continue;
@@ -202,4 +231,96 @@ public class LibraryBuilder {
 
     public record FunctionContext(EvaluationContext context, SourceSpan callPos) {
     }
+
+    /**
+     * Implemented by the classes that the library processor generates for classes annotated with {@link GenerateBindings}.
+     */
+    public interface Bindings<T> {
+        T create();
+
+        void register(T library, LibraryBuilder builder);
+    }
+
+    /**
+     * The code of a single overload of a library function, which receives arguments that already passed type checks.
+     * @return The result, or null for void functions
+     */
+    @FunctionalInterface
+    public interface Body {
+        @Nullable
+        Value call(EvaluationContext context, SourceSpan callPos, List<Value> args) throws Throwable;
+    }
+
+    /**
+     * Calls a single overload of a library function after checking the argument types.
+     * @param parameterTypes The types of the arguments, without the context
+     */
+    private record Invoker(String name, Class<?>[] parameterTypes, boolean wrapErrors, Body body) {
+        /**
+         * Creates an invoker that calls a method through a method handle.
+         */
+        private static Invoker create(String name, Method method, Object instance) {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Library function %s is not accessible".formatted(name), e);
+            }
+            if (!Modifier.isStatic(method.getModifiers())) {
+                handle = handle.bindTo(instance);
+            }
+
+            var parameterTypes = method.getParameterTypes();
+            var hasContext = parameterTypes.length >= 1 && parameterTypes[0] == FunctionContext.class;
+            if (hasContext) {
+                parameterTypes = Arrays.copyOfRange(parameterTypes, 1, parameterTypes.length);
+            } else {
+                handle = MethodHandles.dropArguments(handle, 0, FunctionContext.class);
+            }
+            // Void methods return null after this, which is converted to a null value later
+            var adapted = handle.asType(MethodType.methodType(Value.class, FunctionContext.class)
+                    .appendParameterTypes(Collections.nCopies(parameterTypes.length, Value.class)));
+
+            return new Invoker(name, parameterTypes, !method.isAnnotationPresent(DisableErrorWrapping.class), (context, callPos, args) -> {
+                // Only allocate the context for methods that want it
+                var functionContext = hasContext ? new FunctionContext(context, callPos) : null;
+                // Exact invocations for common argument counts avoid spreading the arguments into an array
+                return switch (args.size()) {
+                    case 0 -> (Value) adapted.invokeExact(functionContext);
+                    case 1 -> (Value) adapted.invokeExact(functionContext, args.get(0));
+                    case 2 -> (Value) adapted.invokeExact(functionContext, args.get(0), args.get(1));
+                    case 3 -> (Value) adapted.invokeExact(functionContext, args.get(0), args.get(1), args.get(2));
+                    case 4 -> (Value) adapted.invokeExact(functionContext, args.get(0), args.get(1), args.get(2), args.get(3));
+                    default -> {
+                        var allArgs = new ArrayList<Object>(args.size() + 1);
+                        allArgs.add(functionContext);
+                        allArgs.addAll(args);
+                        yield (Value) adapted.invokeWithArguments(allArgs);
+                    }
+                };
+            });
+        }
+
+        private Value invoke(EvaluationContext context, List<Value> args, SourceSpan callPos) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                var arg = args.get(i);
+                var param = parameterTypes[i];
+                if (!param.isInstance(arg)) {
+                    throw new EvaluationException(context.config(), "Expected argument %s to be %s, was %s".formatted(i, getTypeName(param), arg), callPos);
+                }
+            }
+
+            Value result;
+            try {
+                result = body.call(context, callPos, args);
+            } catch (EvaluationException e) {
+                if (!wrapErrors) throw e;
+                throw new EvaluationException(context.config(), "Error while calling builtin function %s".formatted(name), callPos, e);
+            } catch (Throwable e) {
+                throw new RuntimeException("Unexpected error while calling builtin function %s".formatted(name), e);
+            }
+
+            return result == null ? Value.NullValue.NULL : result;
+        }
+    }
 }
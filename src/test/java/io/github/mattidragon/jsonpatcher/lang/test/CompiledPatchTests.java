@@ -0,0 +1,149 @@
+package io.github.mattidragon.jsonpatcher.lang.test;
+
+import io.github.mattidragon.jsonpatcher.lang.CompiledPatch;
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredProgram;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledPatchTests {
+    private static CompiledPatch compile(String code) {
+        return CompiledPatch.builder(TestUtils.CONFIG)
+                .debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER)
+                .compile(code, "test file");
+    }
+
+    @Test
+    public void testApplyToManyRoots() {
+        var patch = compile("""
+                @version 2;
+                var count = 0;
+                foreach (i in $.items) count += i;
+                $.total = count * factor;
+                """);
+        TestUtils.assertEquals(new Value.NumberValue(2), patch.metadata().get("version"));
+
+        for (int i = 0; i < 3; i++) {
+            var root = new Value.ObjectValue();
+            root.value().put("items", new Value.ArrayValue(List.of(new Value.NumberValue(i), new Value.NumberValue(1))));
+            patch.apply(root, Map.of("factor", new Value.NumberValue(10)));
+            TestUtils.assertEquals(new Value.NumberValue((i + 1) * 10), root.value().get("total"));
+        }
+    }
+
+    @Test
+    public void testVariablesAreScopedToOneApplication() {
+        var patch = compile("$.value = value;");
+        var first = new Value.ObjectValue();
+        patch.apply(first, Map.of("value", new Value.NumberValue(1)));
+        TestUtils.assertEquals(new Value.NumberValue(1), first.value().get("value"));
+        assertThrowsExactly(EvaluationException.class, () -> patch.apply(new Value.ObjectValue()));
+        assertThrowsExactly(EvaluationException.class, () -> patch.apply(new Value.ObjectValue(), Map.of("math", Value.NullValue.NULL)));
+    }
+
+    @Test
+    public void testCustomLibrariesAreFrozen() {
+        var calls = new AtomicInteger();
+        var patch = CompiledPatch.builder(TestUtils.CONFIG)
+                .debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER)
+                .stdlib(Map.of("custom", () -> {
+                    calls.incrementAndGet();
+                    return new Value.ObjectValue(Map.of("value", new Value.NumberValue(1)));
+                }))
+                .compile("$.value = custom.value; custom.value = 2;", "test file");
+
+        var roots = Stream.generate(Value.ObjectValue::new).limit(20).toList();
+        var results = patch.applyAll(roots);
+        assertEquals(1, calls.get());
+        for (var result : results) {
+            assertFalse(result.succeeded());
+            TestUtils.assertEquals(new Value.NumberValue(1), result.root().value().get("value"));
+        }
+    }
+
+    @Test
+    public void testEngines() {
+        for (var engine : ExecutionEngine.values()) {
+            var patch = CompiledPatch.builder(TestUtils.CONFIG)
+                    .debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER)
+                    .engine(engine)
+                    .compile("$.value = [1, 2, 3].map((x) -> x * 2)[2];", "test file");
+            assertEquals(engine, patch.engine());
+            if (engine == ExecutionEngine.TIERED) assertInstanceOf(TieredProgram.class, patch.executable());
+            var root = new Value.ObjectValue();
+            patch.apply(root);
+            TestUtils.assertEquals(new Value.NumberValue(6), root.value().get("value"));
+        }
+        assertEquals(TestUtils.CONFIG.engine(), compile("").engine());
+    }
+
+    @Test
+    public void testCompileErrors() {
+        var exception = assertThrowsExactly(CompiledPatch.CompileException.class, () -> compile("var = ;"));
+        assertFalse(exception.getErrors().isEmpty());
+    }
+
+    @Test
+    public void testApplyAll() {
+        var patch = compile("""
+                if ($.fail) debug.throw("failed");
+                $.done = true;
+                """);
+        var roots = new ArrayList<Value.ObjectValue>();
+        for (int i = 0; i < 100; i++) {
+            var root = new Value.ObjectValue();
+            root.value().put("fail", Value.BooleanValue.of(i % 10 == 0));
+            roots.add(root);
+        }
+
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            var results = patch.applyAll(roots, executor, 8);
+            assertEquals(roots.size(), results.size());
+            for (int i = 0; i < roots.size(); i++) {
+                var result = results.get(i);
+                assertSame(roots.get(i), result.root(), "Results should be in order");
+                assertEquals(i % 10 != 0, result.succeeded());
+                assertEquals(i % 10 != 0, result.root().value().containsKey("done"));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testApplyAllLimitsInFlight() {
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var patch = CompiledPatch.builder(TestUtils.CONFIG)
+                .debugConsumer(value -> {
+                    if (value.asBoolean()) {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    } else {
+                        running.decrementAndGet();
+                    }
+                })
+                .compile("debug.log(true); $.done = true; debug.log(false);", "test file");
+
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            var roots = Stream.generate(Value.ObjectValue::new).limit(200);
+            var results = patch.applyAll(roots::iterator, executor, 3);
+            assertEquals(200, results.size());
+            assertTrue(results.stream().allMatch(CompiledPatch.BatchResult::succeeded));
+            assertTrue(maxRunning.get() <= 3, "At most three roots should be patched at once");
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -2,8 +2,11 @@ package io.github.mattidragon.jsonpatcher.lang.test;
 
 import io.github.mattidragon.jsonpatcher.lang.LangConfig;
 import io.github.mattidragon.jsonpatcher.lang.SimpleLangConfig;
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
 import io.github.mattidragon.jsonpatcher.lang.parse.*;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ValueExpression;
@@ -36,7 +39,10 @@ public class TestUtils {
         return new LibraryBuilder.FunctionContext(createTestContext(), POS);
     }
 
-    public static void testCode(String code) {
+    /**
+     * Parses code, failing the test if there are errors. Every call returns a new program, as programs keep type feedback.
+     */
+    public static Program parse(String code) {
         var result = Parser.parse(CONFIG, Lexer.lex(CONFIG, code, "test file").tokens());
         if (!result.errors().isEmpty()) {
             var error = new RuntimeException("Expected successful parse");
@@ -45,41 +51,47 @@ public class TestUtils {
                     .message("Expected successful parse")
                     .cause(error)
                     .buildAndThrow();
-            return;
         }
+        return result.program();
+    }
 
-        var program = result.program();
-        var context = EvaluationContext.builder(CONFIG)
-                .debugConsumer(EMPTY_DEBUG_CONSUMER)
-                .build();
-        Assertions.assertDoesNotThrow(() -> program.execute(context));
+    // Code tests run on every engine, as they all have to behave the same as the interpreter
+    public static void testCode(String code) {
+        for (var engine : ExecutionEngine.values()) {
+            var program = engine.prepare(parse(code));
+            var context = EvaluationContext.builder(CONFIG)
+                    .debugConsumer(EMPTY_DEBUG_CONSUMER)
+                    .build();
+            Assertions.assertDoesNotThrow(() -> program.execute(context), "Failed with engine " + engine);
+        }
     }
 
     public static void testCode(String code, Value expected) {
-        var result = Parser.parse(CONFIG, Lexer.lex(CONFIG, code, "test file").tokens());
-        if (!result.errors().isEmpty()) {
-            var error = new RuntimeException("Expected successful parse");
-            result.errors().forEach(error::addSuppressed);
-            AssertionFailureBuilder.assertionFailure()
-                    .message("Expected successful parse")
-                    .cause(error)
-                    .buildAndThrow();
-            return;
+        for (var engine : ExecutionEngine.values()) {
+            var program = engine.prepare(parse(code));
+
+            var output = new Value[1];
+            var context = EvaluationContext.builder(CONFIG)
+                    .debugConsumer(EMPTY_DEBUG_CONSUMER)
+                    .variable("testResult", new Value.FunctionValue((PatchFunction.BuiltInPatchFunction) (ctx, args, pos) -> {
+                        output[0] = args.getFirst();
+                        return Value.NullValue.NULL;
+                    }))
+                    .build();
+            program.execute(context);
+            Assertions.assertNotEquals(null, output[0], "testResult should be called with engine " + engine);
+            assertEquals(expected, output[0]);
         }
+    }
 
-        var program = result.program();
-
-        var output = new Value[1];
-        var context = EvaluationContext.builder(CONFIG)
-                .debugConsumer(EMPTY_DEBUG_CONSUMER)
-                .variable("testResult", new Value.FunctionValue((PatchFunction.BuiltInPatchFunction) (ctx, args, pos) -> {
-                    output[0] = args.getFirst();
-                    return Value.NullValue.NULL;
-                }))
-                .build();
-        program.execute(context);
-        Assertions.assertNotEquals(null, output[0], "testResult should be called");
-        assertEquals(expected, output[0]);
+    public static void testCodeFails(String code) {
+        for (var engine : ExecutionEngine.values()) {
+            var program = engine.prepare(parse(code));
+            var context = EvaluationContext.builder(CONFIG)
+                    .debugConsumer(EMPTY_DEBUG_CONSUMER)
+                    .build();
+            Assertions.assertThrowsExactly(EvaluationException.class, () -> program.execute(context), "Expected failure with engine " + engine);
+        }
     }
 
     public static void testExpression(String code, Value expected) {
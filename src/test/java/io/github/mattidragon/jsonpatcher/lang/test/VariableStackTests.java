@@ -1,12 +1,22 @@
 package io.github.mattidragon.jsonpatcher.lang.test;
 
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value.ArrayValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value.NumberValue;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value.StringValue;
+import io.github.mattidragon.jsonpatcher.lang.runtime.VariableSlot;
 import io.github.mattidragon.jsonpatcher.lang.runtime.VariableStack;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnexpectedValueException;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Set;
+
 import static io.github.mattidragon.jsonpatcher.lang.test.TestUtils.POS;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
 
 
@@ -25,4 +35,73 @@ public class VariableStackTests {
 
         assertDoesNotThrow(() -> variables.createVariable("b", new NumberValue(1), false, POS), "Creating a variable with a same name in a parent block after child should not throw");
     }
+
+    @Test
+    public void testSlotCollisionsWithNamedVariables() {
+        var host = new VariableStack(TestUtils.CONFIG);
+        host.createVariable("a", new NumberValue(1), false, POS);
+        var program = new VariableStack(TestUtils.CONFIG, host, 2, true);
+        program.checkCollisions(Set.of("a", "b"));
+        var block = new VariableStack(TestUtils.CONFIG, program, 2);
+
+        var slot = new VariableSlot();
+        slot.resolve(0, 0, new int[0]);
+        assertThrowsExactly(EvaluationException.class, () -> block.createVariable("a", slot, new NumberValue(2), false, POS), "Creating a slot variable with the name of a named variable should throw");
+        assertDoesNotThrow(() -> block.createVariable("b", slot, new NumberValue(2), false, POS), "Creating a slot variable with a free name should not throw");
+    }
+
+    @Test
+    public void testProgramsDeleteContextVariables() {
+        for (var engine : ExecutionEngine.values()) {
+            var program = engine.prepare(TestUtils.parse("delete a; var a = 2;"));
+            var context = TestUtils.createTestContext();
+            context.variables().createVariable("a", new NumberValue(1), false, POS);
+            assertDoesNotThrow(() -> program.execute(context), "Deleting a variable of the context should not throw with engine " + engine);
+            assertFalse(context.variables().hasVariable("a"), "The variable should be deleted from the context with engine " + engine);
+        }
+    }
+
+    @Test
+    public void testAccessBeforeDeclaration() {
+        TestUtils.testCode("""
+                var a = 1;
+                {
+                    testResult(a);
+                    return;
+                    var a = 2;
+                }
+                """, new NumberValue(1));
+        TestUtils.testCodeFails("""
+                var a = 1;
+                {
+                    delete a;
+                    var a = 2;
+                }
+                """);
+    }
+
+    @Test
+    public void testUnboxedSlots() {
+        var variables = new VariableStack(TestUtils.CONFIG, null, 1);
+        var slot = new VariableSlot();
+        slot.resolve(0, 0, new int[0]);
+        variables.createVariable("a", slot, new NumberValue(1), true, POS);
+        variables.setDouble("a", slot, 2, POS);
+        assertEquals(2, variables.getDouble("a", slot, POS));
+        TestUtils.assertEquals(new NumberValue(2), variables.getVariable("a", slot, POS));
+        variables.setVariable("a", slot, new StringValue("b"), POS);
+        assertThrowsExactly(UnexpectedValueException.class, () -> variables.getDouble("a", slot, POS));
+
+        TestUtils.testCode("""
+                var sum = 0;
+                for (var i = 0; i < 10; i++) sum += i;
+                var j = 1;
+                j--;
+                testResult([sum, j++, j, ++j]);
+                """, new ArrayValue(List.of(new NumberValue(45), new NumberValue(0), new NumberValue(1), new NumberValue(2))));
+        TestUtils.testCodeFails("""
+                val a = 1;
+                a++;
+                """);
+    }
 }
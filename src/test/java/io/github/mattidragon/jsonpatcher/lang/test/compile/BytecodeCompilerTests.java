@@ -0,0 +1,94 @@
+package io.github.mattidragon.jsonpatcher.lang.test.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.bytecode.BytecodeCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.bytecode.BytecodeStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.FunctionDeclarationStatement;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BytecodeCompilerTests {
+    @Test
+    public void testControlFlow() {
+        TestUtils.testCode("""
+                var parts = [];
+                var i = 0;
+                while (true) {
+                    i++;
+                    if (i % 2 == 0) continue;
+                    if (i > 9) break;
+                    {
+                        var odd = i;
+                        parts.push(odd > 5 ? "big" : "small");
+                    }
+                }
+                testResult(parts.length == 5 && (false || parts[4] == "big") ? parts : null);
+                """, new Value.ArrayValue(List.of(
+                new Value.StringValue("small"), new Value.StringValue("small"), new Value.StringValue("small"),
+                new Value.StringValue("big"), new Value.StringValue("big"))));
+    }
+
+    @Test
+    public void testInterpretedBreaks() {
+        // The breaks are inside apply bodies, which run in their own chunk and throw to the compiled loop
+        var expected = new Value.ObjectValue();
+        expected.value().put("total", new Value.NumberValue(7));
+        TestUtils.testCode("""
+                var count = 0;
+                var values = { total: 0 };
+                while (true) {
+                    count++;
+                    apply (values) {
+                        if (count == 3) continue;
+                        if (count == 5) break;
+                        $.total += count;
+                    }
+                }
+                testResult(values);
+                """, expected);
+    }
+
+    @Test
+    public void testErrorPositions() {
+        var code = """
+                var a = 1;
+                a = a + 1;
+                var b = a - "text";
+                """;
+        var interpreted = assertThrowsExactly(EvaluationException.class, () -> TestUtils.parse(code).execute(TestUtils.createTestContext()));
+        var compiled = assertThrowsExactly(EvaluationException.class, () -> BytecodeCompiler.compile(TestUtils.parse(code)).execute(TestUtils.createTestContext()));
+        assertEquals(interpreted.getMessage(), compiled.getMessage());
+        assertEquals(interpreted.getPos(), compiled.getPos());
+    }
+
+    @Test
+    public void testFunctionBodiesAreCompiled() {
+        var compiled = BytecodeCompiler.compile(TestUtils.parse("""
+                function test() {
+                    return 1;
+                }
+                """));
+        var declaration = assertInstanceOf(FunctionDeclarationStatement.class, compiled.program().statements().getFirst());
+        var body = assertInstanceOf(BytecodeStatement.class, declaration.value().body());
+        assertTrue(body.chunk().disassemble().contains("RETURN_VALUE"));
+    }
+
+    @Test
+    public void testLoopsAreNative() {
+        var compiled = BytecodeCompiler.compile(TestUtils.parse("""
+                var total = 0;
+                for (var i = 0; i < 10; i++) {
+                    if (i == 5) continue;
+                    total += i;
+                }
+                """));
+        var disassembly = compiled.chunk().disassemble();
+        assertFalse(disassembly.contains("RUN"), disassembly);
+        assertFalse(disassembly.contains("EVALUATE"), disassembly);
+    }
+}
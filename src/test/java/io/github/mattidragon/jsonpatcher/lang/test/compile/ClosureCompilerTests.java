@@ -0,0 +1,55 @@
+package io.github.mattidragon.jsonpatcher.lang.test.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.closure.ClosureCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.closure.ClosureExpression;
+import io.github.mattidragon.jsonpatcher.lang.compile.closure.ClosureStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.FunctionDeclarationStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.VariableCreationStatement;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ClosureCompilerTests {
+    @Test
+    public void testNodesAreWrapped() {
+        var compiled = ClosureCompiler.compile(TestUtils.parse("""
+                var a = 1 + 2;
+                function test(x) {
+                    return x * a;
+                }
+                """));
+        var variable = assertInstanceOf(ClosureStatement.class, compiled.program().statements().getFirst());
+        var creation = assertInstanceOf(VariableCreationStatement.class, variable.original());
+        assertInstanceOf(ClosureExpression.class, creation.initializer());
+
+        var function = assertInstanceOf(ClosureStatement.class, compiled.program().statements().get(1));
+        var declaration = assertInstanceOf(FunctionDeclarationStatement.class, function.original());
+        assertInstanceOf(ClosureStatement.class, declaration.value().body());
+    }
+
+    @Test
+    public void testLiteralOperandsFallBack() {
+        // The literal fast path only handles numbers, everything else has to go through the operator
+        TestUtils.testCode("""
+                var a = "a";
+                var b = 1;
+                testResult([b + 1, b < 2, a == 1, [a][0]]);
+                """, new Value.ArrayValue(List.of(
+                new Value.NumberValue(2), Value.BooleanValue.TRUE, Value.BooleanValue.FALSE, new Value.StringValue("a"))));
+        var compiled = ClosureCompiler.compile(TestUtils.parse("""
+                var a = "a";
+                var b = a - 1;
+                """));
+        var interpreted = assertThrowsExactly(EvaluationException.class, () -> TestUtils.parse("""
+                var a = "a";
+                var b = a - 1;
+                """).execute(TestUtils.createTestContext()));
+        var error = assertThrowsExactly(EvaluationException.class, () -> compiled.execute(TestUtils.createTestContext()));
+        assertEquals(interpreted.getMessage(), error.getMessage());
+    }
+}
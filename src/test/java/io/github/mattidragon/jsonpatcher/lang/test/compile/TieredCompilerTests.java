@@ -0,0 +1,118 @@
+package io.github.mattidragon.jsonpatcher.lang.test.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredCode;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredCompiler;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieredProgram;
+import io.github.mattidragon.jsonpatcher.lang.compile.tiered.TieringPolicy;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TieredCompilerTests {
+    // Compiles on the calling thread, so tests can check the tier right after crossing a threshold
+    private static final Executor DIRECT = Runnable::run;
+
+    private static Value.ObjectValue run(TieredProgram program) {
+        var root = new Value.ObjectValue();
+        program.execute(EvaluationContext.builder(TestUtils.CONFIG).debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER).root(root).build());
+        return root;
+    }
+
+    @Test
+    public void testHotFunctionsAreCompiled() {
+        for (var engine : new ExecutionEngine[]{ExecutionEngine.CLOSURES, ExecutionEngine.BYTECODE}) {
+            var program = TieredCompiler.compile(TestUtils.parse("""
+                    function hot(x) {
+                        return x * 2;
+                    }
+                    function cold(x) {
+                        return x;
+                    }
+                    $.result = 0;
+                    for (var i = 0; i < 20; i++) {
+                        $.result += hot(i);
+                    }
+                    $.cold = cold(1);
+                    """), new TieringPolicy(10, 1000, engine, DIRECT));
+            assertEquals(3, program.units().size());
+            var hot = program.units().get(1);
+            var cold = program.units().get(2);
+
+            var root = run(program);
+            TestUtils.assertEquals(new Value.NumberValue(380), root.value().get("result"));
+            assertEquals(TieredCode.Tier.COMPILED, hot.tier(), hot.toString());
+            assertEquals(10, hot.invocations());
+            assertEquals(TieredCode.Tier.INTERPRETED, cold.tier());
+            assertEquals(TieredCode.Tier.INTERPRETED, program.code().tier());
+        }
+    }
+
+    @Test
+    public void testHotLoopsCompileProgram() {
+        var program = TieredCompiler.compile(TestUtils.parse("""
+                $.count = 0;
+                var items = [1, 2, 3];
+                while ($.count < 10) {
+                    foreach (item in items) {
+                        if (item == 2) continue;
+                        $.count += item;
+                    }
+                }
+                """), new TieringPolicy(1000, 5, ExecutionEngine.CLOSURES, DIRECT));
+
+        // The running call finishes in the interpreter, the next one uses the compiled program
+        TestUtils.assertEquals(new Value.NumberValue(12), run(program).value().get("count"));
+        assertEquals(TieredCode.Tier.COMPILED, program.code().tier());
+        TestUtils.assertEquals(new Value.NumberValue(12), run(program).value().get("count"));
+        assertEquals(1, program.code().invocations());
+    }
+
+    @Test
+    public void testRunningLoopsSwitchToCompiledBodies() {
+        for (var engine : new ExecutionEngine[]{ExecutionEngine.CLOSURES, ExecutionEngine.BYTECODE}) {
+            var program = TieredCompiler.compile(TestUtils.parse("""
+                    $.total = 0;
+                    for (var i = 0; i < 100; i++) {
+                        if (i % 10 == 0) continue;
+                        if (i == 55) break;
+                        $.total += i;
+                    }
+                    """), new TieringPolicy(1000, 10, engine, DIRECT));
+            assertEquals(1, program.loops().size());
+            var loop = program.loops().getFirst();
+
+            TestUtils.assertEquals(new Value.NumberValue(1335), run(program).value().get("total"));
+            assertEquals(TieredCode.Tier.COMPILED, loop.tier(), loop.toString());
+            // The loop stops counting once its body is compiled
+            assertEquals(10, loop.backEdges());
+        }
+    }
+
+    @Test
+    public void testBackgroundCompilation() {
+        var pending = new ArrayList<Runnable>();
+        var program = TieredCompiler.compile(TestUtils.parse("$.value = 1;"), new TieringPolicy(1, 1, ExecutionEngine.CLOSURES, pending::add));
+        run(program);
+        assertEquals(TieredCode.Tier.COMPILING, program.code().tier());
+        // Still interpreted until the executor gets to it
+        TestUtils.assertEquals(new Value.NumberValue(1), run(program).value().get("value"));
+        assertEquals(1, pending.size());
+        pending.getFirst().run();
+        assertEquals(TieredCode.Tier.COMPILED, program.code().tier());
+        TestUtils.assertEquals(new Value.NumberValue(1), run(program).value().get("value"));
+    }
+
+    @Test
+    public void testPolicyValidation() {
+        assertThrows(IllegalArgumentException.class, () -> new TieringPolicy(0, 1, ExecutionEngine.CLOSURES, DIRECT));
+        assertThrows(IllegalArgumentException.class, () -> new TieringPolicy(1, 1, ExecutionEngine.INTERPRETER, DIRECT));
+        assertThrows(IllegalArgumentException.class, () -> new TieringPolicy(1, 1, ExecutionEngine.TIERED, DIRECT));
+    }
+}
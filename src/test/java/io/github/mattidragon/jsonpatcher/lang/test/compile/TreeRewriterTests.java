@@ -0,0 +1,31 @@
+package io.github.mattidragon.jsonpatcher.lang.test.compile;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.TreeRewriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.Expression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.FunctionExpression;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TreeRewriterTests {
+    @Test
+    public void testRewriterKeepsUnchangedTrees() {
+        var program = TestUtils.parse("""
+                var a = [1, 2, {b: 3}];
+                function test(x = 1) {
+                    return x + a[0];
+                }
+                """);
+        assertSame(program, new TreeRewriter().rewrite(program));
+        assertNotSame(program, new TreeRewriter() {
+            @Override
+            protected Expression rewriteExpression(Expression expression) {
+                return expression instanceof FunctionExpression function
+                        ? new FunctionExpression(function.body(), function.args(), function.pos(), function.layout())
+                        : expression;
+            }
+        }.rewrite(program));
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.mattidragon.jsonpatcher.lang.test.json;
+
+import io.github.mattidragon.jsonpatcher.lang.json.JsonException;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonReader;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonReaderTests {
+    private static Value read(String json) {
+        return JsonReader.DEFAULT.read(json);
+    }
+
+    @Test
+    public void testValues() {
+        var value = read("""
+                {
+                    "type": "minecraft:crafting_shaped",
+                    "count": 3,
+                    "flags": [true, false, null],
+                    "nested": { "empty": {}, "list": [] }
+                }
+                """);
+        var object = assertInstanceOf(Value.ObjectValue.class, value);
+        assertEquals(List.of("type", "count", "flags", "nested"), List.copyOf(object.value().keySet()));
+        assertEquals(new Value.StringValue("minecraft:crafting_shaped"), object.value().get("type"));
+        assertEquals(new Value.NumberValue(3), object.value().get("count"));
+        assertEquals(List.of(Value.BooleanValue.TRUE, Value.BooleanValue.FALSE, Value.NullValue.NULL), ((Value.ArrayValue) object.value().get("flags")).value());
+        // Objects with the same keys share a shape
+        var objects = (Value.ArrayValue) read("[{\"a\": 1, \"b\": 2}, {\"a\": 3, \"b\": 4}]");
+        assertSame(((Value.ObjectValue) objects.value().get(0)).shape(), ((Value.ObjectValue) objects.value().get(1)).shape());
+    }
+
+    @Test
+    public void testNumbers() {
+        var cases = List.of("0", "-0", "12", "-3.25", "1e3", "1E-3", "0.1", "2.5e+2", "123456789012345678901234567890",
+                "0.30000000000000004", "1.7976931348623157e308", "4.9e-324", "1e400", "123.456e-10", "9007199254740993");
+        for (var number : cases) {
+            assertEquals(Double.parseDouble(number), ((Value.NumberValue) read(number)).value(), number);
+        }
+        for (var invalid : List.of("01", "1.", ".5", "-", "1e", "+1", "0x10")) {
+            assertThrows(JsonException.class, () -> read(invalid), invalid);
+        }
+    }
+
+    @Test
+    public void testStrings() {
+        assertEquals(new Value.StringValue("a\"b\\c/\n\t\u00e9\u4e2d\ud83d\ude00"), read("\"a\\\"b\\\\c\\/\\n\\t\u00e9\\u4e2d\ud83d\ude00\""));
+        assertEquals(new Value.StringValue("\ud83d\ude00"), read("\"\\ud83d\\ude00\""));
+        assertThrows(JsonException.class, () -> read("\"a\nb\""));
+        assertThrows(JsonException.class, () -> read("\"\\x\""));
+        assertThrows(JsonException.class, () -> read("\"abc"));
+    }
+
+    @Test
+    public void testInputs() throws IOException {
+        var bytes = "  [1, \"\u00e9\"]  ".getBytes(StandardCharsets.UTF_8);
+        var expected = List.of(new Value.NumberValue(1), new Value.StringValue("\u00e9"));
+        assertEquals(expected, ((Value.ArrayValue) JsonReader.DEFAULT.read(bytes)).value());
+        assertEquals(expected, ((Value.ArrayValue) JsonReader.DEFAULT.read(new ByteArrayInputStream(bytes))).value());
+
+        var direct = ByteBuffer.allocateDirect(bytes.length + 2).put((byte) 'x').put(bytes);
+        direct.flip().position(1);
+        assertEquals(expected, ((Value.ArrayValue) JsonReader.DEFAULT.read(direct)).value());
+        assertFalse(direct.hasRemaining());
+    }
+
+    @Test
+    public void testErrors() {
+        var error = assertThrows(JsonException.class, () -> read("{\n  \"a\": tru\n}"));
+        assertEquals(2, error.getLine());
+        assertEquals(8, error.getColumn());
+        assertThrows(JsonException.class, () -> read("[1, 2"));
+        assertThrows(JsonException.class, () -> read("[1,]"));
+        assertThrows(JsonException.class, () -> read("{} {}"));
+        assertThrows(JsonException.class, () -> read(""));
+    }
+
+    @Test
+    public void testLimits() {
+        assertEquals(new Value.NumberValue(2), ((Value.ObjectValue) read("{\"a\": 1, \"a\": 2}")).value().get("a"));
+        var strict = JsonReader.DEFAULT.withAllowDuplicateKeys(false);
+        assertThrows(JsonException.class, () -> strict.read("{\"a\": 1, \"a\": 2}"));
+
+        var shallow = JsonReader.DEFAULT.withMaxDepth(2);
+        assertDoesNotThrow(() -> shallow.read("[[1]]"));
+        assertThrows(JsonException.class, () -> shallow.read("[[[1]]]"));
+        assertThrows(JsonException.class, () -> read("[".repeat(10_000)));
+        assertThrows(IllegalArgumentException.class, () -> new JsonReader(0, true));
+    }
+
+    @Test
+    public void testLibrary() {
+        TestUtils.testCode("""
+                val parsed = json.parse("{\\"values\\": [1, 2, 3]}");
+                testResult(parsed.values[2]);
+                """, new Value.NumberValue(3));
+        TestUtils.testCodeFails("json.parse(\"{\");");
+    }
+}
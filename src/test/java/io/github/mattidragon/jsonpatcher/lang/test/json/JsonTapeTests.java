@@ -0,0 +1,127 @@
+package io.github.mattidragon.jsonpatcher.lang.test.json;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonException;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonReader;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonTape;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonWriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonTapeTests {
+    private static final String DOCUMENT = """
+            {"type":"chest","pools":[{"rolls":1,"entries":[{"name":"a","weight":2.5}]},{"rolls":3,"entries":["b\\n","é",true,false,null]}],"empty":{},"list":[]}""";
+
+    @Test
+    public void testMatchesValues() {
+        var tape = JsonReader.DEFAULT.readTape(DOCUMENT);
+        TestUtils.assertEquals(JsonReader.DEFAULT.read(DOCUMENT), tape.toValue());
+        assertEquals(DOCUMENT, JsonWriter.COMPACT.writeToString(tape.toValue()));
+        assertEquals(DOCUMENT, JsonWriter.COMPACT.writeToString(JsonTape.of(JsonReader.DEFAULT.read(DOCUMENT)).toValue()));
+        TestUtils.assertEquals(new Value.StringValue("a"), JsonReader.DEFAULT.readTape("\"a\"").toValue());
+    }
+
+    @Test
+    public void testViewsAreIndependent() {
+        var tape = JsonReader.DEFAULT.readTape(DOCUMENT);
+        var first = (Value.ObjectValue) tape.toValue();
+        var pools = (Value.ArrayValue) first.value().get("pools");
+        ((Value.ObjectValue) pools.value().get(0)).value().put("rolls", new Value.NumberValue(5));
+        pools.value().remove(1);
+        first.value().remove("type");
+
+        // Nested views are kept, so writes to them stick
+        assertSame(pools, first.value().get("pools"));
+        assertEquals("{\"pools\":[{\"rolls\":5,\"entries\":[{\"name\":\"a\",\"weight\":2.5}]}],\"empty\":{},\"list\":[]}", JsonWriter.COMPACT.writeToString(first));
+        assertEquals(DOCUMENT, JsonWriter.COMPACT.writeToString(tape.toValue()));
+    }
+
+    @Test
+    public void testWriteThroughIteration() {
+        var object = (Value.ObjectValue) JsonReader.DEFAULT.readTape("{\"a\":1,\"b\":2,\"c\":3}").toValue();
+        var iterator = object.value().entrySet().iterator();
+        iterator.next().setValue(new Value.NumberValue(10));
+        iterator.next();
+        iterator.remove();
+        assertEquals("c", iterator.next().getKey());
+        assertFalse(iterator.hasNext());
+        assertEquals("{\"a\":10,\"c\":3}", JsonWriter.COMPACT.writeToString(object));
+    }
+
+    @Test
+    public void testPatchOnView() {
+        var tape = JsonReader.DEFAULT.readTape(DOCUMENT);
+        for (var engine : ExecutionEngine.values()) {
+            var root = (Value.ObjectValue) tape.toValue();
+            var program = engine.prepare(TestUtils.parse("""
+                    $pools[0].rolls = $pools[1].rolls + 1;
+                    $pools[1].entries[0] = "c";
+                    $empty.x = 1;
+                    """));
+            program.execute(EvaluationContext.builder(TestUtils.CONFIG).debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER).root(root).build());
+
+            assertEquals("""
+                    {"type":"chest","pools":[{"rolls":4,"entries":[{"name":"a","weight":2.5}]},{"rolls":3,"entries":["c","é",true,false,null]}],"empty":{"x":1},"list":[]}""",
+                    JsonWriter.COMPACT.writeToString(root), "Wrong output with engine " + engine);
+        }
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        var small = (Value.ObjectValue) JsonReader.DEFAULT.readTape("{\"a\":[1],\"b\":2,\"a\":3}").toValue();
+        assertEquals(new Value.NumberValue(3), small.value().get("a"));
+        assertEquals(2, small.value().size());
+        assertEquals("{\"b\":2,\"a\":3}", JsonWriter.COMPACT.writeToString(small));
+
+        var keys = IntStream.range(0, 40).mapToObj(i -> "\"k" + i + "\":" + i).collect(Collectors.joining(","));
+        var large = (Value.ObjectValue) JsonReader.DEFAULT.readTape("{" + keys + ",\"k3\":\"x\"}").toValue();
+        assertEquals(40, large.value().size());
+        assertEquals(new Value.StringValue("x"), large.value().get("k3"));
+        assertEquals(new Value.NumberValue(39), large.value().get("k39"));
+
+        var strict = JsonReader.DEFAULT.withAllowDuplicateKeys(false);
+        assertThrows(JsonException.class, () -> strict.readTape("{\"a\":1,\"a\":2}"));
+        assertThrows(JsonException.class, () -> strict.readTape("{" + keys + ",\"k3\":1}"));
+    }
+
+    @Test
+    public void testLargeObjectsAtAnyOffset() {
+        // Objects with many keys switch to a hash map partway through, which mustn't depend on where the tape grows
+        var keys = IntStream.range(0, 20).mapToObj(i -> "\"k" + i + "\":" + i).collect(Collectors.joining(","));
+        for (int padding = 0; padding < 150; padding++) {
+            var json = "[" + "null,".repeat(padding) + "{" + keys + ",\"k5\":\"x\"}]";
+            var array = (Value.ArrayValue) JsonReader.DEFAULT.readTape(json).toValue();
+            var object = (Value.ObjectValue) array.value().get(padding);
+            assertEquals(20, object.value().size(), "Wrong size with padding " + padding);
+            assertEquals(new Value.StringValue("x"), object.value().get("k5"));
+            assertEquals(new Value.NumberValue(19), object.value().get("k19"));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(JsonException.class, () -> JsonReader.DEFAULT.readTape("{\"a\": [1, tru]}"));
+        assertThrows(JsonException.class, () -> JsonReader.DEFAULT.readTape("[1] 2"));
+        assertThrows(IllegalArgumentException.class, () -> JsonTape.of(new Value.ArrayValue(List.of(new Value.FunctionValue((PatchFunction.BuiltInPatchFunction) (ctx, args, pos) -> Value.NullValue.NULL)))));
+    }
+
+    @Test
+    public void testCompact() {
+        var entries = IntStream.range(0, 1000)
+                .mapToObj(i -> "{\"type\":\"minecraft:item\",\"name\":\"minecraft:stone\",\"weight\":" + i + "}")
+                .collect(Collectors.joining(","));
+        var tape = JsonReader.DEFAULT.readTape("{\"entries\":[" + entries + "]}");
+        // Repeated strings are only stored once
+        assertTrue(tape.estimatedSize() < 80_000, "Tape took " + tape.estimatedSize() + " bytes");
+        assertEquals(1000, ((Value.ArrayValue) ((Value.ObjectValue) tape.toValue()).value().get("entries")).value().size());
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.mattidragon.jsonpatcher.lang.test.json;
+
+import io.github.mattidragon.jsonpatcher.lang.json.JsonReader;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonWriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonWriterTests {
+    private static final String DOCUMENT = "{\"name\":\"a \\\"quoted\\\" \\\\ line\\n\\u0001 é中😀\",\"numbers\":[1,-2,0.5,1.0E300,9007199254740992,1.0E-7],\"flags\":[true,false,null],\"empty\":{},\"list\":[]}";
+
+    @Test
+    public void testCompact() throws IOException {
+        var value = JsonReader.DEFAULT.read(DOCUMENT);
+        assertEquals(DOCUMENT, JsonWriter.COMPACT.writeToString(value));
+        assertEquals(DOCUMENT, new String(JsonWriter.COMPACT.toBytes(value), StandardCharsets.UTF_8));
+
+        var writer = new StringWriter();
+        JsonWriter.COMPACT.write(value, writer);
+        assertEquals(DOCUMENT, writer.toString());
+
+        var stream = new ByteArrayOutputStream();
+        JsonWriter.COMPACT.write(value, Channels.newChannel(stream));
+        assertEquals(DOCUMENT, stream.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPretty() {
+        var value = JsonReader.DEFAULT.read("{\"a\": [1, {}], \"b\": {\"c\": null}}");
+        assertEquals("""
+                {
+                  "a": [
+                    1,
+                    {}
+                  ],
+                  "b": {
+                    "c": null
+                  }
+                }""", JsonWriter.PRETTY.writeToString(value));
+    }
+
+    @Test
+    public void testLargeOutput() {
+        var array = new Value.ArrayValue();
+        for (int i = 0; i < 10_000; i++) {
+            array.value().add(new Value.StringValue("element é " + i));
+        }
+        var bytes = JsonWriter.COMPACT.toBytes(array);
+        assertEquals(array.value(), ((Value.ArrayValue) JsonReader.DEFAULT.read(bytes)).value());
+    }
+
+    @Test
+    public void testUnsupportedValues() {
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.COMPACT.writeToString(new Value.NumberValue(Double.NaN)));
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.COMPACT.writeToString(new Value.ArrayValue(List.of(new Value.FunctionValue((PatchFunction.BuiltInPatchFunction) (context, args, pos) -> Value.NullValue.NULL)))));
+        var cyclic = new Value.ArrayValue();
+        cyclic.value().add(cyclic);
+        assertThrows(IllegalArgumentException.class, () -> JsonWriter.COMPACT.writeToString(cyclic));
+        assertThrows(IllegalArgumentException.class, () -> new JsonWriter("x", 10));
+    }
+
+    @Test
+    public void testLibrary() {
+        TestUtils.testCode("""
+                testResult(json.stringify({ a: [1, 2.5, "b"] }) + "|" + json.stringify([], true));
+                """, new Value.StringValue("{\"a\":[1,2.5,\"b\"]}|[]"));
+        TestUtils.testCodeFails("json.stringify(math.NaN);");
+    }
+}
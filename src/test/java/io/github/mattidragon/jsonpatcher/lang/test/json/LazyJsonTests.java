@@ -0,0 +1,101 @@
+package io.github.mattidragon.jsonpatcher.lang.test.json;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonException;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonReader;
+import io.github.mattidragon.jsonpatcher.lang.json.JsonWriter;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LazyJsonTests {
+    private static final String DOCUMENT = """
+            {
+              "type": "chest",
+              "pools": [
+                { "rolls": 1, "entries": [ { "name": "a" } ] },
+                { "rolls": 3, "entries": [ "b\\n", "é" ] }
+              ],
+              "numbers": [ 1, 2.5, -3e2 ]
+            }""";
+
+    private static Value readLazy(String json) {
+        return JsonReader.DEFAULT.readLazy(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testMatchesEagerReading() {
+        TestUtils.assertEquals(JsonReader.DEFAULT.read(DOCUMENT), readLazy(DOCUMENT));
+        TestUtils.assertEquals(JsonReader.DEFAULT.read("[1, \"a\", null]"), readLazy("[1, \"a\", null]"));
+        TestUtils.assertEquals(new Value.NumberValue(5), readLazy(" 5 "));
+    }
+
+    @Test
+    public void testUntouchedValuesAreCopied() {
+        var value = readLazy(DOCUMENT);
+        assertEquals(DOCUMENT, JsonWriter.COMPACT.writeToString(value));
+        assertEquals(DOCUMENT, new String(JsonWriter.COMPACT.toBytes(value), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOnlyReadValuesAreDecoded() {
+        var root = (Value.ObjectValue) readLazy(DOCUMENT);
+        var pools = (Value.ArrayValue) root.value().get("pools");
+        ((Value.ObjectValue) pools.value().get(1)).value().put("rolls", new Value.NumberValue(4));
+
+        // The first pool and the numbers were never read, so they keep their formatting
+        assertEquals("""
+                {"type":"chest","pools":[{ "rolls": 1, "entries": [ { "name": "a" } ] },{"rolls":4,"entries":[ "b\\n", "é" ]}],"numbers":[ 1, 2.5, -3e2 ]}""",
+                JsonWriter.COMPACT.writeToString(root));
+    }
+
+    @Test
+    public void testPatchOnLazyRoot() {
+        for (var engine : ExecutionEngine.values()) {
+            var root = (Value.ObjectValue) readLazy(DOCUMENT);
+            var program = engine.prepare(TestUtils.parse("""
+                    $pools[0].rolls = $pools[1].rolls + 1;
+                    $pools[0].entries[0].name = "c";
+                    """));
+            program.execute(EvaluationContext.builder(TestUtils.CONFIG).debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER).root(root).build());
+
+            assertEquals("""
+                    {"type":"chest","pools":[{"rolls":4,"entries":[{"name":"c"}]},{"rolls":3,"entries":[ "b\\n", "é" ]}],"numbers":[ 1, 2.5, -3e2 ]}""",
+                    JsonWriter.COMPACT.writeToString(root), "Wrong output with engine " + engine);
+        }
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        var root = (Value.ObjectValue) readLazy(DOCUMENT);
+        var copy = new Value.ObjectValue(root.value());
+        copy.value().put("type", new Value.StringValue("barrel"));
+        ((Value.ArrayValue) copy.value().get("numbers")).value().add(new Value.NumberValue(4));
+
+        assertEquals(new Value.StringValue("chest"), root.value().get("type"));
+        // Nested values are shared by copies, like they are for other values
+        assertEquals(4, ((Value.ArrayValue) root.value().get("numbers")).value().size());
+    }
+
+    @Test
+    public void testInvalidJsonFailsImmediately() {
+        assertThrows(JsonException.class, () -> readLazy("{\"a\": [1, {\"b\": tru}]}"));
+        assertThrows(JsonException.class, () -> readLazy("{\"a\": [1, \"\\x\"]}"));
+        assertThrows(JsonException.class, () -> readLazy("[[]"));
+        assertThrows(JsonException.class, () -> readLazy("[] []"));
+        assertThrows(JsonException.class, () -> JsonReader.DEFAULT.withMaxDepth(2).readLazy("[[[]]]".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(JsonException.class, () -> JsonReader.DEFAULT.withAllowDuplicateKeys(false).readLazy("[{\"a\": 1, \"a\": 2}]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testDuplicateKeys() {
+        var value = (Value.ObjectValue) readLazy("{\"a\": 1, \"b\": 2, \"a\": 3}");
+        assertEquals(new Value.NumberValue(3), value.value().get("a"));
+        assertEquals(2, value.value().size());
+    }
+}
@@ -0,0 +1,137 @@
+package io.github.mattidragon.jsonpatcher.lang.test.optimize;
+
+import io.github.mattidragon.jsonpatcher.lang.LangConfig;
+import io.github.mattidragon.jsonpatcher.lang.SimpleLangConfig;
+import io.github.mattidragon.jsonpatcher.lang.optimize.Optimizer;
+import io.github.mattidragon.jsonpatcher.lang.parse.Lexer;
+import io.github.mattidragon.jsonpatcher.lang.parse.Parser;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Program;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ConstantLiteralExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ValueExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.function.PatchFunction;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.BlockStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ExpressionStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.FunctionDeclarationStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.VariableCreationStatement;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OptimizerTests {
+    private static final LangConfig CONFIG = new SimpleLangConfig(false, true, Optimizer.standard());
+
+    private static Program parse(String code, LangConfig config) {
+        var result = Parser.parse(config, Lexer.lex(config, code, "test file").tokens());
+        assertTrue(result.errors().isEmpty(), "Expected successful parse");
+        return result.program();
+    }
+
+    @Test
+    public void testConstantFolding() {
+        var program = parse("""
+                val a = 1 + 2 * 3;
+                val b = "a" + "b";
+                val c = !(1 < 2) || -4 == -4;
+                val d = true ? 1 : 2;
+                """, CONFIG);
+        assertEquals(new Value.NumberValue(7), initializer(program, 0));
+        assertEquals(new Value.StringValue("ab"), initializer(program, 1));
+        assertEquals(Value.BooleanValue.TRUE, initializer(program, 2));
+        assertEquals(new Value.NumberValue(1), initializer(program, 3));
+    }
+
+    @Test
+    public void testFailingOperationsAreKept() {
+        var program = parse("""
+                val a = 1 + "a";
+                """, CONFIG);
+        var statement = assertInstanceOf(VariableCreationStatement.class, program.statements().getFirst());
+        assertFalse(statement.initializer() instanceof ValueExpression);
+    }
+
+    @Test
+    public void testDeadCodeElimination() {
+        var program = parse("""
+                if (false) debug.log(1);
+                while (1 > 2) debug.log(2);
+                1;
+                function test() {
+                    return 1;
+                    debug.log(3);
+                }
+                """, CONFIG);
+        assertEquals(1, program.statements().size());
+        var function = assertInstanceOf(FunctionDeclarationStatement.class, program.statements().getFirst());
+        var body = assertInstanceOf(BlockStatement.class, function.value().body());
+        assertEquals(1, body.statements().size());
+    }
+
+    @Test
+    public void testLiteralsAreCopied() {
+        var program = parse("""
+                var results = [];
+                for (var i = 0; i < 2; i++) {
+                    val value = [1, {a: [2]}];
+                    value[1].a.push(i);
+                    results.push(value);
+                }
+                testResult(results);
+                """, CONFIG);
+        var output = new Value[1];
+        var context = EvaluationContext.builder(CONFIG)
+                .debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER)
+                .variable("testResult", new Value.FunctionValue((PatchFunction.BuiltInPatchFunction) (ctx, args, pos) -> {
+                    output[0] = args.getFirst();
+                    return Value.NullValue.NULL;
+                }))
+                .build();
+        program.execute(context);
+
+        TestUtils.assertEquals(parseValue("[[1, {a: [2, 0]}], [1, {a: [2, 1]}]]"), output[0]);
+    }
+
+    @Test
+    public void testHoisting() {
+        var program = parse("""
+                val a = [1, [2, 3], {b: "c"}];
+                val b = [1, a];
+                """, CONFIG);
+        var first = assertInstanceOf(VariableCreationStatement.class, program.statements().get(0));
+        assertInstanceOf(ConstantLiteralExpression.class, first.initializer());
+        var second = assertInstanceOf(VariableCreationStatement.class, program.statements().get(1));
+        assertFalse(second.initializer() instanceof ConstantLiteralExpression);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        var program = parse("""
+                1 + 2;
+                """, TestUtils.CONFIG);
+        var statement = assertInstanceOf(ExpressionStatement.class, program.statements().getFirst());
+        assertFalse(statement.expression() instanceof ValueExpression);
+    }
+
+    @Test
+    public void testDump() {
+        var output = new StringBuilder();
+        var config = new SimpleLangConfig(false, true, Optimizer.standard().withDump(output::append));
+        parse("val a = 1 + 2;", config);
+        assertEquals("""
+                Program layout=FrameLayout[size=1]
+                  VariableCreationStatement name=a mutable=false slot=VariableSlot[depth=0, index=0]
+                    ValueExpression value=3.0
+                """, output.toString());
+    }
+
+    private static Value initializer(Program program, int index) {
+        var statement = assertInstanceOf(VariableCreationStatement.class, program.statements().get(index));
+        return assertInstanceOf(ValueExpression.class, statement.initializer()).value();
+    }
+
+    private static Value parseValue(String code) {
+        return Parser.parseExpression(TestUtils.CONFIG, Lexer.lex(TestUtils.CONFIG, code, "test file").tokens()).evaluate(TestUtils.createTestContext());
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.mattidragon.jsonpatcher.lang.test.parser;
+
+import io.github.mattidragon.jsonpatcher.lang.parse.Lexer;
+import io.github.mattidragon.jsonpatcher.lang.parse.Parser;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.BlockStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ExpressionStatement;
+import io.github.mattidragon.jsonpatcher.lang.runtime.statement.ForEachLoopStatement;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VariableResolverTests {
+    @Test
+    public void testSlotsAreAssigned() {
+        var program = Parser.parse(TestUtils.CONFIG, Lexer.lex(TestUtils.CONFIG, """
+                val a = 1;
+                {
+                    val b = 2;
+                    a;
+                    debug;
+                }
+                """, "test file").tokens()).program();
+
+        assertEquals(1, program.layout().size());
+        var block = assertInstanceOf(BlockStatement.class, program.statements().get(1));
+        assertEquals(1, block.layout().size());
+
+        var outer = assertInstanceOf(VariableAccessExpression.class, assertInstanceOf(ExpressionStatement.class, block.statements().get(1)).expression());
+        assertEquals(1, outer.slot().depth());
+        assertEquals(0, outer.slot().index());
+
+        var library = assertInstanceOf(VariableAccessExpression.class, assertInstanceOf(ExpressionStatement.class, block.statements().get(2)).expression());
+        assertFalse(library.slot().isResolved(), "Builtins should be looked up by name");
+    }
+
+    @Test
+    public void testEmptyScopesAreElided() {
+        var program = Parser.parse(TestUtils.CONFIG, Lexer.lex(TestUtils.CONFIG, """
+                val a = 1;
+                {
+                    a;
+                }
+                {
+                    delete a;
+                }
+                """, "test file").tokens()).program();
+
+        var elided = assertInstanceOf(BlockStatement.class, program.statements().get(1));
+        assertTrue(elided.layout().isElided());
+        var access = assertInstanceOf(VariableAccessExpression.class, assertInstanceOf(ExpressionStatement.class, elided.statements().getFirst()).expression());
+        assertEquals(0, access.slot().depth(), "Contents of elided scopes should bind to the surrounding scope");
+
+        var deleting = assertInstanceOf(BlockStatement.class, program.statements().get(2));
+        assertFalse(deleting.layout().isElided(), "Scopes with deletes need their frame");
+        TestUtils.testCodeFails("val a = 1; { delete a; }");
+    }
+
+    @Test
+    public void testLoopFrames() {
+        var program = Parser.parse(TestUtils.CONFIG, Lexer.lex(TestUtils.CONFIG, """
+                foreach (a in [1, 2]) a;
+                foreach (b in [1, 2]) () -> b;
+                """, "test file").tokens()).program();
+
+        assertFalse(assertInstanceOf(ForEachLoopStatement.class, program.statements().get(0)).layout().isCaptured());
+        assertTrue(assertInstanceOf(ForEachLoopStatement.class, program.statements().get(1)).layout().isCaptured());
+    }
+
+    @Test
+    public void testReusedLoopFrames() {
+        TestUtils.testCode("""
+                var sum = 0;
+                foreach (value in [1, 2, 3]) {
+                    val doubled = value * 2;
+                    sum += doubled;
+                }
+                foreach (value in [4, 5]) sum += value;
+                testResult(sum);
+                """, new Value.NumberValue(21));
+        TestUtils.testCode("""
+                val getters = [];
+                foreach (value in [1, 2, 3]) getters.push(() -> value);
+                testResult(getters[0]() + getters[2]());
+                """, new Value.NumberValue(4));
+    }
+
+    @Test
+    public void testForwardReferenceFromFunction() {
+        TestUtils.testCode("""
+                function first() {
+                    return second() + 1;
+                }
+                function second() {
+                    return later;
+                }
+                val later = 2;
+                testResult(first());
+                """, new Value.NumberValue(3));
+    }
+
+    @Test
+    public void testRecursion() {
+        TestUtils.testCode("""
+                function fib(n) {
+                    if (n < 2) return n;
+                    return fib(n - 1) + fib(n - 2);
+                }
+                testResult(fib(10));
+                """, new Value.NumberValue(55));
+    }
+
+    @Test
+    public void testClosuresCaptureIterationFrames() {
+        TestUtils.testCode("""
+                var getters = [];
+                foreach (i in [1, 2, 3]) {
+                    getters.push(() -> i);
+                }
+                testResult(getters[0]() + getters[2]());
+                """, new Value.NumberValue(4));
+    }
+
+    @Test
+    public void testAssignmentToOuterVariable() {
+        TestUtils.testCode("""
+                var sum = 0;
+                for (var i = 0; i < 5; i++) {
+                    sum += i;
+                }
+                testResult(sum);
+                """, new Value.NumberValue(10));
+    }
+
+    @Test
+    public void testShadowingFails() {
+        TestUtils.testCodeFails("""
+                val a = 1;
+                {
+                    val a = 2;
+                }
+                """);
+        TestUtils.testCodeFails("""
+                val debug = 1;
+                """);
+        TestUtils.testCodeFails("""
+                val a = 1;
+                val a = 2;
+                """);
+    }
+
+    @Test
+    public void testShadowingAfterScopeEnds() {
+        TestUtils.testCode("""
+                {
+                    val a = 1;
+                }
+                val a = 2;
+                testResult(a);
+                """, new Value.NumberValue(2));
+    }
+
+    @Test
+    public void testImmutableAssignmentFails() {
+        TestUtils.testCodeFails("""
+                val a = 1;
+                a = 2;
+                """);
+    }
+
+    @Test
+    public void testDelete() {
+        TestUtils.testCode("""
+                var a = 1;
+                delete a;
+                var a = 2;
+                testResult(a);
+                """, new Value.NumberValue(2));
+        TestUtils.testCodeFails("""
+                val a = 1;
+                {
+                    delete a;
+                }
+                """);
+        TestUtils.testCodeFails("""
+                val a = 1;
+                delete a;
+                a;
+                """);
+    }
+
+    @Test
+    public void testReadBeforeDeclarationFails() {
+        TestUtils.testCodeFails("""
+                a;
+                val a = 1;
+                """);
+    }
+}
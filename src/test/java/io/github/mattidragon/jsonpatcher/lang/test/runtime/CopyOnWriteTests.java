@@ -0,0 +1,94 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CopyOnWriteTests {
+    private static Value number(double value) {
+        return new Value.NumberValue(value);
+    }
+
+    @Test
+    public void testArrayCopies() {
+        var original = new Value.ArrayValue(List.of(number(1), number(2)));
+        var first = new Value.ArrayValue(original.value());
+        var second = new Value.ArrayValue(original.value());
+
+        first.value().add(number(3));
+        second.value().add(number(4));
+        second.value().set(0, number(5));
+        original.value().remove(1);
+
+        assertEquals(List.of(number(1)), original.value());
+        assertEquals(List.of(number(1), number(2), number(3)), first.value());
+        assertEquals(List.of(number(5), number(2), number(4)), second.value());
+    }
+
+    @Test
+    public void testSlices() {
+        var original = new Value.ArrayValue(List.of(number(1), number(2), number(3), number(4)));
+        var slice = original.slice(1, 3);
+        assertEquals(List.of(number(2), number(3)), slice.value());
+
+        slice.value().add(number(5));
+        original.value().set(1, number(6));
+        assertEquals(List.of(number(2), number(3), number(5)), slice.value());
+        assertEquals(List.of(number(1), number(6), number(3), number(4)), original.value());
+        assertEquals(List.of(number(3)), slice.slice(1, 2).value());
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.slice(2, 4));
+    }
+
+    @Test
+    public void testObjectCopies() {
+        var original = new Value.ObjectValue(Map.of("a", number(1)));
+        var first = new Value.ObjectValue(original.value());
+        var second = new Value.ObjectValue(original.value());
+
+        first.value().put("b", number(2));
+        second.value().put("c", number(3));
+        second.value().put("a", number(4));
+
+        assertEquals(Map.of("a", number(1)), original.value());
+        assertEquals(Map.of("a", number(1), "b", number(2)), first.value());
+        assertEquals(Map.of("a", number(4), "c", number(3)), second.value());
+    }
+
+    @Test
+    public void testSharedDictionary() {
+        var original = new Value.ObjectValue();
+        for (int i = 0; i < 40; i++) {
+            original.value().put("key" + i, number(i));
+        }
+        original.value().remove("key0");
+        var copy = new Value.ObjectValue(original.value());
+
+        copy.value().entrySet().removeIf(entry -> entry.getKey().endsWith("1"));
+        copy.value().entrySet().iterator().next().setValue(number(-1));
+        assertEquals(39, original.value().size());
+        assertEquals(number(1), original.value().get("key1"));
+        assertEquals(number(-1), copy.value().get("key2"));
+        assertEquals(number(2), original.value().get("key2"));
+        assertFalse(copy.value().containsKey("key1"));
+    }
+
+    @Test
+    public void testMergeLoops() {
+        TestUtils.testCode("""
+                var array = [];
+                var object = {};
+                val copies = [];
+                for (var i = 0; i < 100; i++) {
+                    array = array + [i];
+                    object = object + { value: i };
+                    if (i % 10 == 0) copies.push(array);
+                }
+                testResult([array.length, object.value, copies[1].length, copies[1][10], arrays.slice(array, 98).length]);
+                """, new Value.ArrayValue(List.of(number(100), number(99), number(11), number(10), number(2))));
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrozenValueTests {
+    @Test
+    public void testFreezeIsDeep() {
+        var inner = new Value.ArrayValue(List.of(new Value.NumberValue(1)));
+        var object = new Value.ObjectValue(Map.of("inner", inner));
+        var frozen = object.freeze();
+
+        assertTrue(frozen.isFrozen());
+        assertFalse(object.isFrozen(), "Freezing should copy");
+        var frozenInner = assertInstanceOf(Value.ArrayValue.class, frozen.value().get("inner"));
+        assertTrue(frozenInner.isFrozen());
+        assertSame(frozen, frozen.freeze());
+
+        assertThrowsExactly(EvaluationException.class, () -> frozen.set("a", Value.NullValue.NULL, TestUtils.CONFIG, TestUtils.POS));
+        assertThrowsExactly(EvaluationException.class, () -> frozen.remove("inner", TestUtils.CONFIG, TestUtils.POS));
+        assertThrowsExactly(EvaluationException.class, () -> frozenInner.set(0, Value.NullValue.NULL, TestUtils.CONFIG, TestUtils.POS));
+    }
+
+    @Test
+    public void testFreezeKeepsCycles() {
+        var object = new Value.ObjectValue();
+        object.value().put("self", object);
+        var frozen = object.freeze();
+        assertSame(frozen, frozen.value().get("self"));
+    }
+
+    @Test
+    public void testCopiesAreMutable() {
+        var frozen = new Value.ObjectValue(Map.of("a", new Value.NumberValue(1))).freeze();
+        var copy = new Value.ObjectValue(frozen.value());
+        assertFalse(copy.isFrozen());
+        copy.set("b", Value.NullValue.NULL, TestUtils.CONFIG, TestUtils.POS);
+    }
+
+    @Test
+    public void testLibrariesAreShared() {
+        var first = TestUtils.createTestContext().variables().getVariable("math", TestUtils.POS);
+        var second = TestUtils.createTestContext().variables().getVariable("math", TestUtils.POS);
+        assertSame(first, second);
+    }
+
+    @Test
+    public void testLibrariesAreFrozen() {
+        TestUtils.testCodeFails("math.PI = 3;");
+        TestUtils.testCodeFails("delete math.PI;");
+        TestUtils.testCodeFails("objects[\"keys\"] = null;");
+    }
+}
@@ -43,4 +43,69 @@ public class FunctionTests {
                 """;
         TestUtils.testCode(code);
     }
+    
+    @Test
+    public void returnFromNestedScopes() {
+        var code = """
+                function find(values, target) {
+                    foreach (value in values) {
+                        if (value == target) {
+                            return value * 2;
+                        }
+                    }
+                    return -1;
+                }
+                function nothing() {
+                    return;
+                }
+                debug.assert(find([1, 2, 3], 2) == 4, "found");
+                debug.assert(find([1, 2, 3], 5) == -1, "missing");
+                debug.assert(nothing() == null, "empty return");
+                debug.assert(find([find([1], 1)], 2) == 4, "nested call");
+                """;
+        TestUtils.testCode(code);
+    }
+
+    @Test
+    public void argumentCounts() {
+        var code = """
+                function fixed(a, b) {
+                    return a + b;
+                }
+                function defaults(a, b = 2) {
+                    return a + b;
+                }
+                function rest(a, b*) {
+                    return b.length;
+                }
+                debug.assert(fixed(1, 2) == 3, "fixed");
+                debug.assert(defaults(1) == 3, "default");
+                debug.assert(defaults(1, 1) == 2, "default passed");
+                debug.assert(rest(1) == 0, "empty varargs");
+                debug.assert(rest(1, 2, 3, 4, 5, 6) == 5, "many varargs");
+                """;
+        TestUtils.testCode(code);
+        TestUtils.testCodeFails("function fixed(a, b) {} fixed(1);");
+        TestUtils.testCodeFails("function fixed(a, b) {} fixed(1, 2, 3);");
+        TestUtils.testCodeFails("function defaults(a, b = 2) {} defaults();");
+    }
+
+    @Test
+    public void callSitesCheckEachCallee() {
+        var code = """
+                function one(a) {
+                    return a;
+                }
+                function two(a, b = 1) {
+                    return a + b;
+                }
+                var total = 0;
+                foreach (callee in [one, two, one, two]) {
+                    total += callee(1);
+                }
+                debug.assert(total == 6, "total");
+                """;
+        TestUtils.testCode(code);
+        TestUtils.testCodeFails("function one(a) {} function two(a, b) {} foreach (callee in [one, one, two]) callee(1);");
+    }
 }
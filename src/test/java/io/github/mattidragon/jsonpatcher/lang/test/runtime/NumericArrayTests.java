@@ -0,0 +1,91 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NumericArrayTests {
+    private static Value number(double value) {
+        return new Value.NumberValue(value);
+    }
+
+    @Test
+    public void testRepresentation() {
+        var array = new Value.ArrayValue(List.of(number(1), number(2)));
+        assertTrue(array.isNumeric());
+        assertEquals(2, array.getDouble(-1, TestUtils.CONFIG, TestUtils.POS));
+
+        array.value().set(0, number(3));
+        array.value().add(0, number(4));
+        assertTrue(array.isNumeric());
+        assertEquals(List.of(number(4), number(3), number(2)), array.value());
+
+        array.value().add(new Value.StringValue("a"));
+        assertFalse(array.isNumeric());
+        assertEquals(List.of(number(4), number(3), number(2), new Value.StringValue("a")), array.value());
+
+        array.value().clear();
+        array.value().add(number(5));
+        assertTrue(array.isNumeric());
+        assertFalse(new Value.ArrayValue().isNumeric());
+    }
+
+    @Test
+    public void testSharing() {
+        var array = new Value.ArrayValue(List.of(number(1), number(2), number(3)));
+        var copy = new Value.ArrayValue(array.value());
+        var slice = array.slice(1, 3);
+        copy.value().set(0, Value.NullValue.NULL);
+        slice.value().addAll(array.value());
+        array.value().removeIf(value -> ((Value.NumberValue) value).value() > 1);
+
+        assertEquals(List.of(number(1)), array.value());
+        assertEquals(List.of(Value.NullValue.NULL, number(2), number(3)), copy.value());
+        assertEquals(List.of(number(2), number(3), number(1), number(2), number(3)), slice.value());
+        assertTrue(array.isNumeric());
+        assertTrue(slice.isNumeric());
+        assertFalse(copy.isNumeric());
+    }
+
+    @Test
+    public void testValueReadsKeepNumbers() {
+        var numbers = new Value.ArrayValue(List.of(number(1), number(2), number(3)));
+        for (int pass = 0; pass < 4; pass++) {
+            numbers.value().forEach(value -> assertInstanceOf(Value.NumberValue.class, value));
+        }
+        assertTrue(numbers.isNumeric());
+        assertEquals(List.of(number(1), number(2), number(3)), numbers.value());
+    }
+
+    @Test
+    public void testCode() {
+        TestUtils.testCode("""
+                val weights = [0.5, 1, 2];
+                var total = 0;
+                for (var i = 0; i < weights.length; i++) {
+                    total += weights[i] * 2;
+                }
+                weights[0] = "heavy";
+                testResult([total, weights.map((weight) -> weight + weight)[1], weights[0]]);
+                """, new Value.ArrayValue(List.of(number(7), number(2), new Value.StringValue("heavy"))));
+    }
+
+    @Test
+    public void testLoopsAndCallbacks() {
+        TestUtils.testCode("""
+                val numbers = [1, 2, 3, 4];
+                var total = 0;
+                var last = 0;
+                foreach (number in numbers) {
+                    if (number == 3) numbers[3] = "four";
+                    if (number != "four") total += number;
+                    last = number;
+                }
+                testResult([total, last, numbers.map((number) -> number + number)[3], [1, 2, 3].reduce((a, b) -> a + b, 0)]);
+                """, new Value.ArrayValue(List.of(number(6), new Value.StringValue("four"), new Value.StringValue("fourfour"), number(6))));
+    }
+}
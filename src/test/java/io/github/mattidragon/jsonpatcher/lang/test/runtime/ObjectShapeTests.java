@@ -0,0 +1,102 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ImplicitRootExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.PropertyAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectShapeTests {
+    private static Value.ObjectValue object(String... keys) {
+        var object = new Value.ObjectValue();
+        for (int i = 0; i < keys.length; i++) {
+            object.value().put(keys[i], new Value.NumberValue(i));
+        }
+        return object;
+    }
+
+    @Test
+    public void testSharedShapes() {
+        var first = object("type", "ingredients", "result");
+        var second = object("type", "ingredients", "result");
+        assertNotNull(first.shape());
+        assertSame(first.shape(), second.shape());
+        assertNotSame(first.shape(), object("result", "type", "ingredients").shape());
+        assertSame(first.shape(), first.freeze().shape());
+
+        var index = first.shape().indexOf("result");
+        assertEquals(new Value.NumberValue(2), first.getAt(index));
+        assertEquals(-1, first.shape().indexOf("missing"));
+    }
+
+    @Test
+    public void testInsertionOrder() {
+        var object = object("a", "b", "c");
+        object.value().put("b", new Value.StringValue("b"));
+        assertEquals(List.of("a", "b", "c"), List.copyOf(object.value().keySet()));
+
+        object.value().remove("a");
+        assertNull(object.shape());
+        object.value().put("a", new Value.StringValue("a"));
+        assertEquals(List.of("b", "c", "a"), List.copyOf(object.value().keySet()));
+    }
+
+    @Test
+    public void testIteratorRemoval() {
+        var object = object("a", "b", "c", "d");
+        object.value().entrySet().removeIf(entry -> ((Value.NumberValue) entry.getValue()).value() % 2 == 0);
+        assertEquals(List.of("b", "d"), List.copyOf(object.value().keySet()));
+
+        var copy = object("a", "b");
+        copy.value().replaceAll((key, value) -> new Value.StringValue(key));
+        var expected = new LinkedHashMap<String, Value>();
+        expected.put("a", new Value.StringValue("a"));
+        expected.put("b", new Value.StringValue("b"));
+        assertEquals(expected, copy.value());
+    }
+
+    @Test
+    public void testManyKeys() {
+        var object = new Value.ObjectValue();
+        for (int i = 0; i < 100; i++) {
+            object.value().put("key" + i, new Value.NumberValue(i));
+        }
+        // Large objects fall back to a plain map instead of creating a shape per size
+        assertNull(object.shape());
+        assertEquals(100, object.value().size());
+        assertEquals(new Value.NumberValue(99), object.value().get("key99"));
+    }
+
+    @Test
+    public void testInlineCache() {
+        var context = TestUtils.createTestContext();
+        var expression = new PropertyAccessExpression(new VariableAccessExpression("x", TestUtils.POS), "b", TestUtils.POS, TestUtils.POS);
+
+        context.variables().createVariable("x", object("a", "b"), true, TestUtils.POS);
+        assertEquals(new Value.NumberValue(1), expression.evaluate(context));
+        context.variables().setVariable("x", object("b"), TestUtils.POS);
+        assertEquals(new Value.NumberValue(0), expression.evaluate(context));
+        context.variables().setVariable("x", object("a", "b"), TestUtils.POS);
+        assertEquals(new Value.NumberValue(1), expression.evaluate(context));
+        context.variables().setVariable("x", new Value.ObjectValue(Map.of("b", new Value.StringValue("b"))).freeze(), TestUtils.POS);
+        assertEquals(new Value.StringValue("b"), expression.evaluate(context));
+        assertFalse(expression.feedback().isGeneric());
+    }
+
+    @Test
+    public void testImplicitRoot() {
+        var expression = new ImplicitRootExpression("b", TestUtils.POS);
+        var first = TestUtils.createTestContext().withRoot(object("a", "b"));
+        var second = TestUtils.createTestContext().withRoot(object("b"));
+        assertEquals(new Value.NumberValue(1), expression.get(first));
+        assertEquals(new Value.NumberValue(0), expression.get(second));
+        assertEquals(new Value.NumberValue(1), expression.get(first));
+    }
+}
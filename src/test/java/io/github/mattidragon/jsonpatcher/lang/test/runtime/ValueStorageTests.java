@@ -0,0 +1,198 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime;
+
+import io.github.mattidragon.jsonpatcher.lang.compile.ExecutionEngine;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ArrayStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationContext;
+import io.github.mattidragon.jsonpatcher.lang.runtime.ObjectStorage;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ValueStorageTests {
+    // A minimal json tree standing in for the tree model of a host
+    private sealed interface Node {}
+
+    private record ObjectNode(Map<String, Node> children) implements Node {
+        ObjectNode() {
+            this(new LinkedHashMap<>());
+        }
+
+        ObjectNode with(String key, Node child) {
+            children.put(key, child);
+            return this;
+        }
+    }
+
+    private record ArrayNode(List<Node> children) implements Node {
+        ArrayNode(Node... children) {
+            this(new ArrayList<>(List.of(children)));
+        }
+    }
+
+    private record LeafNode(Object value) implements Node {}
+
+    private static final class NodeObjectStorage extends ObjectStorage {
+        private final ObjectNode node;
+
+        private NodeObjectStorage(ObjectNode node) {
+            this.node = node;
+        }
+
+        @Override
+        protected Value getValue(String key) {
+            var child = node.children.get(key);
+            return child == null ? null : toValue(child);
+        }
+
+        @Override
+        protected Value putValue(String key, Value value) {
+            var previous = node.children.put(key, toNode(value));
+            return previous == null ? null : toValue(previous);
+        }
+
+        @Override
+        protected Value removeValue(String key) {
+            var previous = node.children.remove(key);
+            return previous == null ? null : toValue(previous);
+        }
+
+        @Override
+        protected Iterator<String> keys() {
+            return node.children.keySet().iterator();
+        }
+
+        @Override
+        public int size() {
+            return node.children.size();
+        }
+    }
+
+    private static final class NodeArrayStorage extends ArrayStorage {
+        private final ArrayNode node;
+
+        private NodeArrayStorage(ArrayNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public Value get(int index) {
+            return toValue(node.children.get(index));
+        }
+
+        @Override
+        public Value set(int index, Value element) {
+            return toValue(node.children.set(index, toNode(element)));
+        }
+
+        @Override
+        public void add(int index, Value element) {
+            node.children.add(index, toNode(element));
+        }
+
+        @Override
+        public Value remove(int index) {
+            return toValue(node.children.remove(index));
+        }
+
+        @Override
+        public int size() {
+            return node.children.size();
+        }
+    }
+
+    private static Value toValue(Node node) {
+        return switch (node) {
+            case ObjectNode object -> new Value.ObjectValue(new NodeObjectStorage(object));
+            case ArrayNode array -> new Value.ArrayValue(new NodeArrayStorage(array));
+            case LeafNode(String string) -> new Value.StringValue(string);
+            case LeafNode(Double number) -> new Value.NumberValue(number);
+            case LeafNode(Boolean bool) -> Value.BooleanValue.of(bool);
+            case LeafNode leaf -> Value.NullValue.NULL;
+        };
+    }
+
+    // Values backed by nodes are unwrapped, only values created by the patch are converted
+    private static Node toNode(Value value) {
+        return switch (value) {
+            case Value.ObjectValue object when object.value() instanceof NodeObjectStorage storage -> storage.node;
+            case Value.ArrayValue array when array.value() instanceof NodeArrayStorage storage -> storage.node;
+            case Value.ObjectValue object -> {
+                var node = new ObjectNode();
+                object.value().forEach((key, child) -> node.with(key, toNode(child)));
+                yield node;
+            }
+            case Value.ArrayValue array -> new ArrayNode(new ArrayList<>(array.value().stream().map(ValueStorageTests::toNode).toList()));
+            case Value.StringValue(var string) -> new LeafNode(string);
+            case Value.NumberValue(var number) -> new LeafNode(number);
+            case Value.BooleanValue bool -> new LeafNode(bool.value());
+            case Value.NullValue ignored -> new LeafNode(null);
+            case Value.FunctionValue ignored -> throw new IllegalArgumentException("Functions can't be stored in nodes");
+        };
+    }
+
+    @Test
+    public void testPatchWritesThroughToTree() {
+        for (var engine : ExecutionEngine.values()) {
+            var pool = new ObjectNode().with("rolls", new LeafNode(1.0));
+            var big = new ObjectNode().with("a", new LeafNode("x")).with("b", new ArrayNode(new LeafNode(true)));
+            var untouched = new ArrayNode(new LeafNode(1.0), new LeafNode(2.0));
+            var root = new ObjectNode()
+                    .with("pools", new ArrayNode(pool))
+                    .with("big", big)
+                    .with("untouched", untouched);
+
+            var program = engine.prepare(TestUtils.parse("""
+                    $pools[0].rolls = $pools[0].rolls + 1;
+                    $pools[0].entries = [{ name: "stone" }];
+                    $big.b[0] = $big.a;
+                    delete $big.a;
+                    """));
+            var context = EvaluationContext.builder(TestUtils.CONFIG)
+                    .debugConsumer(TestUtils.EMPTY_DEBUG_CONSUMER)
+                    .root((Value.ObjectValue) toValue(root))
+                    .build();
+            program.execute(context);
+
+            // The tree was changed in place, with untouched parts left as they were
+            assertSame(pool, ((ArrayNode) root.children.get("pools")).children.getFirst(), "Failed with engine " + engine);
+            assertSame(untouched, root.children.get("untouched"));
+            assertEquals(List.of(new LeafNode(1.0), new LeafNode(2.0)), untouched.children);
+            assertEquals(new LeafNode(2.0), pool.children.get("rolls"));
+            assertEquals(new ArrayNode(new ObjectNode().with("name", new LeafNode("stone"))), pool.children.get("entries"));
+            assertEquals(Map.of("b", new ArrayNode(new LeafNode("x"))), big.children);
+        }
+    }
+
+    @Test
+    public void testCopiesDetach() {
+        var node = new ObjectNode().with("a", new LeafNode(1.0));
+        var object = (Value.ObjectValue) toValue(node);
+        var copy = new Value.ObjectValue(object.value());
+        copy.value().put("b", new Value.NumberValue(2));
+
+        // Copies use the default storage, so the tree is left alone
+        assertEquals(Map.of("a", new LeafNode(1.0)), node.children);
+        assertNotNull(copy.shape());
+        assertEquals(2, copy.value().size());
+    }
+
+    @Test
+    public void testIteration() {
+        var node = new ObjectNode().with("a", new LeafNode(1.0)).with("b", new LeafNode(2.0)).with("c", new LeafNode(3.0));
+        var object = (Value.ObjectValue) toValue(node);
+        object.value().entrySet().removeIf(entry -> entry.getKey().equals("b"));
+        object.value().entrySet().forEach(entry -> entry.setValue(new Value.StringValue(entry.getKey())));
+
+        assertEquals(List.of("a", "c"), List.copyOf(node.children.keySet()));
+        assertEquals(new LeafNode("c"), node.children.get("c"));
+        TestUtils.assertEquals(new Value.ObjectValue(Map.of("a", new Value.StringValue("a"), "c", new Value.StringValue("c"))), object);
+    }
+}
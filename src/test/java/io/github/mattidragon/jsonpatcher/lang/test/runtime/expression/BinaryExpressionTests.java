@@ -1,19 +1,22 @@
 package io.github.mattidragon.jsonpatcher.lang.test.runtime.expression;
 
 import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value.BooleanValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value.ArrayValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value.NumberValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value.ObjectValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.Value.StringValue;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.BinaryExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.UnexpectedValueException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.ValueExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
 import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 import java.util.Map;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertThrowsExactly;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class BinaryExpressionTests {
     // TODO: implement more tests. Not very high priority as these are unlikely to be broken
@@ -48,4 +51,66 @@ public class BinaryExpressionTests {
         assertThrowsExactly(EvaluationException.class, () -> op.apply(new StringValue("1"), new NumberValue(2), TestUtils.POS, TestUtils.CONFIG));
         assertThrowsExactly(EvaluationException.class, () -> op.apply(new ArrayValue(List.of(new NumberValue(1))), new NumberValue(2), TestUtils.POS, TestUtils.CONFIG));
     }
+
+    @Test
+    public void testSpecialization() {
+        var context = TestUtils.createTestContext();
+        var expression = new BinaryExpression(
+                new VariableAccessExpression("x", TestUtils.POS),
+                new ValueExpression(new NumberValue(2), TestUtils.POS),
+                BinaryExpression.Operator.PLUS,
+                TestUtils.POS);
+
+        context.variables().createVariable("x", new NumberValue(1), true, TestUtils.POS);
+        assertEquals(new NumberValue(3), expression.evaluate(context));
+        assertEquals(BinaryExpression.Specialization.NUMBER_ADD, expression.feedback().specialization());
+        context.variables().setVariable("x", new NumberValue(3), TestUtils.POS);
+        assertEquals(new NumberValue(5), expression.evaluate(context));
+
+        context.variables().setVariable("x", new StringValue("1"), TestUtils.POS);
+        assertThrowsExactly(EvaluationException.class, () -> expression.evaluate(context));
+        assertTrue(expression.feedback().isGeneric());
+
+        context.variables().setVariable("x", new NumberValue(2), TestUtils.POS);
+        assertEquals(new NumberValue(4), expression.evaluate(context));
+        assertNull(expression.feedback().specialization());
+    }
+
+    @Test
+    public void testUnboxedEvaluation() {
+        var context = TestUtils.createTestContext();
+        // x * 2 + 1 < 10
+        var product = new BinaryExpression(new VariableAccessExpression("x", TestUtils.POS), new ValueExpression(new NumberValue(2), TestUtils.POS), BinaryExpression.Operator.MULTIPLY, TestUtils.POS);
+        var sum = new BinaryExpression(product, new ValueExpression(new NumberValue(1), TestUtils.POS), BinaryExpression.Operator.PLUS, TestUtils.POS);
+        var comparison = new BinaryExpression(sum, new ValueExpression(new NumberValue(10), TestUtils.POS), BinaryExpression.Operator.LESS_THAN, TestUtils.POS);
+
+        context.variables().createVariable("x", new NumberValue(3), true, TestUtils.POS);
+        assertEquals(BooleanValue.TRUE, comparison.evaluate(context));
+        assertEquals(7, sum.evaluateDouble(context));
+        assertEquals(BinaryExpression.Specialization.NUMBER_LESS_THAN, comparison.feedback().specialization());
+        context.variables().setVariable("x", new NumberValue(5), TestUtils.POS);
+        assertEquals(BooleanValue.FALSE, comparison.evaluate(context));
+
+        // A string deep inside falls back to the generic path without evaluating anything twice
+        context.variables().setVariable("x", new StringValue("a"), TestUtils.POS);
+        assertThrowsExactly(EvaluationException.class, () -> comparison.evaluate(context));
+        assertTrue(product.feedback().isGeneric());
+        context.variables().setVariable("x", new NumberValue(1), TestUtils.POS);
+        assertEquals(BooleanValue.TRUE, comparison.evaluate(context));
+
+        var concat = new BinaryExpression(new ValueExpression(new StringValue("a"), TestUtils.POS), new ValueExpression(new StringValue("b"), TestUtils.POS), BinaryExpression.Operator.PLUS, TestUtils.POS);
+        var error = assertThrowsExactly(UnexpectedValueException.class, () -> concat.evaluateDouble(context));
+        TestUtils.assertEquals(new StringValue("ab"), error.value());
+    }
+
+    @Test
+    public void testComparisons() {
+        TestUtils.testExpression("1 < 2", BooleanValue.TRUE);
+        TestUtils.testExpression("2 <= 2", BooleanValue.TRUE);
+        TestUtils.testExpression("1 > 2", BooleanValue.FALSE);
+        TestUtils.testExpression("1 >= 2", BooleanValue.FALSE);
+        TestUtils.testExpression("\"a\" == \"a\"", BooleanValue.TRUE);
+        TestUtils.testExpression("\"a\" != \"a\"", BooleanValue.FALSE);
+        assertThrowsExactly(EvaluationException.class, () -> BinaryExpression.Operator.LESS_THAN.apply(new NumberValue(1), new StringValue("2"), TestUtils.POS, TestUtils.CONFIG));
+    }
 }
@@ -0,0 +1,73 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime.expression;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.PropertyAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PropertyAccessExpressionTests {
+    @Test
+    public void testSpecialization() {
+        var context = TestUtils.createTestContext();
+        var expression = new PropertyAccessExpression(new VariableAccessExpression("x", TestUtils.POS), "length", TestUtils.POS, TestUtils.POS);
+
+        context.variables().createVariable("x", new Value.ArrayValue(List.of(new Value.NumberValue(1))), true, TestUtils.POS);
+        assertEquals(new Value.NumberValue(1), expression.evaluate(context));
+        var specialization = expression.feedback().specialization();
+        assertNotNull(specialization);
+        assertEquals(PropertyAccessExpression.Specialization.Kind.ARRAY_LENGTH, specialization.kind());
+
+        context.variables().setVariable("x", new Value.ObjectValue(Map.of("length", new Value.StringValue("a"))), TestUtils.POS);
+        assertEquals(new Value.StringValue("a"), expression.evaluate(context));
+        assertTrue(expression.feedback().isGeneric());
+
+        context.variables().setVariable("x", new Value.ObjectValue(), TestUtils.POS);
+        assertThrowsExactly(EvaluationException.class, () -> expression.evaluate(context));
+    }
+
+    @Test
+    public void testMethods() {
+        TestUtils.testCode("""
+                var values = [];
+                foreach (word in ["a", "b", "c"]) {
+                    values.push(word.length());
+                }
+                testResult(values.length);
+                """, new Value.NumberValue(3));
+    }
+
+    @Test
+    public void testDirectMethodCalls() {
+        TestUtils.testCode("""
+                var calls = 0;
+                function array() {
+                    calls++;
+                    return [1, 2];
+                }
+                val object = { double: (x) -> x * 2 };
+                val add = (a, b) -> a + b;
+                val pushed = array().push(3);
+                testResult([pushed.length, calls, object.double(2), add.bind(1)(2), "abc".length(), array().length]);
+                """, new Value.ArrayValue(List.of(new Value.NumberValue(3), new Value.NumberValue(1), new Value.NumberValue(4), new Value.NumberValue(3), new Value.NumberValue(3), new Value.NumberValue(2))));
+        TestUtils.testCodeFails("[1].missing();");
+        TestUtils.testCodeFails("[1].length();");
+    }
+
+    @Test
+    public void testMissingObjectKey() {
+        var context = TestUtils.createTestContext();
+        var expression = new PropertyAccessExpression(new VariableAccessExpression("x", TestUtils.POS), "a", TestUtils.POS, TestUtils.POS);
+
+        context.variables().createVariable("x", new Value.ObjectValue(Map.of("a", new Value.NumberValue(1))), true, TestUtils.POS);
+        assertEquals(new Value.NumberValue(1), expression.evaluate(context));
+        context.variables().setVariable("x", new Value.ObjectValue(), TestUtils.POS);
+        assertThrowsExactly(EvaluationException.class, () -> expression.evaluate(context));
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.mattidragon.jsonpatcher.lang.test.runtime.libraries;
+
+import io.github.mattidragon.jsonpatcher.lang.runtime.EvaluationException;
+import io.github.mattidragon.jsonpatcher.lang.runtime.Value;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.DisableErrorWrapping;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.FunctionName;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.GenerateBindings;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.LibraryBuilder;
+import io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.Method;
+import io.github.mattidragon.jsonpatcher.lang.test.TestUtils;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryBuilderTests {
+    private static final LibraryBuilder BUILDER = new LibraryBuilder(TestLibrary.class);
+
+    private static Value call(String name, Value... args) {
+        return BUILDER.getFunctions().get(name).execute(TestUtils.createTestContext(), List.of(args), TestUtils.POS);
+    }
+
+    @Test
+    public void testOverloads() {
+        TestUtils.assertEquals(new Value.NumberValue(0), call("count"));
+        TestUtils.assertEquals(new Value.NumberValue(2), call("count", Value.NullValue.NULL, Value.NullValue.NULL));
+        TestUtils.assertEquals(new Value.NumberValue(5), call("count", Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL));
+        assertThrowsExactly(EvaluationException.class, () -> call("count", Value.NullValue.NULL));
+        assertThrowsExactly(EvaluationException.class, () -> call("count", Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL, Value.NullValue.NULL));
+    }
+
+    @Test
+    public void testArgumentTypes() {
+        TestUtils.assertEquals(new Value.StringValue("a!"), call("shout", new Value.StringValue("a")));
+        assertThrowsExactly(EvaluationException.class, () -> call("shout", new Value.NumberValue(1)));
+    }
+
+    @Test
+    public void testVoidAndStatic() {
+        assertEquals(Value.NullValue.NULL, call("nothing"));
+        TestUtils.assertEquals(new Value.NumberValue(1), call("one"));
+    }
+
+    @Test
+    public void testErrors() {
+        var wrapped = assertThrowsExactly(EvaluationException.class, () -> call("fail"));
+        assertTrue(wrapped.getMessage().contains("Error while calling builtin function fail"));
+        var unwrapped = assertThrowsExactly(EvaluationException.class, () -> call("failDirectly"));
+        assertFalse(unwrapped.getMessage().contains("Error while calling builtin function"));
+        assertThrowsExactly(RuntimeException.class, () -> call("crash"));
+    }
+
+    @Test
+    public void testGeneratedBindings() {
+        assertTrue(BUILDER.isGenerated());
+        TestUtils.assertEquals(new Value.NumberValue(3), BUILDER.build().value().get("THREE"));
+        assertTrue(BUILDER.build().value().containsKey("count"));
+    }
+
+    @Test
+    public void testMethodFilter() {
+        var methods = new LibraryBuilder(TestLibrary.class, Method.class);
+        assertTrue(methods.isGenerated());
+        assertEquals(List.of("shout"), List.copyOf(methods.getFunctions().keySet()));
+        assertFalse(methods.build().value().containsKey("THREE"));
+    }
+
+    @Test
+    public void testReflectionFallback() {
+        // Generated bindings don't support other filters
+        var filtered = new LibraryBuilder(TestLibrary.class, new TestLibrary(), DisableErrorWrapping.class);
+        assertFalse(filtered.isGenerated());
+        assertEquals(List.of("failDirectly"), List.copyOf(filtered.getFunctions().keySet()));
+    }
+
+    @GenerateBindings
+    public static class TestLibrary {
+        public final Value.NumberValue THREE = new Value.NumberValue(3);
+
+        @FunctionName("count")
+        public Value.NumberValue count0() {
+            return new Value.NumberValue(0);
+        }
+
+        @FunctionName("count")
+        public Value.NumberValue count2(LibraryBuilder.FunctionContext context, Value a, Value b) {
+            assertNotNull(context);
+            return new Value.NumberValue(2);
+        }
+
+        @FunctionName("count")
+        public Value.NumberValue count5(Value a, Value b, Value c, Value d, Value e) {
+            return new Value.NumberValue(5);
+        }
+
+        @Method
+        public Value.StringValue shout(Value.StringValue value) {
+            return new Value.StringValue(value.value() + "!");
+        }
+
+        public void nothing() {
+        }
+
+        public static Value.NumberValue one() {
+            return new Value.NumberValue(1);
+        }
+
+        public void fail(LibraryBuilder.FunctionContext context) {
+            throw new EvaluationException(context.context().config(), "Failure", context.callPos());
+        }
+
+        @DisableErrorWrapping
+        public void failDirectly(LibraryBuilder.FunctionContext context) {
+            throw new EvaluationException(context.context().config(), "Failure", context.callPos());
+        }
+
+        public void crash() {
+            throw new IllegalStateException("Crash");
+        }
+    }
+}
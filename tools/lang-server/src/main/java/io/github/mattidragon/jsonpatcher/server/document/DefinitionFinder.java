@@ -4,7 +4,6 @@ import io.github.mattidragon.jsonpatcher.docs.data.DocEntry;
 import io.github.mattidragon.jsonpatcher.docs.data.DocType;
 import io.github.mattidragon.jsonpatcher.docs.write.DocWriter;
 import io.github.mattidragon.jsonpatcher.lang.parse.SourcePos;
-import io.github.mattidragon.jsonpatcher.lang.runtime.expression.PropertyAccessExpression;
 import io.github.mattidragon.jsonpatcher.lang.runtime.expression.VariableAccessExpression;
 import io.github.mattidragon.jsonpatcher.lang.runtime.function.FunctionArgument;
 import io.github.mattidragon.jsonpatcher.server.Util;
@@ -212,9 +211,10 @@ public class DefinitionFinder {
 
     private Optional<DocEntry> getPropertyDocs(TreeAnalysis analysis, SourcePos pos) {
         var access = analysis.getPropertyAccesses().getFirstAt(pos);
-        if (!(access instanceof PropertyAccessExpression(VariableAccessExpression variableAccess, var name, var pos1, var pos2))) {
+        if (access == null || !(access.parent() instanceof VariableAccessExpression variableAccess)) {
             return Optional.empty();
         }
+        var name = access.name();
 
         return Optional.ofNullable(analysis.getVariableDefinition(variableAccess))
                 .flatMap(this::getDocs)
@@ -137,14 +137,14 @@ public class SemanticTokenizer {
                     -> builder.addToken(pos, SemanticTokenTypes.String);
             case ValueExpression(Value.NumberValue value, var pos) 
                     -> builder.addToken(pos, SemanticTokenTypes.Number);
-            case FunctionCallExpression(PropertyAccessExpression function, var args, var funcPos) -> {
+            case FunctionCallExpression call when call.function() instanceof PropertyAccessExpression function -> {
                 tokenize(function.parent());
                 builder.addToken(function.namePos(), SemanticTokenTypes.Function);
-                tokenize(args);
+                tokenize(call.arguments());
             }
-            case FunctionCallExpression(VariableAccessExpression function, var args, var funcPos) -> {
+            case FunctionCallExpression call when call.function() instanceof VariableAccessExpression function -> {
                 builder.addToken(function.pos(), SemanticTokenTypes.Function);
-                tokenize(args);
+                tokenize(call.arguments());
             }
             case PropertyAccessExpression expression -> {
                 tokenize(expression.parent());
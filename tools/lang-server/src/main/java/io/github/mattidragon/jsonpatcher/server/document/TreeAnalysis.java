@@ -26,6 +26,7 @@ public class TreeAnalysis {
                 new ImportDefinition("arrays", true, null),
                 new ImportDefinition("functions", true, null),
                 new ImportDefinition("strings", true, null),
+                new ImportDefinition("json", true, null),
                 new ImportDefinition("metapatch", true, null),
                 new LocalDefinition("_isLibrary", false, true, null),
                 new LocalDefinition("_target", false, true, null),
@@ -26,7 +26,7 @@ import java.util.concurrent.CompletionException;
 public class DocHolder {
     private static final List<String> STDLIB_FILES = List.of(
             "arrays.jsonpatch", "debug.jsonpatch", "functions.jsonpatch",
-            "math.jsonpatch", "objects.jsonpatch", "strings.jsonpatch"
+            "json.jsonpatch", "math.jsonpatch", "objects.jsonpatch", "strings.jsonpatch"
     );
     private final LangConfig config;
     private final Map<String, FileData> files = new HashMap<>();
@@ -0,0 +1,2 @@
+// The processor only refers to the language classes by name, so it doesn't depend on the root project.
+// This lets the root project use it without a circular dependency.
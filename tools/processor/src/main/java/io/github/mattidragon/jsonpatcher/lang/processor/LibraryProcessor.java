@@ -0,0 +1,319 @@
+package io.github.mattidragon.jsonpatcher.lang.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.*;
+
+/**
+ * Generates bindings for library classes annotated with {@code GenerateBindings}, so that the {@code LibraryBuilder}
+ * doesn't need to use reflection. The generated code calls the library members directly and follows the same rules as
+ * the reflection based builder, including {@code Method}, {@code DontBind}, {@code FunctionName} and {@code DisableErrorWrapping}.
+ * <p>
+ * The language classes are referred to by name, so the processor doesn't depend on the language itself.
+ * The generated code imports the types it uses, unless their simple names clash.
+ */
+@SupportedAnnotationTypes(LibraryProcessor.GENERATE_BINDINGS)
+public class LibraryProcessor extends AbstractProcessor {
+    private static final String STDLIB = "io.github.mattidragon.jsonpatcher.lang.runtime.stdlib.";
+    static final String GENERATE_BINDINGS = STDLIB + "GenerateBindings";
+    private static final String METHOD = STDLIB + "Method";
+    private static final String DONT_BIND = STDLIB + "DontBind";
+    private static final String FUNCTION_NAME = STDLIB + "FunctionName";
+    private static final String DISABLE_ERROR_WRAPPING = STDLIB + "DisableErrorWrapping";
+    private static final String LIBRARY_BUILDER = STDLIB + "LibraryBuilder";
+    private static final String FUNCTION_CONTEXT = LIBRARY_BUILDER + ".FunctionContext";
+    private static final String VALUE = "io.github.mattidragon.jsonpatcher.lang.runtime.Value";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        var annotation = processingEnv.getElementUtils().getTypeElement(GENERATE_BINDINGS);
+        if (annotation == null) return false;
+
+        for (var element : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error("Only classes can have generated bindings", element);
+                continue;
+            }
+            if (element.getNestingKind().isNested() && !element.getModifiers().contains(Modifier.STATIC)) {
+                error("Library classes with generated bindings can't be inner classes", element);
+                continue;
+            }
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                error("Library classes with generated bindings can't be private", element);
+                continue;
+            }
+            if (!element.getTypeParameters().isEmpty()) {
+                error("Library classes with generated bindings can't be generic", element);
+                continue;
+            }
+
+            var functions = findFunctions(element);
+            var constants = findConstants(element);
+            if (functions != null && constants != null) {
+                write(element, functions, constants);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the functions of a library and checks them like the reflection based builder does.
+     * @return The functions, or null if there were errors
+     */
+    private List<Function> findFunctions(TypeElement library) {
+        var functions = new ArrayList<Function>();
+        var argCounts = new HashMap<String, Set<Integer>>();
+        var valid = true;
+
+        for (var method : ElementFilter.methodsIn(library.getEnclosedElements())) {
+            if (!method.getModifiers().contains(Modifier.PUBLIC)) continue;
+            if (hasAnnotation(method, DONT_BIND)) continue;
+            if (method.isVarArgs()) {
+                error("Library functions cannot be varargs (yet)", method);
+                valid = false;
+                continue;
+            }
+
+            var parameters = method.getParameters();
+            var hasContext = !parameters.isEmpty() && isType(parameters.get(0).asType(), FUNCTION_CONTEXT);
+            var parameterTypes = new ArrayList<String>();
+            for (int i = hasContext ? 1 : 0; i < parameters.size(); i++) {
+                var type = parameters.get(i).asType();
+                if (!isValue(type)) {
+                    error("Library function parameters must be of subclass Value, %s is not".formatted(type), parameters.get(i));
+                    valid = false;
+                }
+                parameterTypes.add(erasure(type));
+            }
+
+            var returnType = method.getReturnType();
+            if (returnType.getKind() != TypeKind.VOID && !isValue(returnType)) {
+                error("Library function return type must be of subclass Value or void, %s is not".formatted(returnType), method);
+                valid = false;
+            }
+
+            var name = method.getSimpleName().toString();
+            var nameOverride = findAnnotation(method, FUNCTION_NAME);
+            if (nameOverride != null) {
+                for (var entry : nameOverride.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        name = (String) entry.getValue().getValue();
+                    }
+                }
+            }
+
+            if (!argCounts.computeIfAbsent(name, key -> new HashSet<>()).add(parameterTypes.size())) {
+                error("Library function %s has multiple overloads with the same number of arguments".formatted(name), method);
+                valid = false;
+            }
+
+            functions.add(new Function(name,
+                    method.getSimpleName().toString(),
+                    method.getModifiers().contains(Modifier.STATIC),
+                    hasAnnotation(method, METHOD),
+                    !hasAnnotation(method, DISABLE_ERROR_WRAPPING),
+                    hasContext,
+                    returnType.getKind() == TypeKind.VOID,
+                    parameterTypes));
+        }
+        return valid ? functions : null;
+    }
+
+    /**
+     * Finds the constants of a library and checks them like the reflection based builder does.
+     * @return The constants, or null if there were errors
+     */
+    private List<Constant> findConstants(TypeElement library) {
+        var constants = new ArrayList<Constant>();
+        var valid = true;
+
+        for (var field : ElementFilter.fieldsIn(library.getEnclosedElements())) {
+            if (!field.getModifiers().contains(Modifier.PUBLIC)) continue;
+            if (hasAnnotation(field, DONT_BIND)) continue;
+            if (!isValue(field.asType())) {
+                error("Library constants must be of subclass Value, %s is not".formatted(field.asType()), field);
+                valid = false;
+                continue;
+            }
+            constants.add(new Constant(field.getSimpleName().toString(), field.getModifiers().contains(Modifier.STATIC)));
+        }
+        return valid ? constants : null;
+    }
+
+    private void write(TypeElement library, List<Function> functions, List<Constant> constants) {
+        var elements = processingEnv.getElementUtils();
+        var packageName = elements.getPackageOf(library).getQualifiedName().toString();
+        var binaryName = elements.getBinaryName(library).toString();
+        var bindingsName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_') + "Bindings";
+        var hasConstructor = ElementFilter.constructorsIn(library.getEnclosedElements())
+                .stream()
+                .anyMatch(constructor -> constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE));
+
+        // The body is written first, so that the imports it needs are known
+        var imports = new Imports(packageName);
+        var body = new StringWriter();
+        var out = new PrintWriter(body);
+        var builderName = imports.name(LIBRARY_BUILDER);
+        var libraryName = imports.name(library.getQualifiedName().toString());
+        out.printf("@%s(\"%s\")%n", imports.name("javax.annotation.processing.Generated"), LibraryProcessor.class.getName());
+        out.printf("public final class %s implements %s.Bindings<%s> {%n", bindingsName, builderName, libraryName);
+
+        out.printf("    @Override%n");
+        out.printf("    public %s create() {%n", libraryName);
+        if (hasConstructor) {
+            out.printf("        return new %s();%n", libraryName);
+        } else {
+            out.printf("        throw new IllegalStateException(\"Library %s has no constructor, an instance must be provided\");%n", libraryName);
+        }
+        out.printf("    }%n%n");
+
+        out.printf("    @Override%n");
+        out.printf("    public void register(%s library, %s builder) {%n", libraryName, builderName);
+        for (var function : functions) {
+            writeFunction(out, imports, libraryName, function);
+        }
+        for (var constant : constants) {
+            out.printf("        builder.addConstant(\"%s\", %s.%s);%n", constant.name(), constant.isStatic() ? libraryName : "library", constant.name());
+        }
+        out.printf("    }%n");
+        out.printf("}%n");
+
+        try (var file = new PrintWriter(processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? bindingsName : packageName + "." + bindingsName, library).openWriter())) {
+            if (!packageName.isEmpty()) {
+                file.printf("package %s;%n%n", packageName);
+            }
+            for (var type : imports.imported()) {
+                file.printf("import %s;%n", type);
+            }
+            if (!imports.imported().isEmpty()) {
+                file.printf("%n");
+            }
+            file.print(body);
+        } catch (IOException e) {
+            error("Failed to write bindings: " + e.getMessage(), library);
+        }
+    }
+
+    private void writeFunction(PrintWriter out, Imports imports, String libraryName, Function function) {
+        var arguments = new ArrayList<String>();
+        if (function.hasContext()) {
+            arguments.add("new %s(context, callPos)".formatted(imports.name(FUNCTION_CONTEXT)));
+        }
+        var parameterClasses = new ArrayList<String>();
+        for (int i = 0; i < function.parameterTypes().size(); i++) {
+            var type = function.parameterTypes().get(i);
+            var name = imports.name(type);
+            // The arguments are already values, so only subclasses need a cast
+            arguments.add(type.equals(VALUE) ? "args.get(%s)".formatted(i) : "(%s) args.get(%s)".formatted(name, i));
+            parameterClasses.add(name + ".class");
+        }
+        var call = "%s.%s(%s)".formatted(function.isStatic() ? libraryName : "library", function.javaName(), String.join(", ", arguments));
+
+        out.printf("        builder.addFunction(\"%s\", %s, %s, new Class<?>[]{%s}, (context, callPos, args) -> ",
+                function.name(), function.method(), function.wrapErrors(), String.join(", ", parameterClasses));
+        if (function.isVoid()) {
+            out.printf("{%n");
+            out.printf("            %s;%n", call);
+            out.printf("            return null;%n");
+            out.printf("        });%n");
+        } else {
+            out.printf("%s);%n", call);
+        }
+    }
+
+    /**
+     * Picks the names that the generated code uses for types. Types from other packages are imported, unless their
+     * simple name clashes with an imported type or a type of the package, in which case the qualified name is used.
+     */
+    private final class Imports {
+        private final String packageName;
+        // Imported top level types by their simple names
+        private final Map<String, String> imported = new HashMap<>();
+
+        private Imports(String packageName) {
+            this.packageName = packageName;
+        }
+
+        public String name(String qualifiedName) {
+            var elements = processingEnv.getElementUtils();
+            var type = elements.getTypeElement(qualifiedName);
+            if (type == null) return qualifiedName;
+            var typePackage = elements.getPackageOf(type).getQualifiedName().toString();
+            if (typePackage.isEmpty()) return qualifiedName;
+
+            var relativeName = qualifiedName.substring(typePackage.length() + 1);
+            if (typePackage.equals(packageName)) return relativeName;
+            var dot = relativeName.indexOf('.');
+            var topLevel = dot < 0 ? relativeName : relativeName.substring(0, dot);
+            var qualifiedTopLevel = typePackage + "." + topLevel;
+            var existing = imported.get(topLevel);
+            if (existing == null) {
+                if (elements.getTypeElement(packageName.isEmpty() ? topLevel : packageName + "." + topLevel) != null) return qualifiedName;
+                imported.put(topLevel, qualifiedTopLevel);
+            } else if (!existing.equals(qualifiedTopLevel)) {
+                return qualifiedName;
+            }
+            return relativeName;
+        }
+
+        public List<String> imported() {
+            return imported.values().stream().sorted().toList();
+        }
+    }
+
+    private boolean isValue(TypeMirror type) {
+        var value = processingEnv.getElementUtils().getTypeElement(VALUE);
+        return value != null && processingEnv.getTypeUtils().isAssignable(type, value.asType());
+    }
+
+    private boolean isType(TypeMirror type, String name) {
+        var element = processingEnv.getTypeUtils().asElement(type);
+        return element instanceof TypeElement typeElement && typeElement.getQualifiedName().contentEquals(name);
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static boolean hasAnnotation(Element element, String name) {
+        return findAnnotation(element, name) != null;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (var mirror : element.getAnnotationMirrors()) {
+            var type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(name)) return mirror;
+        }
+        return null;
+    }
+
+    private void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * @param name The name of the function in the library
+     * @param javaName The name of the java method
+     * @param parameterTypes The erased types of the arguments, without the context
+     */
+    private record Function(String name, String javaName, boolean isStatic, boolean method, boolean wrapErrors, boolean hasContext, boolean isVoid, List<String> parameterTypes) {
+    }
+
+    private record Constant(String name, boolean isStatic) {
+    }
+}